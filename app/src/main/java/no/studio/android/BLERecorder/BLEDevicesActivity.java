@@ -24,42 +24,97 @@ package no.studio.android.BLERecorder;
 
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Color;
 import android.net.Uri;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.view.View;
+import android.widget.TextView;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.content.FileProvider;
 import androidx.lifecycle.ViewModelProvider;
 
 import com.google.android.material.appbar.MaterialToolbar;
-import com.jjoe64.graphview.GraphView;
-import com.jjoe64.graphview.LegendRenderer;
-import com.jjoe64.graphview.series.DataPoint;
-import com.jjoe64.graphview.series.LineGraphSeries;
 
 import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
-import no.nordicsemi.android.ble.data.Data;
 import no.nordicsemi.android.ble.livedata.state.ConnectionState;
 import no.nordicsemi.android.ble.observer.ConnectionObserver;
 import no.studio.android.BLERecorder.adapter.DiscoveredBluetoothDevice;
 import no.studio.android.BLERecorder.databinding.PickleBleActivityBinding;
 import no.studio.android.BLERecorder.viewmodels.BLEDataViewModel;
 import no.studio.android.BLERecorder.profile.BLEManager;
+import no.studio.android.BLERecorder.profile.LinkParameters;
+import no.studio.android.BLERecorder.profile.callback.AccelSample;
+import no.studio.android.BLERecorder.profile.callback.SequenceTracker;
+import no.studio.android.BLERecorder.record.RecordConverter;
+import no.studio.android.BLERecorder.record.RecordFormat;
+import no.studio.android.BLERecorder.record.RecordSession;
+import no.studio.android.BLERecorder.record.SampleRing;
+import no.studio.android.BLERecorder.record.SlidingStatistics;
+import no.studio.android.BLERecorder.utils.CharFormatter;
+import no.studio.android.BLERecorder.widget.AccelChartView;
+import no.studio.android.BLERecorder.widget.ChartDecimator;
 
 public class BLEDevicesActivity extends AppCompatActivity {
 	public static final String EXTRA_DEVICE = "cn.ergonomics.android.ble.EXTRA_DEVICE";
 
 	private BLEDataViewModel viewModel;
 	private PickleBleActivityBinding binding;
-	private LineGraphSeries<DataPoint> mSeriesX,mSeriesY,mSeriesZ;
-	private double graphLastXValue = 5d;
+	/**
+	 * The cursor of the graph in the ring of samples, read on the UI thread. It only exists while
+	 * the activity is started, so that it is not left behind while nothing polls it.
+	 */
+	@Nullable
+	private SampleRing.Cursor graphCursor;
+	private final SampleRing.Listener graphListener = (timestamp, x, y, z) -> {
+		if (!RecordFormat.isGap(x, y))
+			binding.rtGraph.append(x / 1000f, y / 1000f, z / 1000f);
+	};
+	/** Interval of refreshing the link statistics, in milliseconds. */
+	private static final long LINK_STATS_INTERVAL_MS = 1000;
+	private long lastSampleCount;
+	private long lastByteCount;
+	private long lastSampleTime;
+	private final Runnable linkStatsUpdater = this::updateLinkStatistics;
+	/** The shortest interval between UI refreshes, capping the rate on high refresh rate displays. */
+	private static final long UI_REFRESH_INTERVAL_NS = 1_000_000_000L / 60;
+	/** Tolerance of the refresh cap, so that vsync jitter on 60 Hz displays does not halve the rate. */
+	private static final long UI_REFRESH_SLACK_NS = UI_REFRESH_INTERVAL_NS / 4;
+	private final Choreographer.FrameCallback frameCallback = this::onFrame;
+	/** Wakes the frame callback up when a sample arrives while the UI is idle, posted to the UI thread. */
+	private final Runnable frameWakeUp = this::wakeUpFrames;
+	private final Runnable sampleWaiter = () -> binding.getRoot().post(frameWakeUp);
+	private boolean framesRunning;
+	private long lastRefreshNanos;
+	/** The latest sample, copied once per frame. */
+	private final AccelSample latestSample = new AccelSample();
+	/** Text buffers of the sample views, each view keeps a reference to its own. */
+	private final CharFormatter accelXText = new CharFormatter(8);
+	private final CharFormatter accelYText = new CharFormatter(8);
+	private final CharFormatter accelZText = new CharFormatter(8);
+	private final CharFormatter hexText = new CharFormatter(64);
+	private final CharFormatter timeText = new CharFormatter(12);
+	/** Interval of refreshing the sample statistics, in nanoseconds. */
+	private static final long STATS_REFRESH_INTERVAL_NS = 250_000_000L;
+	private long lastStatsNanos;
+	/** Index of the shown window in {@link BLEManager#STATISTICS_WINDOWS_NS}. */
+	private int statsWindow;
+	private TextView[] statsViews;
+	private final SlidingStatistics.Snapshot statsSnapshot = new SlidingStatistics.Snapshot();
+	private final CharFormatter[] statsText = {
+			new CharFormatter(48), new CharFormatter(48), new CharFormatter(48)
+	};
+	private final TimeZone timeZone = TimeZone.getDefault();
 
 	@Override
 	protected void onCreate(final Bundle savedInstanceState) {
@@ -78,7 +133,7 @@ public class BLEDevicesActivity extends AppCompatActivity {
 		setSupportActionBar(toolbar);
 		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
 
-		// GraphView Initialize
+		// Graph Initialize
 		setGraphView();
 
 		// Configure the view model.
@@ -89,6 +144,13 @@ public class BLEDevicesActivity extends AppCompatActivity {
 		binding.recordSwitch.setOnCheckedChangeListener((buttonView, isChecked) -> viewModel.setRecordState(isChecked));
 		binding.infoNotSupported.actionRetry.setOnClickListener(v -> viewModel.reconnect());
 		binding.infoTimeout.actionRetry.setOnClickListener(v -> viewModel.reconnect());
+		statsViews = new TextView[] { binding.tvStatsX, binding.tvStatsY, binding.tvStatsZ };
+		binding.btnStatsWindow.setOnClickListener(v -> {
+			statsWindow = (statsWindow + 1) % BLEManager.STATISTICS_WINDOWS_NS.length;
+			showStatisticsWindow();
+			showStatistics();
+		});
+		showStatisticsWindow();
 		binding.btnSave.setOnClickListener(v -> {
 			viewModel.setRecordState(false);
 			binding.recordSwitch.setChecked(false);
@@ -132,19 +194,226 @@ public class BLEDevicesActivity extends AppCompatActivity {
 					break;
 			}
 		});
-		viewModel.getAccelData().observe(this,accelData ->{
-			double[] accel = new double[3];
-			accel[0] = accelData.getIntValue(Data.FORMAT_SINT16_LE,4)/1000.0f;
-			accel[1] = accelData.getIntValue(Data.FORMAT_SINT16_LE,6)/1000.0f;
-			accel[2] = accelData.getIntValue(Data.FORMAT_SINT16_LE,8)/1000.0f;
-			binding.tvDataAccelX.setText(String.format("%.3f",accel[0]));
-			binding.tvDataAccelY.setText(String.format("%.3f",accel[1]));
-			binding.tvDataAccelZ.setText(String.format("%.3f",accel[2]));
-			binding.tvDataHex.setText(toString(accelData));
-			binding.tvDataTimestamp.setText(new SimpleDateFormat("HH:mm:ss.SSS").format(new Date(System.currentTimeMillis())));
-			realtimeGraph(accel);
-		});
+		viewModel.getLinkParameters().observe(this, this::showLinkParameters);
+		viewModel.getExportProgress().observe(this, this::showExportProgress);
+		viewModel.getExportResult().observe(this, this::onExportFinished);
+		viewModel.getBatteryLevel().observe(this, level ->
+				toolbar.setSubtitle(getString(R.string.battery_subtitle, deviceAddress, level)));
+		binding.getRoot().postDelayed(linkStatsUpdater, LINK_STATS_INTERVAL_MS);
+	}
+
+	@Override
+	public boolean onCreateOptionsMenu(@NonNull final Menu menu) {
+		getMenuInflater().inflate(R.menu.review, menu);
+		return true;
+	}
+
+	@Override
+	public boolean onOptionsItemSelected(@NonNull final MenuItem item) {
+		if (item.getItemId() == R.id.action_review) {
+			viewModel.setRecordState(false);
+			binding.recordSwitch.setChecked(false);
+			reviewRecordData();
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	@Override
+	protected void onStart() {
+		super.onStart();
+		// The graph only shows the recent samples, so it may lose the older ones if the UI stalls
+		graphCursor = viewModel.getSamples().newCursor(SampleRing.Backpressure.DROP_OLDEST);
+	}
+
+	@Override
+	protected void onStop() {
+		super.onStop();
+		graphCursor.close();
+		graphCursor = null;
+	}
+
+	@Override
+	protected void onResume() {
+		super.onResume();
+		framesRunning = true;
+		Choreographer.getInstance().postFrameCallback(frameCallback);
+	}
+
+	@Override
+	protected void onPause() {
+		super.onPause();
+		framesRunning = false;
+		Choreographer.getInstance().removeFrameCallback(frameCallback);
+		viewModel.awaitLatestSample(null);
+		binding.getRoot().removeCallbacks(frameWakeUp);
+	}
+
+	/**
+	 * Refreshes the sample views and the graph, once per display frame at most. However many
+	 * samples arrived since the previous frame, only the latest one is formatted, and the graph
+	 * gets all of them at once. While no samples arrive, the callback is not run on every frame,
+	 * only to refresh the statistics, until the next sample wakes it up.
+	 */
+	private void onFrame(final long frameTimeNanos) {
+		if (frameTimeNanos - lastRefreshNanos < UI_REFRESH_INTERVAL_NS - UI_REFRESH_SLACK_NS) {
+			Choreographer.getInstance().postFrameCallback(frameCallback);
+			return;
+		}
+		lastRefreshNanos = frameTimeNanos;
+		boolean idle = true;
+		if (viewModel.takeLatestSample(latestSample)) {
+			showSample(latestSample);
+			idle = false;
+		}
+		if (graphCursor.poll(graphListener, Integer.MAX_VALUE) > 0) {
+			binding.rtGraph.invalidate();
+			idle = false;
+		}
+		if (frameTimeNanos - lastStatsNanos >= STATS_REFRESH_INTERVAL_NS - UI_REFRESH_SLACK_NS) {
+			lastStatsNanos = frameTimeNanos;
+			showStatistics();
+		}
+		if (idle && viewModel.awaitLatestSample(sampleWaiter)) {
+			Choreographer.getInstance().postFrameCallbackDelayed(frameCallback,
+					STATS_REFRESH_INTERVAL_NS / 1_000_000);
+		} else {
+			Choreographer.getInstance().postFrameCallback(frameCallback);
+		}
+	}
+
+	/**
+	 * Refreshes on the next frame after a sample arrived while idle.
+	 */
+	private void wakeUpFrames() {
+		if (!framesRunning)
+			return;
+		final Choreographer choreographer = Choreographer.getInstance();
+		choreographer.removeFrameCallback(frameCallback);
+		choreographer.postFrameCallback(frameCallback);
+	}
+
+	/**
+	 * Shows the mean, RMS, standard deviation and peak of each axis over the selected window.
+	 * The statistics are kept up to date on the BLE callback thread, and the windows empty out
+	 * when the samples stop coming, so this only takes a snapshot of a few fields.
+	 */
+	private void showStatistics() {
+		// All values of a panel are read at the same moment
+		final SlidingStatistics.Snapshot statistics = statsSnapshot;
+		viewModel.getSampleStatistics(statsWindow).snapshot(statistics);
+		for (int axis = 0; axis < statsViews.length; axis++) {
+			final CharFormatter text = statsText[axis].clear();
+			if (statistics.getCount() == 0) {
+				text.append("mean -\nrms  -\nsd   -\npeak -");
+			} else {
+				// The values are in milli-g, shown in g
+				text.append("mean ").appendFixed(Math.round(statistics.getMean(axis)), 3);
+				text.append("\nrms  ").appendFixed(Math.round(statistics.getRms(axis)), 3);
+				text.append("\nsd   ").appendFixed(Math.round(statistics.getStandardDeviation(axis)), 3);
+				text.append("\npeak ").appendFixed(statistics.getPeak(axis), 3);
+			}
+			setText(statsViews[axis], text);
+		}
+	}
+
+	private void showStatisticsWindow() {
+		final long window = BLEManager.STATISTICS_WINDOWS_NS[statsWindow];
+		if (window == SlidingStatistics.WHOLE_SESSION)
+			binding.btnStatsWindow.setText(R.string.stats_window_session);
+		else
+			binding.btnStatsWindow.setText(getString(R.string.stats_window_seconds, window / 1_000_000_000L));
+	}
+
+	private void showSample(@NonNull final AccelSample sample) {
+		// The values are in milli-g, shown in g
+		setText(binding.tvDataAccelX, accelXText.clear().appendFixed(sample.getX(), 3));
+		setText(binding.tvDataAccelY, accelYText.clear().appendFixed(sample.getY(), 3));
+		setText(binding.tvDataAccelZ, accelZText.clear().appendFixed(sample.getZ(), 3));
+		setText(binding.tvDataHex, hexText.clear().appendHex(sample.getFrame(), sample.getFrameLength()));
+		final long now = System.currentTimeMillis();
+		final long millisOfDay = (now + timeZone.getOffset(now)) % (24 * 60 * 60 * 1000L);
+		setText(binding.tvDataTimestamp, timeText.clear()
+				.appendPadded(millisOfDay / 3_600_000, 2).append(':')
+				.appendPadded(millisOfDay / 60_000 % 60, 2).append(':')
+				.appendPadded(millisOfDay / 1000 % 60, 2).append('.')
+				.appendPadded(millisOfDay % 1000, 3));
+	}
 
+	private static void setText(@NonNull final TextView view, @NonNull final CharFormatter text) {
+		view.setText(text.getBuffer(), 0, text.length());
+	}
+
+	/**
+	 * Shows the connection parameters negotiated with the device, so it can be told whether
+	 * the phone can sustain the sample rate.
+	 */
+	private void showLinkParameters(@NonNull final LinkParameters parameters) {
+		final StringBuilder text = new StringBuilder()
+				.append("MTU ").append(parameters.getMtu())
+				.append(", PHY ").append(LinkParameters.getPhyName(parameters.getTxPhy()))
+				.append('/').append(LinkParameters.getPhyName(parameters.getRxPhy()));
+		if (parameters.getIntervalMillis() > 0) {
+			text.append(String.format(Locale.US, ", interval %.2f ms", parameters.getIntervalMillis()));
+			if (parameters.getLatency() > 0)
+				text.append(", latency ").append(parameters.getLatency());
+		}
+		binding.tvLinkParams.setText(text);
+	}
+
+	/**
+	 * Shows the effective sample rate, the notification throughput and, if the device sends
+	 * sequence counters, the rate of lost frames.
+	 */
+	private void updateLinkStatistics() {
+		final long now = SystemClock.elapsedRealtime();
+		final long count = viewModel.getReceivedSamples();
+		final long bytes = viewModel.getReceivedBytes();
+		if (lastSampleTime > 0 && now > lastSampleTime) {
+			// The counter restarts on reconnection
+			final long received = count >= lastSampleCount ? count - lastSampleCount : count;
+			final double rate = received * 1000.0 / (now - lastSampleTime);
+			final long receivedBytes = bytes >= lastByteCount ? bytes - lastByteCount : bytes;
+			// Bytes per millisecond are kB/s, 1000 bytes each
+			final double throughput = (double) receivedBytes / (now - lastSampleTime);
+			final SequenceTracker sequence = viewModel.getSequenceTracker();
+			if (sequence.isArmed()) {
+				binding.tvLinkStats.setText(String.format(Locale.US, "%.1f S/s, %.1f kB/s, loss %.2f %%",
+						rate, throughput, sequence.getLossRate() * 100));
+			} else {
+				binding.tvLinkStats.setText(String.format(Locale.US, "%.1f S/s, %.1f kB/s", rate, throughput));
+			}
+		}
+		lastSampleCount = count;
+		lastByteCount = bytes;
+		updatePipelineStatistics();
+		lastSampleTime = now;
+		binding.getRoot().postDelayed(linkStatsUpdater, LINK_STATS_INTERVAL_MS);
+	}
+
+	/**
+	 * Shows how far the consumers of the samples fell behind, and how many samples were lost
+	 * because of it.
+	 */
+	private void updatePipelineStatistics() {
+		final SampleRing samples = viewModel.getSamples();
+		final SampleRing.Cursor recordCursor = viewModel.getRecordCursor();
+		final StringBuilder text = new StringBuilder(String.format(Locale.US, "Buffer %d kB",
+				(long) samples.getCapacity() * SampleRing.SAMPLE_SIZE / 1024));
+		if (recordCursor != null)
+			text.append(", recorder backlog max ").append(recordCursor.getHighWaterMark());
+		if (graphCursor != null)
+			text.append(", graph backlog max ").append(graphCursor.getHighWaterMark())
+					.append(", dropped ").append(graphCursor.getDropped());
+		if (samples.getDropped() > 0)
+			text.append(", lost ").append(samples.getDropped());
+		binding.tvPipelineStats.setText(text);
+	}
+
+	@Override
+	protected void onDestroy() {
+		super.onDestroy();
+		binding.getRoot().removeCallbacks(linkStatsUpdater);
 	}
 
 	private void onConnectionStateChanged(final boolean connected) {
@@ -155,37 +424,75 @@ public class BLEDevicesActivity extends AppCompatActivity {
 		}
 	}
 
-	private String toString(Data data) {
-		final char[] HEX_ARRAY = "0123456789ABCDEF".toCharArray();
-		byte[] mValue = data.getValue();
-		if (data.size() == 0)
-			return "";
+	private void saveRecordData(){
+		if (viewModel.isExporting()) {
+			// Saving again while the export is running cancels it
+			viewModel.cancelExport();
+			return;
+		}
+		if((BLEManager.mFileName == null) || (!BLEManager.fileRecord.exists())){
+			Toast.makeText(this, "Target file not exist", Toast.LENGTH_SHORT).show();
+			return;
+		}
+		if (!RecordConverter.isBinaryRecording(BLEManager.fileRecord)) {
+			shareRecordData(BLEManager.fileRecord);
+			return;
+		}
+		// Binary recordings are shared as CSV, exported on a worker thread by the view model,
+		// so that the export survives configuration changes.
+		final File exportDir = new File(getCacheDir(), "export");
+		if (!exportDir.exists()) { exportDir.mkdirs(); }
+		viewModel.exportRecording(RecordSession.of(BLEManager.fileRecord), exportDir);
+	}
+
+	private void showExportProgress(@Nullable final Integer percent) {
+		if (percent == null) {
+			binding.exportProgress.setVisibility(View.GONE);
+		} else {
+			binding.exportProgress.setProgress(percent);
+			binding.exportProgress.setVisibility(View.VISIBLE);
+		}
+	}
 
-		final char[] out = new char[(mValue != null ? mValue.length : 0) * 3 - 1];
-		for (int j = 0; j < mValue.length; j++) {
-			int v = mValue[j] & 0xFF;
-			out[j * 3] = HEX_ARRAY[v >>> 4];
-			out[j * 3 + 1] = HEX_ARRAY[v & 0x0F];
-			if (j != mValue.length - 1)
-				out[j * 3 + 2] = ' ';
+	private void onExportFinished(@NonNull final BLEDataViewModel.ExportResult result) {
+		if (isDestroyed())
+			return;
+		if (result.cancelled) {
+			Toast.makeText(this, "Save \""+ BLEManager.mFileName+"\" Cancelled", Toast.LENGTH_SHORT).show();
+			return;
 		}
-		return new String(out);
+		if (result.error != null) {
+			result.error.printStackTrace();
+			Toast.makeText(this, "Save \""+ BLEManager.mFileName+"\" Failed", Toast.LENGTH_SHORT).show();
+			return;
+		}
+		shareRecordData(result.file);
 	}
 
-	private void saveRecordData(){
+	private void reviewRecordData(){
 		if((BLEManager.mFileName == null) || (!BLEManager.fileRecord.exists())){
 			Toast.makeText(this, "Target file not exist", Toast.LENGTH_SHORT).show();
 			return;
 		}
+		if (!RecordConverter.isBinaryRecording(BLEManager.fileRecord)) {
+			Toast.makeText(this, "Only binary recordings can be reviewed", Toast.LENGTH_SHORT).show();
+			return;
+		}
+		final Intent intent = new Intent(this, RecordReviewActivity.class);
+		intent.putExtra(RecordReviewActivity.EXTRA_FILE, BLEManager.fileRecord.getPath());
+		startActivity(intent);
+	}
+
+	private void shareRecordData(File shareFile){
 		Intent share = new Intent(Intent.ACTION_SEND);
 		share.setType("application/vnd.ms-excel");
-		Uri contentUri = getFileProvider(this, BLEManager.fileRecord);
+		Uri contentUri = getFileProvider(this, shareFile);
 		share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
 		share.putExtra(Intent.EXTRA_STREAM,contentUri);
-		share.putExtra(Intent.EXTRA_SUBJECT, BLEManager.mFileName);
+		share.putExtra(Intent.EXTRA_SUBJECT, shareFile.getName());
 		share.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
 		this.startActivity(Intent.createChooser(share, "title"));
-		Toast.makeText(this, "Save \""+ BLEManager.mFileName+"\" Success", Toast.LENGTH_SHORT).show();
+		Toast.makeText(this, "Save \""+ shareFile.getName()+"\" Success", Toast.LENGTH_SHORT).show();
 	}
 
 	private Uri getFileProvider(Context context, File file){
@@ -199,7 +506,8 @@ public class BLEDevicesActivity extends AppCompatActivity {
 			Toast.makeText(getApplicationContext(), "Target file not exist", Toast.LENGTH_SHORT).show();
 		} else {
 			if (delFile.exists() && delFile.isFile()) {
-				if (delFile.delete()) {
+				// Delete all parts of the session and its index
+				if (RecordSession.of(delFile).delete()) {
 					Log.e("--Method--", "Copy_Delete.deleteSingleFile: Delete single file" + delFile + "success");
 					Toast.makeText(getApplicationContext(), "Clear \""+ BLEManager.mFileName+"\" Success", Toast.LENGTH_SHORT).show();
 				} else {
@@ -210,40 +518,13 @@ public class BLEDevicesActivity extends AppCompatActivity {
 			}
 		}
 	}
-	/** GraphView Init */
+	/** Graph Init */
 	private void setGraphView(){
-
-		GraphView graphView = findViewById(R.id.rt_graph);
-		mSeriesX = new LineGraphSeries<>();
-		mSeriesX.setColor(Color.RED);
-		mSeriesX.setTitle("X-accel");
-		graphView.addSeries(mSeriesX);
-
-		mSeriesY = new LineGraphSeries<>();
-		mSeriesY.setColor(Color.GREEN);
-		mSeriesY.setTitle("Y-accel");
-		graphView.addSeries(mSeriesY);
-
-		mSeriesZ = new LineGraphSeries<>();
-		mSeriesZ.setColor(Color.BLUE);
-		mSeriesZ.setTitle("Z-accel");
-		graphView.addSeries(mSeriesZ);
-
-		graphView.getViewport().setXAxisBoundsManual(true);
-		graphView.getViewport().setMinX(0);
-		graphView.getViewport().setMaxX(400);
-
-		graphView.getLegendRenderer().setVisible(true);
-		graphView.getLegendRenderer().setAlign(LegendRenderer.LegendAlign.TOP);
-		graphView.getGridLabelRenderer().setLabelVerticalWidth(80);
+		final AccelChartView graphView = binding.rtGraph;
+		graphView.setVisibleSamples(400);
+		// Keep the spikes when zoomed out over more samples than pixels
+		graphView.setDecimation(ChartDecimator.Mode.MIN_MAX);
 		// enable scaling
-		graphView.getViewport().setScalable(true);
-	}
-
-	private void realtimeGraph(double[] accelData){
-		graphLastXValue += 1d;
-		mSeriesX.appendData(new DataPoint(graphLastXValue,accelData[0]),true,5000);
-		mSeriesY.appendData(new DataPoint(graphLastXValue,accelData[1]),true,5000);
-		mSeriesZ.appendData(new DataPoint(graphLastXValue,accelData[2]),true,5000);
+		graphView.setScalable(true);
 	}
 }
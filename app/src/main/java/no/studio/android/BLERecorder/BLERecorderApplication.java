@@ -2,10 +2,19 @@ package no.studio.android.BLERecorder;
 
 import android.app.Application;
 import android.os.Build;
+import android.util.Log;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatDelegate;
 
+import java.io.File;
+
+import no.studio.android.BLERecorder.profile.BLEManager;
+import no.studio.android.BLERecorder.record.RecordRecovery;
+import no.studio.android.BLERecorder.record.RecordSession;
+
 public class BLERecorderApplication extends Application {
+    private static final String TAG = "BLERecorderApplication";
 
     @Override
     public void onCreate() {
@@ -14,5 +23,34 @@ public class BLERecorderApplication extends Application {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
             AppCompatDelegate.setCompatVectorFromResourcesEnabled(true);
         }
+        recoverRecordings();
+    }
+
+    /**
+     * Cuts off the torn tail of recordings that were not closed properly, for example when
+     * the app was killed while recording. This runs in the background, skipping the session
+     * that is being recorded, if any. The session is checked again for each file, as a recording
+     * may start while the recordings are being scanned.
+     */
+    private void recoverRecordings() {
+        final File directory = getExternalFilesDir(BLEManager.RECORD_DIRECTORY);
+        if (directory == null)
+            return;
+        new Thread(() -> {
+            for (final RecordRecovery.Result result : RecordRecovery.recoverAll(directory,
+                    file -> !isRecording(file))) {
+                Log.w(TAG, "Recovered " + result.file.getName() + ": " + result.samples
+                        + " samples kept, " + result.discardedBytes + " bytes discarded");
+            }
+        }, "RecordRecovery").start();
+    }
+
+    /**
+     * Returns whether the file belongs to the session being recorded, or the last one recorded.
+     */
+    private static boolean isRecording(@NonNull final File file) {
+        final File recording = BLEManager.fileRecord;
+        return recording != null
+                && RecordSession.of(recording).getName().equals(RecordSession.of(file).getName());
     }
 }
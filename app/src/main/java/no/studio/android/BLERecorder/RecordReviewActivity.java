@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder;
+
+import android.os.Bundle;
+import android.text.format.DateUtils;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+
+import com.google.android.material.appbar.MaterialToolbar;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+import no.studio.android.BLERecorder.databinding.ActivityRecordReviewBinding;
+import no.studio.android.BLERecorder.profile.BLEManager;
+import no.studio.android.BLERecorder.record.RecordSession;
+import no.studio.android.BLERecorder.record.SummaryPyramid;
+
+/**
+ * Shows a finished recording. The {@link SummaryPyramid} of the session, saved by the writer when
+ * the recording stopped, is opened on a worker thread, and the chart is drawn from it. Sessions
+ * without one, or recovered after a crash, have it built the first time.
+ */
+public class RecordReviewActivity extends AppCompatActivity {
+	/** Path of any part of the binary recording to review. */
+	public static final String EXTRA_FILE = "no.studio.android.BLERecorder.EXTRA_FILE";
+
+	private ActivityRecordReviewBinding binding;
+	@Nullable
+	private SummaryPyramid pyramid;
+
+	@Override
+	protected void onCreate(final Bundle savedInstanceState) {
+		super.onCreate(savedInstanceState);
+		binding = ActivityRecordReviewBinding.inflate(getLayoutInflater());
+		setContentView(binding.getRoot());
+
+		final RecordSession session = RecordSession.of(new File(getIntent().getStringExtra(EXTRA_FILE)));
+		final MaterialToolbar toolbar = binding.toolbar;
+		toolbar.setTitle(session.getName());
+		setSupportActionBar(toolbar);
+		getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+
+		binding.reviewChart.setOnViewportChangeListener(this::showRange);
+		new Thread(() -> {
+			SummaryPyramid result = null;
+			IOException error = null;
+			try {
+				// The session may be the one just recorded, still writing its last blocks
+				BLEManager.awaitRecordingClosed();
+				result = SummaryPyramid.open(session);
+			} catch (IOException e) {
+				error = e;
+			}
+			final SummaryPyramid loaded = result;
+			final IOException failure = error;
+			runOnUiThread(() -> onSummaryLoaded(loaded, failure));
+		}, "SummaryPyramid").start();
+	}
+
+	private void onSummaryLoaded(@Nullable final SummaryPyramid pyramid, @Nullable final IOException error) {
+		if (isDestroyed())
+			return;
+		binding.reviewProgress.setVisibility(View.GONE);
+		if (error != null) {
+			error.printStackTrace();
+			binding.tvReviewRange.setText(R.string.review_failed);
+			return;
+		}
+		this.pyramid = pyramid;
+		binding.toolbar.setSubtitle(DateUtils.formatDateTime(this, pyramid.getStartTime(),
+				DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME));
+		if (pyramid.getSampleCount() == 0)
+			binding.tvReviewRange.setText(R.string.review_empty);
+		binding.reviewChart.setPyramid(pyramid);
+	}
+
+	/**
+	 * Shows the time range of the visible samples. The times are interpolated over the
+	 * duration of the recording, as the summary does not keep the timestamps.
+	 */
+	private void showRange(final long firstSample, final long lastSample, final long samplesPerBucket) {
+		if (pyramid == null || pyramid.getSampleCount() == 0)
+			return;
+		final long duration = pyramid.getDuration();
+		final double nanosPerSample = (double) duration / Math.max(1, pyramid.getSampleCount() - 1);
+		binding.tvReviewRange.setText(getString(R.string.review_range,
+				formatTime((long) (firstSample * nanosPerSample)),
+				formatTime((long) (lastSample * nanosPerSample)),
+				formatTime(duration), samplesPerBucket));
+	}
+
+	@NonNull
+	private static String formatTime(final long nanos) {
+		final long tenths = nanos / 100_000_000L;
+		final long seconds = tenths / 10;
+		if (seconds >= 3600)
+			return String.format(Locale.US, "%d:%02d:%02d.%d", seconds / 3600, seconds / 60 % 60, seconds % 60, tenths % 10);
+		return String.format(Locale.US, "%d:%02d.%d", seconds / 60, seconds % 60, tenths % 10);
+	}
+}
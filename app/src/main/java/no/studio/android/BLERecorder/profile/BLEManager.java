@@ -23,11 +23,17 @@
 package no.studio.android.BLERecorder.profile;
 
 import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
 import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothGattService;
 import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -36,18 +42,33 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.UUID;
 
+import no.nordicsemi.android.ble.ConnectionPriorityRequest;
+import no.nordicsemi.android.ble.PhyRequest;
 import no.nordicsemi.android.ble.data.Data;
 import no.nordicsemi.android.ble.livedata.ObservableBleManager;
 import no.studio.android.BLERecorder.BuildConfig;
+import no.studio.android.BLERecorder.profile.callback.AccelFrame;
+import no.studio.android.BLERecorder.profile.callback.AccelFramer;
+import no.studio.android.BLERecorder.profile.callback.AccelSample;
 import no.studio.android.BLERecorder.profile.callback.BLEAccelDataCallback;
 import no.studio.android.BLERecorder.profile.callback.BLEBatteryDataCallback;
+import no.studio.android.BLERecorder.profile.callback.SequenceTracker;
+import no.studio.android.BLERecorder.profile.channel.Channel;
+import no.studio.android.BLERecorder.profile.channel.ChannelRegistry;
+import no.studio.android.BLERecorder.profile.channel.FrameChannelCodec;
+import no.studio.android.BLERecorder.record.ArrivalStatistics;
+import no.studio.android.BLERecorder.record.BinaryRecordFormat;
+import no.studio.android.BLERecorder.record.DeltaBlockCodec;
+import no.studio.android.BLERecorder.record.RecordFormat;
+import no.studio.android.BLERecorder.record.RecordSession;
+import no.studio.android.BLERecorder.record.RecordWriter;
+import no.studio.android.BLERecorder.record.SampleRing;
+import no.studio.android.BLERecorder.record.SlidingStatistics;
 import no.nordicsemi.android.log.LogContract;
 import no.nordicsemi.android.log.LogSession;
 import no.nordicsemi.android.log.Logger;
@@ -61,29 +82,158 @@ public class BLEManager extends ObservableBleManager {
 	private final static UUID LBS_UUID_ACCEL_CHAR = UUID.fromString("f000fff1-0451-4000-b000-000000000000");
 	/** Battery characteristic UUID. */
 	private final static UUID LBS_UUID_BATTERY_CHAR = UUID.fromString("f000fff2-0451-4000-b000-000000000000");
+	/** Gyroscope characteristic UUID, on newer sensor boards. */
+	public final static UUID LBS_UUID_GYRO_CHAR = UUID.fromString("f000fff3-0451-4000-b000-000000000000");
+	/** Magnetometer characteristic UUID, on newer sensor boards. */
+	public final static UUID LBS_UUID_MAG_CHAR = UUID.fromString("f000fff4-0451-4000-b000-000000000000");
+	/** Temperature characteristic UUID, on newer sensor boards. */
+	public final static UUID LBS_UUID_TEMP_CHAR = UUID.fromString("f000fff5-0451-4000-b000-000000000000");
+	/** The MTU requested on connection, the largest one Android allows. */
+	private final static int MAX_MTU = 517;
+	/** The MTU requested if the device rejects the maximum, the largest a notification of 244 bytes needs. */
+	private final static int FALLBACK_MTU = 247;
+	/** Shortest interval of reading the battery level, used after the level changed. */
+	private final static long BATTERY_MIN_INTERVAL_MS = 30 * 1000;
+	/** Longest interval of reading the battery level, reached while the level is stable. */
+	private final static long BATTERY_MAX_INTERVAL_MS = 5 * 60 * 1000;
+	/** Shortest time between two battery reads. */
+	private final static long BATTERY_MIN_SPACING_MS = 5 * 1000;
+	/** Longest time a due battery read waits for a notification while streaming. */
+	private final static long BATTERY_MAX_DEFER_MS = 2 * 1000;
+	/** The most memory the samples waiting to be recorded may take, in bytes. */
+	private final static int RECORD_BUFFER_MAX_BYTES = 16 * 1024 * 1024;
+	/** Number of samples between sample values logged in debug builds. */
+	private final static int SAMPLE_LOG_INTERVAL = 1000;
+	/** Interval of updating the arrival and sample statistics while recording. */
+	private final static long STATISTICS_INTERVAL_MS = 250;
+	/** Windows of the sample statistics, in nanoseconds: 1 s, 10 s and the whole session. */
+	public final static long[] STATISTICS_WINDOWS_NS = { 1_000_000_000L, 10_000_000_000L, SlidingStatistics.WHOLE_SESSION };
+	/** Name of the directory with recordings, in the app's external files directory. */
+	public final static String RECORD_DIRECTORY = "RecordBLE";
 
-	private final MutableLiveData<Data> accelData = new MutableLiveData<>();
-	private final MutableLiveData<Byte> batteryState = new MutableLiveData<>();
+	private final MutableLiveData<Integer> batteryLevel = new MutableLiveData<>();
+	private final MutableLiveData<LinkParameters> linkParameters = new MutableLiveData<>(LinkParameters.DEFAULT);
+	/** The parameters negotiated so far, updated as the requests complete. */
+	@NonNull
+	private LinkParameters link = LinkParameters.DEFAULT;
 
-	private BluetoothGattCharacteristic accelCharacteristic, batteryCharacteristic;
+	private volatile BluetoothGattCharacteristic accelCharacteristic, batteryCharacteristic;
 	private LogSession logSession;
 	private boolean supported;
-	private boolean recordSwitchOn;
+	private volatile boolean recordSwitchOn;
 	final Context context;
+	/** The thread the BLE callbacks, decoding and recording run on. */
+	private final HandlerThread callbackThread;
+	private final Handler callbackHandler;
+	/** The latest sample received, guarded by itself. Taken by the UI when it draws a frame. */
+	private final AccelSample latestSample = new AccelSample();
+	/** Whether the latest sample has not been taken yet, guarded by {@link #latestSample}. */
+	private boolean latestSampleFresh;
+	/** Run once when the next sample arrives, guarded by {@link #latestSample}, or null. */
+	@Nullable
+	private Runnable latestSampleWaiter;
+	/** Schedules the battery reads around the accelerometer notifications. */
+	private final ReadScheduler batteryScheduler;
+	/** The last battery level read, or -1. Used on the BLE callback thread only. */
+	private int lastBatteryLevel = -1;
+	private boolean batteryLevelChanged;
+
 
+	/** Additional sensor channels, subscribed to when the device has them. */
+	private final ChannelRegistry channels = new ChannelRegistry();
 
 	public BLEManager(@NonNull final Context context) {
-		super(context);
+		this(context, createCallbackThread());
+	}
+
+	private BLEManager(@NonNull final Context context, @NonNull final HandlerThread callbackThread) {
+		// Callbacks are delivered on a dedicated thread, so a busy UI does not delay or drop data
+		super(context, new Handler(callbackThread.getLooper()));
 		this.context = context;
+		this.callbackThread = callbackThread;
+		this.callbackHandler = new Handler(callbackThread.getLooper());
+		batteryScheduler = new ReadScheduler(callbackHandler, this::readBatteryLevel,
+				BATTERY_MIN_INTERVAL_MS, BATTERY_MAX_INTERVAL_MS, BATTERY_MIN_SPACING_MS, BATTERY_MAX_DEFER_MS);
+		channels.register(new FrameChannelCodec("Gyroscope", LBS_UUID_GYRO_CHAR, 3));
+		channels.register(new FrameChannelCodec("Magnetometer", LBS_UUID_MAG_CHAR, 3));
+		channels.register(new FrameChannelCodec("Temperature", LBS_UUID_TEMP_CHAR, 1));
+	}
+
+	@NonNull
+	private static HandlerThread createCallbackThread() {
+		final HandlerThread thread = new HandlerThread("BLEManager", Process.THREAD_PRIORITY_DISPLAY);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * Closes the connection and stops the callback thread. The manager can not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		super.close();
+		stopRecording();
+		callbackThread.quitSafely();
 	}
 
-	public final LiveData<Data> getAccelData(){ return accelData;}
-	public final LiveData<Byte> getBatteryState(){ return batteryState;}
+	/**
+	 * Returns the registry of the additional sensor channels. Channels should be registered
+	 * before connecting.
+	 */
+	@NonNull
+	public ChannelRegistry getChannels() {
+		return channels;
+	}
+
+	/** Returns the battery level of the device, in percent. */
+	public final LiveData<Integer> getBatteryLevel(){ return batteryLevel;}
+	/** Returns the connection parameters negotiated with the device. */
+	public final LiveData<LinkParameters> getLinkParameters(){ return linkParameters;}
 
 	public static String mFileName = null;
 	public static File dirRecord = null;
-	public static File fileRecord = null;
-	private FileOutputStream fileOutputStream = null;
+	/** The first part of the current, or last, recording session. Read by the recovery thread. */
+	public static volatile File fileRecord = null;
+	/** The writer of the current recording session, or null if not recording. */
+	@Nullable
+	private volatile RecordWriter recordWriter;
+	/** The writer of the last recording session, which may still be closing, or null. */
+	@Nullable
+	private static volatile RecordWriter lastRecordWriter;
+	/** The time the current recording session was started, in {@link SystemClock#elapsedRealtimeNanos()}. */
+	private volatile long recordStartNanos;
+	/** Whether new recordings are compressed with the {@link DeltaBlockCodec}. */
+	private boolean compressRecordings = true;
+	/** Arrival statistics of the samples of the current recording session. */
+	private final ArrivalStatistics arrivalStatistics = new ArrivalStatistics();
+	/** Statistics of the sample values of the current recording session, one per window. */
+	private final SlidingStatistics[] sampleStatistics = createSampleStatistics(STATISTICS_WINDOWS_NS);
+	/**
+	 * The samples of the current recording session, published on the BLE callback thread.
+	 * The recording writer, the statistics and the graph read them through their own cursors.
+	 * The ring grows when the writer falls behind, so a slow storage does not lose samples.
+	 */
+	private final SampleRing samples = new SampleRing(SampleRing.DEFAULT_CAPACITY,
+			SampleRing.getCapacityForBytes(RECORD_BUFFER_MAX_BYTES));
+	/**
+	 * The cursor of the arrival and sample statistics. It is drained on the BLE callback thread,
+	 * the producer's own, at the end of every notification, so its backlog never exceeds one
+	 * notification and it can never make the ring hold back the recording writer.
+	 */
+	private final SampleRing.Cursor statisticsCursor = samples.newCursor(SampleRing.Backpressure.GROW);
+	/** The cursor of the recording writer, or null if not recording. */
+	@Nullable
+	private volatile SampleRing.Cursor recordCursor;
+	private final SampleRing.Listener statisticsListener = (timestamp, x, y, z) -> {
+		if (!RecordFormat.isGap(x, y)) {
+			arrivalStatistics.add(timestamp);
+			for (final SlidingStatistics statistics : sampleStatistics)
+				statistics.add(timestamp, x, y, z);
+		}
+	};
+	private final Runnable statisticsUpdater = this::updateStatistics;
+	/** The number of samples dropped by the ring before the current recording session. */
+	private long droppedAtStart;
 
 	@NonNull
 	@Override
@@ -117,42 +267,48 @@ public class BLEManager extends ObservableBleManager {
 	 * The Acceleration callback will be notified when a notification from Button characteristic
 	 * has been received, or its data was read.
 	 * <p>
-	 * If the data received are valid (single byte equal to 0x00 or 0x01), the
-	 * {@link BLEAccelDataCallback#onAccelDataChanged} will be called.
+	 * If the data received are a valid frame, the decoded sample is passed to
+	 * {@link BLEAccelDataCallback#onAccelSampleReceived}.
+	 * The sample is shared by all consumers, so the frame is decoded once.
 	 * Otherwise, the {@link BLEAccelDataCallback#onInvalidDataReceived(BluetoothDevice, Data)}
 	 * will be called with the data received.
 	 */
 	private	final BLEAccelDataCallback accelCallback = new BLEAccelDataCallback() {
-		@SuppressLint({"WrongConstant", "DefaultLocale"})
+		private int samplesToLog;
+
 		@Override
-		public void onAccelDataChanged(@NonNull final Data accel) {
-			float mAccX,mAccY,mAccZ;
-			log(LogContract.Log.Level.APPLICATION, "Accelerate " + accel.toString());
-			// The BLEManager is initialized with a default Handler, which will use
-			// UI thread for the callbacks. setValue can be called safely.
-			// If you're using a different handler, or coroutines, use postValue(..) instead.
+		public void onDataReceived(@NonNull final BluetoothDevice device, @NonNull final Data data) {
+			super.onDataReceived(device, data);
+			if (recordSwitchOn)
+				statisticsCursor.poll(statisticsListener, Integer.MAX_VALUE);
+			// The end of a notification is the time to issue a due battery read
+			batteryScheduler.onNotification();
+		}
+
+		@SuppressLint("WrongConstant")
+		@Override
+		public void onAccelSampleReceived(@NonNull final AccelSample accel) {
+			final long timestamp = accel.getTimestamp() - recordStartNanos;
+			// Logging every sample would allocate on the hot path and fill the nRF Logger,
+			// so debug builds only log one sample in a while
+			if (BuildConfig.DEBUG && --samplesToLog <= 0) {
+				samplesToLog = SAMPLE_LOG_INTERVAL;
+				log(LogContract.Log.Level.APPLICATION, "Accelerate " + accel.getX() + ", " + accel.getY() + ", " + accel.getZ());
+			}
+			// Callbacks run on the BLE callback thread. Samples are published to the ring
+			// without locking, and only the latest one is handed over to the UI.
 			if(recordSwitchOn) {
-				mAccX = accel.getIntValue(Data.FORMAT_SINT16_LE, 4) / 1000.0f;
-				mAccY = accel.getIntValue(Data.FORMAT_SINT16_LE, 6) / 1000.0f;
-				mAccZ = accel.getIntValue(Data.FORMAT_SINT16_LE, 8) / 1000.0f;
-//				log(Log.WARN, "X:" + mAccX.shortValue() + "   Y:" + mAccY.shortValue() + "   Z:" + mAccZ.shortValue());
-				accelData.setValue(accel);
-				if (fileRecord.exists()) {
-					try {
-						fileOutputStream = new FileOutputStream(fileRecord,true);
-						fileOutputStream.write((String.format("%.3f,", mAccX) + String.format("%.3f,", mAccY) + String.format("%.3f,", mAccZ) + "\r\n").getBytes(StandardCharsets.UTF_8));
-					} catch (IOException e) {
-						e.printStackTrace();
-					} finally {
-						if (fileOutputStream != null) {
-							try {
-								fileOutputStream.close();
-							} catch (IOException e) {
-								e.printStackTrace();
-							}
-						}
-					}
-				}
+				samples.publish(timestamp, accel.getX(), accel.getY(), accel.getZ());
+				setLatestSample(accel);
+			}
+		}
+
+		@Override
+		public void onFramesLost(final int count, final long timestamp) {
+			log(Log.WARN, "Accel frames lost: " + count);
+			if (recordSwitchOn) {
+				samples.publish(timestamp - recordStartNanos, RecordFormat.GAP_MARKER,
+						RecordFormat.GAP_MARKER, Math.min(count, Short.MAX_VALUE));
 			}
 		}
 
@@ -164,7 +320,7 @@ public class BLEManager extends ObservableBleManager {
 	};
 
 	/**
-	 * The Battery callback will be notified when the Battery state was read or sent to the target device.
+	 * The Battery callback will be notified when the Battery level was read from the target device.
 	 * <p>
 	 * This callback implements both {@link no.nordicsemi.android.ble.callback.DataReceivedCallback}
 	 * and {@link no.nordicsemi.android.ble.callback.DataSentCallback} and calls the same
@@ -177,18 +333,18 @@ public class BLEManager extends ObservableBleManager {
 	private final BLEBatteryDataCallback batteryCallback = new BLEBatteryDataCallback() {
 		@SuppressLint("WrongConstant")
 		@Override
-		public void onBatteryStateChanged(@NonNull final BluetoothDevice device,
-										  final boolean on) {
-			log(LogContract.Log.Level.APPLICATION, "LED " + (on ? "ON" : "OFF"));
-			// The BLEManager is initialized with a default Handler, which will use
-			// UI thread for the callbacks. setValue can be called safely.
-			// If you're using a different handler, or coroutines, use postValue(..) instead.
+		public void onBatteryLevelReceived(@NonNull final BluetoothDevice device,
+										   final int level) {
+			log(LogContract.Log.Level.APPLICATION, "Battery " + level + "%");
+			batteryLevelChanged = level != lastBatteryLevel;
+			lastBatteryLevel = level;
+			// Callbacks run on the BLE callback thread, use postValue(..) to update the UI.
+			batteryLevel.postValue(level);
 		}
 
 		@Override
 		public void onInvalidDataReceived(@NonNull final BluetoothDevice device,
 										  @NonNull final Data data) {
-			// Data can only invalid if we read them. We assume the app always sends correct data.
 			log(Log.WARN, "Battery invalid data received: " + data);
 		}
 	};
@@ -199,10 +355,23 @@ public class BLEManager extends ObservableBleManager {
 	private class BLEManagerGattCallback extends BleManagerGattCallback {
 		@Override
 		protected void initialize() {
+			requestThroughput();
 			setNotificationCallback(accelCharacteristic).with(accelCallback);
 			readCharacteristic(batteryCharacteristic).with(batteryCallback).enqueue();
 //			readCharacteristic(accelCharacteristic).with(accelCallback).enqueue();
 			enableNotifications(accelCharacteristic).enqueue();
+			for (final Channel channel : channels.getChannels()) {
+				final BluetoothGattCharacteristic characteristic = channel.getCharacteristic();
+				if (characteristic != null) {
+					setNotificationCallback(characteristic).with(channel);
+					enableNotifications(characteristic).enqueue();
+				}
+			}
+		}
+
+		@Override
+		protected void onDeviceReady() {
+			batteryScheduler.start();
 		}
 
 		@Override
@@ -211,6 +380,16 @@ public class BLEManager extends ObservableBleManager {
 			if (service != null) {
 				accelCharacteristic = service.getCharacteristic(LBS_UUID_ACCEL_CHAR);
 				batteryCharacteristic = service.getCharacteristic(LBS_UUID_BATTERY_CHAR);
+				// Additional channels are optional
+				for (final Channel channel : channels.getChannels()) {
+					final BluetoothGattCharacteristic characteristic =
+							service.getCharacteristic(channel.getCodec().getUuid());
+					if (characteristic != null
+							&& (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) > 0) {
+						channel.setCharacteristic(characteristic);
+						log(Log.INFO, channel.getCodec().getName() + " channel found");
+					}
+				}
 			}
 
 			boolean writeRequest = false;
@@ -223,20 +402,100 @@ public class BLEManager extends ObservableBleManager {
 			return supported;
 		}
 
+		/**
+		 * Requests the connection parameters giving the highest notification throughput: the
+		 * shortest connection interval, 2M PHY and the largest MTU. Each request falls back to
+		 * what the phone or the device supports, so the connection works with the defaults.
+		 */
+		private void requestThroughput() {
+			// A larger MTU lets the peripheral batch several samples into one notification,
+			// and on most phones enables the longer link layer packets as well.
+			// Devices that do not support it keep sending one sample per frame.
+			requestMtu(MAX_MTU)
+					.with((device, mtu) -> onMtuChanged(mtu))
+					.fail((device, status) -> {
+						log(Log.WARN, "MTU " + MAX_MTU + " not supported: " + status);
+						requestMtu(FALLBACK_MTU)
+								.with((d, mtu) -> onMtuChanged(mtu))
+								.fail((d, s) -> log(Log.WARN, "Requested MTU not supported: " + s))
+								.enqueue();
+					})
+					.enqueue();
+			// The connection interval is reported from Android 8 only
+			requestConnectionPriority(ConnectionPriorityRequest.CONNECTION_PRIORITY_HIGH)
+					.with((device, interval, latency, timeout) -> {
+						log(Log.INFO, "Connection interval " + (interval * 1.25) + " ms, latency "
+								+ latency + ", timeout " + (timeout * 10) + " ms");
+						updateLinkParameters(link.withConnection(interval, latency, timeout));
+					})
+					.fail((device, status) -> log(Log.WARN, "High connection priority not supported: " + status))
+					.enqueue();
+			final BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && adapter != null && adapter.isLe2MPhySupported()) {
+				setPreferredPhy(PhyRequest.PHY_LE_2M_MASK, PhyRequest.PHY_LE_2M_MASK, PhyRequest.PHY_OPTION_NO_PREFERRED)
+						.with((device, txPhy, rxPhy) -> {
+							log(Log.INFO, "PHY set to TX " + LinkParameters.getPhyName(txPhy)
+									+ ", RX " + LinkParameters.getPhyName(rxPhy));
+							updateLinkParameters(link.withPhy(txPhy, rxPhy));
+						})
+						// The device stays on 1M PHY
+						.fail((device, status) -> log(Log.WARN, "2M PHY rejected: " + status))
+						.enqueue();
+			} else {
+				log(Log.INFO, "2M PHY not supported by the phone");
+			}
+		}
+
+		private void onMtuChanged(final int mtu) {
+			log(Log.INFO, "MTU set to " + mtu + ", up to "
+					+ getMaxSamplesPerNotification(mtu) + " samples per notification");
+			updateLinkParameters(link.withMtu(mtu));
+		}
+
 		@Override
 		protected void onServicesInvalidated() {
+			recordSwitchOn = false;
+			stopRecording();
+			batteryScheduler.stop();
+			lastBatteryLevel = -1;
+			accelCallback.reset();
 			accelCharacteristic = null;
 			batteryCharacteristic = null;
+			updateLinkParameters(LinkParameters.DEFAULT);
+			for (final Channel channel : channels.getChannels()) {
+				channel.setCharacteristic(null);
+				channel.getBuffer().clear();
+			}
 		}
 	}
 
+	/**
+	 * Reads the battery level, when scheduled by the {@link #batteryScheduler}.
+	 */
+	private void readBatteryLevel() {
+		final BluetoothGattCharacteristic characteristic = batteryCharacteristic;
+		if (characteristic == null) {
+			batteryScheduler.onReadFinished(false);
+			return;
+		}
+		batteryLevelChanged = false;
+		readCharacteristic(characteristic)
+				.with(batteryCallback)
+				.done(device -> batteryScheduler.onReadFinished(batteryLevelChanged))
+				.fail((device, status) -> {
+					log(Log.WARN, "Battery read failed: " + status);
+					batteryScheduler.onReadFinished(false);
+				})
+				.enqueue();
+	}
+
 	/**
 	 * Sends a request to the device to turn the LED on or off.
 	 *
 	 * @param on true to turn the LED on, false to turn it off.
 	 */
 	@SuppressLint("SimpleDateFormat")
-	public void turnRecordSwitch(final boolean on) {
+	public synchronized void turnRecordSwitch(final boolean on) {
 		// Are we connected?
 		if (accelCharacteristic == null)
 			return;
@@ -244,16 +503,16 @@ public class BLEManager extends ObservableBleManager {
 		// No need to change?
 		if (recordSwitchOn == on)
 			return;
-		else {
-			recordSwitchOn = on;
-		}
 
-		if(recordSwitchOn){
+		if(on){
 
-			mFileName = (new SimpleDateFormat("yyyyMMdd_HH.mm.ss").format(new Date(System.currentTimeMillis())))+".csv";
-			dirRecord = context.getExternalFilesDir("RecordBLE");
+			final long startTime = System.currentTimeMillis();
+			final String sessionName = new SimpleDateFormat("yyyyMMdd_HH.mm.ss").format(new Date(startTime));
+			mFileName = sessionName + BinaryRecordFormat.EXTENSION;
+			dirRecord = context.getExternalFilesDir(RECORD_DIRECTORY);
 			if (!dirRecord.exists()) { dirRecord.mkdirs(); }
-			fileRecord = new File(dirRecord, mFileName);
+			final RecordSession session = new RecordSession(dirRecord, sessionName);
+			fileRecord = session.getPartFile(0);
 			if(!fileRecord.exists()) {
 				try {
 					fileRecord.createNewFile();
@@ -262,19 +521,30 @@ public class BLEManager extends ObservableBleManager {
 				}
 			}
 			try {
-				FileOutputStream fileOutputStream = new FileOutputStream(fileRecord);
-				fileOutputStream.write("X Accel,Y Accel,Z Accel,\r\n".getBytes(StandardCharsets.UTF_8));
+				final RecordFormat format = new BinaryRecordFormat(getBluetoothDevice().getAddress(),
+						startTime, BinaryRecordFormat.DEFAULT_SCALE);
+				// The writer closes the cursor when it stops
+				final SampleRing.Cursor cursor = samples.newCursor(SampleRing.Backpressure.GROW);
+				try {
+					recordWriter = new RecordWriter.Builder(session, format)
+							.setCompressed(compressRecordings)
+							.setSource(cursor)
+							.build();
+					recordCursor = cursor;
+				} catch (IOException e) {
+					cursor.close();
+					throw e;
+				}
+				// Samples are only published once the writer is there to take them
+				recordStartNanos = SystemClock.elapsedRealtimeNanos();
+				droppedAtStart = samples.getDropped();
+				callbackHandler.post(this::startStatistics);
+				recordSwitchOn = true;
 				log(Log.WARN, "fileRecord write success. " + fileRecord);
 			} catch (IOException e) {
+				// The switch stays off, nothing is recorded
+				log(Log.ERROR, "Recording not started: " + e.getMessage());
 				e.printStackTrace();
-			}finally {
-				if(fileOutputStream!=null) {
-					try {
-						fileOutputStream.close();
-					} catch (IOException e) {
-						e.printStackTrace();
-					}
-				}
 			}
 
 			if(dirRecord.exists())
@@ -283,6 +553,228 @@ public class BLEManager extends ObservableBleManager {
 			if(fileRecord.exists())
 				log(Log.WARN, "fileRecord create success. " + fileRecord);
 			else log(Log.WARN, "fileRecord create failed. " + fileRecord);
+		} else {
+			recordSwitchOn = false;
+			stopRecording();
+		}
+	}
+
+	/**
+	 * Sets whether recordings started from now on are compressed. Compressed recordings take
+	 * several times less space, at the cost of some CPU time on the writer thread.
+	 *
+	 * @param compressed true to compress the recordings.
+	 */
+	public void setRecordingCompressed(final boolean compressed) {
+		compressRecordings = compressed;
+	}
+
+	/**
+	 * Waits until the last recording session is completely written and closed, if it is still
+	 * closing. Must not be called on the UI thread.
+	 */
+	public static void awaitRecordingClosed() {
+		final RecordWriter writer = lastRecordWriter;
+		if (writer != null)
+			writer.close();
+	}
+
+	/**
+	 * Returns the number of accelerometer samples received on the current connection.
+	 */
+	public long getReceivedSamples() {
+		return accelCallback.getSampleCount();
+	}
+
+	/**
+	 * Returns the number of bytes of accelerometer notifications received on the current connection.
+	 */
+	public long getReceivedBytes() {
+		return accelCallback.getByteCount();
+	}
+
+	/**
+	 * Returns the tracker of the frame sequence counters, with the lost frame counters
+	 * of the current connection.
+	 */
+	@NonNull
+	public SequenceTracker getSequenceTracker() {
+		return accelCallback.getSequenceTracker();
+	}
+
+	/**
+	 * Returns the number of samples that fit into a notification with the given MTU.
+	 */
+	private static int getMaxSamplesPerNotification(final int mtu) {
+		// 3 bytes of the ATT header
+		final int payload = mtu - 3 - AccelFrame.HEADER_SIZE - AccelFrame.CHECK_SIZE;
+		return Math.max(0, Math.min(AccelFrame.MAX_SAMPLES, payload / AccelFrame.SAMPLE_SIZE));
+	}
+
+	private void updateLinkParameters(@NonNull final LinkParameters parameters) {
+		// Called on the BLE callback thread
+		link = parameters;
+		linkParameters.postValue(parameters);
+	}
+
+	/**
+	 * Keeps a copy of the sample for the UI. Samples arriving before the UI took the previous
+	 * one replace it, so the UI work does not depend on the sample rate, and nothing is
+	 * allocated per sample.
+	 */
+	private void setLatestSample(@NonNull final AccelSample sample) {
+		final Runnable waiter;
+		synchronized (latestSample) {
+			latestSample.copyFrom(sample);
+			latestSampleFresh = true;
+			waiter = latestSampleWaiter;
+			latestSampleWaiter = null;
+		}
+		if (waiter != null)
+			waiter.run();
+	}
+
+	/**
+	 * Sets the callback run once, on the BLE callback thread, when the next sample arrives.
+	 * This lets the UI stop refreshing while no samples arrive.
+	 *
+	 * @param waiter the callback, or null to clear the one set before.
+	 * @return true if the callback was set, false if a sample that was not taken yet is already
+	 * waiting, in which case the callback is not set.
+	 */
+	public boolean awaitLatestSample(@Nullable final Runnable waiter) {
+		synchronized (latestSample) {
+			if (waiter != null && latestSampleFresh)
+				return false;
+			latestSampleWaiter = waiter;
+			return true;
+		}
+	}
+
+	/**
+	 * Copies the latest sample received while recording into the given one. This is meant to be
+	 * called by the UI once per frame, the samples received in between are read from the
+	 * {@link #getSamples() ring}.
+	 *
+	 * @param target the sample to copy into.
+	 * @return true if a sample was received since the previous call, false otherwise.
+	 */
+	public boolean takeLatestSample(@NonNull final AccelSample target) {
+		synchronized (latestSample) {
+			if (!latestSampleFresh)
+				return false;
+			target.copyFrom(latestSample);
+			latestSampleFresh = false;
+			return true;
 		}
 	}
+
+	/**
+	 * Starts updating the arrival and sample statistics of a new recording session, on the BLE
+	 * callback thread.
+	 */
+	private void startStatistics() {
+		// Samples left from the previous session are not counted
+		statisticsCursor.poll(statisticsListener, Integer.MAX_VALUE);
+		arrivalStatistics.reset();
+		for (final SlidingStatistics statistics : sampleStatistics)
+			statistics.reset();
+		callbackHandler.removeCallbacks(statisticsUpdater);
+		updateStatistics();
+	}
+
+	private void updateStatistics() {
+		statisticsCursor.poll(statisticsListener, Integer.MAX_VALUE);
+		// Samples leave the windows also when the stream stalls or stops
+		final long now = SystemClock.elapsedRealtimeNanos() - recordStartNanos;
+		boolean windowsEmpty = true;
+		for (final SlidingStatistics statistics : sampleStatistics) {
+			statistics.expireBefore(now);
+			if (statistics.getWindow() != SlidingStatistics.WHOLE_SESSION)
+				windowsEmpty &= statistics.getCount() == 0;
+		}
+		// After the session, the updates go on until the windows are empty
+		if (recordSwitchOn || !windowsEmpty)
+			callbackHandler.postDelayed(statisticsUpdater, STATISTICS_INTERVAL_MS);
+	}
+
+	/**
+	 * Returns the ring with the samples of the current recording session. Consumers read it
+	 * through their own {@link SampleRing#newCursor cursor}, which they must close when done.
+	 */
+	@NonNull
+	public SampleRing getSamples() {
+		return samples;
+	}
+
+	/**
+	 * Returns the cursor the recording writer reads the samples with, or null if not recording.
+	 */
+	@Nullable
+	public SampleRing.Cursor getRecordCursor() {
+		return recordCursor;
+	}
+
+	/**
+	 * Returns the arrival statistics of the samples of the current, or last, recording session.
+	 */
+	@NonNull
+	public ArrivalStatistics getArrivalStatistics() {
+		return arrivalStatistics;
+	}
+
+	/**
+	 * Returns the statistics of the sample values of the current, or last, recording session
+	 * over the given window. They are updated on the BLE callback thread a few times a second.
+	 *
+	 * @param window the index of the window in {@link #STATISTICS_WINDOWS_NS}.
+	 */
+	@NonNull
+	public SlidingStatistics getSampleStatistics(final int window) {
+		return sampleStatistics[window];
+	}
+
+	@NonNull
+	private static SlidingStatistics[] createSampleStatistics(@NonNull final long[] windows) {
+		final SlidingStatistics[] statistics = new SlidingStatistics[windows.length];
+		for (int i = 0; i < windows.length; i++)
+			statistics[i] = new SlidingStatistics(windows[i]);
+		return statistics;
+	}
+
+	/**
+	 * Stops the current recording, if any. The writer is told to stop right away, and its
+	 * remaining samples are written and the file closed on a background thread, so neither the
+	 * UI thread nor the BLE callback thread waits for the storage.
+	 * See {@link #awaitRecordingClosed()}.
+	 */
+	private synchronized void stopRecording() {
+		final RecordWriter writer = recordWriter;
+		final SampleRing.Cursor cursor = recordCursor;
+		recordWriter = null;
+		recordCursor = null;
+		if (writer == null)
+			return;
+		writer.stop();
+		lastRecordWriter = writer;
+		new Thread(() -> {
+			writer.close();
+			if (cursor != null)
+				log(Log.INFO, "Recording backlog: at most " + cursor.getHighWaterMark() + " samples, buffer "
+						+ samples.getCapacity() + " samples");
+			if (writer.getError() != null)
+				log(Log.ERROR, "Recording failed: " + writer.getError().getMessage());
+		}, "RecordWriterClose").start();
+		final long dropped = samples.getDropped() - droppedAtStart;
+		if (dropped > 0)
+			log(Log.WARN, "Recording dropped " + dropped + " samples");
+		log(Log.INFO, "Recording arrival: " + arrivalStatistics);
+		final AccelFramer framer = accelCallback.getFramer();
+		log(Log.INFO, "Frames received: " + framer.getFrameCount() + ", check errors: "
+				+ framer.getCheckErrors() + ", bytes dropped: " + framer.getDroppedBytes());
+		final SequenceTracker sequence = accelCallback.getSequenceTracker();
+		if (sequence.isArmed())
+			log(Log.INFO, "Frames lost: " + sequence.getLost() + ", duplicates: " + sequence.getDuplicates()
+					+ ", reordered: " + sequence.getReordered());
+	}
 }
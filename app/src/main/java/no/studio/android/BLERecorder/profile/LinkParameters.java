@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile;
+
+import androidx.annotation.NonNull;
+
+import no.nordicsemi.android.ble.PhyRequest;
+
+/**
+ * The connection parameters negotiated with the device. The values not reported by the phone
+ * are 0, for example the connection interval before Android 8.
+ */
+public class LinkParameters {
+	/** The parameters before anything was negotiated. */
+	public static final LinkParameters DEFAULT = new LinkParameters(23, PhyRequest.PHY_LE_1M, PhyRequest.PHY_LE_1M, 0, 0, 0);
+
+	private final int mtu;
+	private final int txPhy, rxPhy;
+	private final int interval, latency, timeout;
+
+	LinkParameters(final int mtu, final int txPhy, final int rxPhy,
+				   final int interval, final int latency, final int timeout) {
+		this.mtu = mtu;
+		this.txPhy = txPhy;
+		this.rxPhy = rxPhy;
+		this.interval = interval;
+		this.latency = latency;
+		this.timeout = timeout;
+	}
+
+	/** Returns a copy with the given MTU. */
+	@NonNull
+	LinkParameters withMtu(final int mtu) {
+		return new LinkParameters(mtu, txPhy, rxPhy, interval, latency, timeout);
+	}
+
+	/** Returns a copy with the given PHYs, as {@link PhyRequest#PHY_LE_1M} and friends. */
+	@NonNull
+	LinkParameters withPhy(final int txPhy, final int rxPhy) {
+		return new LinkParameters(mtu, txPhy, rxPhy, interval, latency, timeout);
+	}
+
+	/** Returns a copy with the given connection parameters. */
+	@NonNull
+	LinkParameters withConnection(final int interval, final int latency, final int timeout) {
+		return new LinkParameters(mtu, txPhy, rxPhy, interval, latency, timeout);
+	}
+
+	public int getMtu() {
+		return mtu;
+	}
+
+	public int getTxPhy() {
+		return txPhy;
+	}
+
+	public int getRxPhy() {
+		return rxPhy;
+	}
+
+	/**
+	 * Returns the connection interval in milliseconds, or 0 if not known.
+	 */
+	public double getIntervalMillis() {
+		// The interval is given in units of 1.25 ms
+		return interval * 1.25;
+	}
+
+	/**
+	 * Returns the number of connection events the device may skip, or 0 if not known.
+	 */
+	public int getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Returns the supervision timeout in milliseconds, or 0 if not known.
+	 */
+	public int getTimeoutMillis() {
+		// The timeout is given in units of 10 ms
+		return timeout * 10;
+	}
+
+	/**
+	 * Returns the name of the given PHY, as shown to the user.
+	 */
+	@NonNull
+	public static String getPhyName(final int phy) {
+		switch (phy) {
+			case PhyRequest.PHY_LE_2M:
+				return "2M";
+			case PhyRequest.PHY_LE_CODED:
+				return "Coded";
+			default:
+				return "1M";
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Schedules periodic reads of a characteristic, like the battery level, so that they do not
+ * disturb the notifications streamed by the device.
+ * <p>
+ * While notifications are streaming, a due read is not issued from a timer but right after the
+ * next notification was handled, on the same thread, so the read request is queued behind the
+ * notification rather than racing it. This is a heuristic: Android does not tell where
+ * a connection event ends, so the read may still be issued in the middle of a burst, and
+ * it only keeps reads in step with the stream. A due read waits for a notification no longer
+ * than the maximum deferral, and is issued at once when the stream has stopped. Reads are never
+ * issued closer than the minimum spacing, and only one is in flight at a time, so requests made
+ * in the meantime are coalesced into it. The interval
+ * adapts: it is doubled, up to the maximum, each time the value did not change, and starts over
+ * from the minimum when it did.
+ * <p>
+ * All methods must be called on the thread of the handler, the BLE callback thread.
+ */
+public class ReadScheduler {
+	/** Time after the last notification the stream is considered stopped, in milliseconds. */
+	private static final long STREAM_TIMEOUT_MS = 200;
+
+	/**
+	 * Issues the read. When it completes, with success or not, the reader must call
+	 * {@link #onReadFinished(boolean)}.
+	 */
+	public interface Reader {
+		void read();
+	}
+
+	private final Handler handler;
+	private final Reader reader;
+	private final long minIntervalMs, maxIntervalMs, minSpacingMs, maxDeferMs;
+	private final Runnable timeout = this::onTimeout;
+	private long intervalMs;
+	private long lastReadTime = Long.MIN_VALUE / 2;
+	private long lastNotificationTime = Long.MIN_VALUE / 2;
+	private long dueTime;
+	private boolean started, due, inFlight;
+
+	/**
+	 * @param handler       the handler of the BLE callback thread.
+	 * @param reader        the reader issuing the read request.
+	 * @param minIntervalMs the shortest interval between reads, used after the value changed.
+	 * @param maxIntervalMs the longest interval between reads, reached while the value is stable.
+	 * @param minSpacingMs  the shortest time between two reads, also when requested.
+	 * @param maxDeferMs    the longest time a due read waits for a notification.
+	 */
+	public ReadScheduler(@NonNull final Handler handler, @NonNull final Reader reader,
+						 final long minIntervalMs, final long maxIntervalMs,
+						 final long minSpacingMs, final long maxDeferMs) {
+		this.handler = handler;
+		this.reader = reader;
+		this.minIntervalMs = minIntervalMs;
+		this.maxIntervalMs = Math.max(minIntervalMs, maxIntervalMs);
+		this.minSpacingMs = minSpacingMs;
+		this.maxDeferMs = maxDeferMs;
+		this.intervalMs = minIntervalMs;
+	}
+
+	/**
+	 * Starts the periodic reads, the first one after the minimum interval.
+	 */
+	public void start() {
+		started = true;
+		due = false;
+		intervalMs = minIntervalMs;
+		schedule(intervalMs);
+	}
+
+	/**
+	 * Stops the periodic reads. A read in flight is not cancelled.
+	 */
+	public void stop() {
+		started = false;
+		due = false;
+		handler.removeCallbacks(timeout);
+	}
+
+	/**
+	 * Requests a read as soon as the stream and the minimum spacing allow. Requests made while
+	 * a read is due or in flight are coalesced into it.
+	 */
+	public void requestRead() {
+		if (!started || due || inFlight)
+			return;
+		handler.removeCallbacks(timeout);
+		markDue();
+	}
+
+	/**
+	 * Tells the scheduler a notification was handled. This is called for every notification,
+	 * so it only compares a few numbers unless a read is due.
+	 */
+	public void onNotification() {
+		if (!due) {
+			lastNotificationTime = SystemClock.uptimeMillis();
+			return;
+		}
+		final long now = SystemClock.uptimeMillis();
+		lastNotificationTime = now;
+		if (!inFlight && now - lastReadTime >= minSpacingMs)
+			issue(now);
+	}
+
+	/**
+	 * Tells the scheduler the read has completed.
+	 *
+	 * @param changed whether the value read differs from the previous one.
+	 */
+	public void onReadFinished(final boolean changed) {
+		inFlight = false;
+		intervalMs = changed ? minIntervalMs : Math.min(maxIntervalMs, intervalMs * 2);
+		if (started)
+			schedule(intervalMs);
+	}
+
+	private void schedule(final long delayMs) {
+		handler.removeCallbacks(timeout);
+		handler.postDelayed(timeout, delayMs);
+	}
+
+	private void markDue() {
+		due = true;
+		dueTime = SystemClock.uptimeMillis();
+		onTimeout();
+	}
+
+	private void onTimeout() {
+		if (!started || inFlight)
+			return;
+		final long now = SystemClock.uptimeMillis();
+		if (!due) {
+			due = true;
+			dueTime = now;
+		}
+		final long spacing = lastReadTime + minSpacingMs - now;
+		if (spacing > 0) {
+			schedule(spacing);
+			return;
+		}
+		// While streaming, the next notification issues the read, unless it waited too long
+		final boolean streaming = now - lastNotificationTime < STREAM_TIMEOUT_MS;
+		if (!streaming || now - dueTime >= maxDeferMs) {
+			issue(now);
+		} else {
+			schedule(dueTime + maxDeferMs - now);
+		}
+	}
+
+	private void issue(final long now) {
+		handler.removeCallbacks(timeout);
+		due = false;
+		inFlight = true;
+		lastReadTime = now;
+		reader.read();
+	}
+}
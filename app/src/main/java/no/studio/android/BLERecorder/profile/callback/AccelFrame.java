@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.callback;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Layout and validation of the accelerometer frame.
+ * <pre>
+ * offset size
+ *   0     2   sync bytes: AA FF
+ *   2     1   sequence counter, incremented for every frame; a constant F1 on older peripherals
+ *   3     1   payload length, 6 bytes per sample
+ *   4     2   X acceleration of the first sample, int16 little endian, in milli-g
+ *   6     2   Y acceleration
+ *   8     2   Z acceleration
+ *  10     6   more samples, if the payload length is a multiple of 6
+ *   n     1   sum check of the bytes before it
+ *   n+1   1   add check, the sum of the running sums
+ * </pre>
+ * A frame with one sample has 12 bytes. With a larger MTU the peripheral may batch
+ * up to {@link #MAX_SAMPLES} samples into one notification.
+ * This class has no Android dependencies.
+ */
+public final class AccelFrame {
+    /** Size of a frame with one sample. */
+    public static final int SIZE = 12;
+    /** Size of the header, including the payload length. */
+    public static final int HEADER_SIZE = 4;
+    /** Size of one sample in the payload. */
+    public static final int SAMPLE_SIZE = 6;
+    /** Size of the sum and add checks. */
+    public static final int CHECK_SIZE = 2;
+    /** The maximum number of samples in a frame, limited by the 8-bit payload length. */
+    public static final int MAX_SAMPLES = 255 / SAMPLE_SIZE;
+    /** Offset of the sequence counter. */
+    public static final int SEQUENCE_OFFSET = 2;
+    /** Offset of the payload length. */
+    public static final int LENGTH_OFFSET = 3;
+    /** Offsets of the X, Y and Z values of the first sample. Next samples follow every {@link #SAMPLE_SIZE} bytes. */
+    public static final int X_OFFSET = 4, Y_OFFSET = 6, Z_OFFSET = 8;
+
+    private AccelFrame() {
+        // Utility class.
+    }
+
+    /**
+     * Returns the number of samples in the frame, without verifying the checks.
+     *
+     * @param frame  the buffer with the frame.
+     * @param offset the offset of the frame in the buffer.
+     * @param length the length of the frame.
+     * @return the number of samples, or -1 if the payload length does not match the length
+     * of the frame or is not a multiple of {@link #SAMPLE_SIZE}.
+     */
+    public static int getSampleCount(@NonNull final byte[] frame, final int offset, final int length) {
+        if (length < HEADER_SIZE + CHECK_SIZE)
+            return -1;
+        final int payloadLength = frame[offset + LENGTH_OFFSET] & 0xFF;
+        if (payloadLength == 0 || payloadLength % SAMPLE_SIZE != 0
+                || HEADER_SIZE + payloadLength + CHECK_SIZE != length)
+            return -1;
+        return payloadLength / SAMPLE_SIZE;
+    }
+
+    /**
+     * Verifies the sum and add checks of the frame.
+     *
+     * @param frame  the buffer with the frame.
+     * @param offset the offset of the frame in the buffer.
+     * @param length the number of bytes of the frame available in the buffer.
+     * @return true if the payload length fits the frame and both checks match.
+     */
+    public static boolean isValid(@NonNull final byte[] frame, final int offset, final int length) {
+        if (length < HEADER_SIZE + CHECK_SIZE)
+            return false;
+        final int end = offset + HEADER_SIZE + (frame[offset + LENGTH_OFFSET] & 0xFF);
+        if (end + CHECK_SIZE > offset + length)
+            return false;
+        byte sumCheck = 0, addCheck = 0;
+        for (int i = offset; i < end; i++) {
+            sumCheck += frame[i];
+            addCheck += sumCheck;
+        }
+        return sumCheck == frame[end] && addCheck == frame[end + 1];
+    }
+
+    /**
+     * Returns the signed 16-bit little endian value at the given offset.
+     */
+    public static int getInt16(@NonNull final byte[] frame, final int offset) {
+        return (short) ((frame[offset] & 0xFF) | (frame[offset + 1] << 8));
+    }
+}
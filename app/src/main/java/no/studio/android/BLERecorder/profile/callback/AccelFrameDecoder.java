@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.callback;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The single decode stage of the accelerometer frames.
+ * <p>
+ * Each frame is validated and unpacked once, into {@link AccelSample}s taken from a small pool,
+ * which are then shared by all consumers: the recording, the statistics and the UI. The pool is
+ * a ring, so a sample is reused after {@link #POOL_SIZE} more samples were decoded. Decoding
+ * does not allocate. The decoder is not thread safe and should be used on the thread receiving
+ * the notifications.
+ * <p>
+ * A frame may carry several samples, see {@link AccelFrame}, but only one arrival time. The last
+ * sample of the frame gets the arrival time and the earlier ones are spread evenly back over the
+ * time since the previous frame, so timestamps keep increasing.
+ */
+public class AccelFrameDecoder {
+    /** Number of pooled samples, at least as many as a frame may carry. */
+    public static final int POOL_SIZE = 64;
+    /** Longest gap between frames used to spread the timestamps of batched samples. */
+    private static final long MAX_BATCH_SPAN_NS = 1_000_000_000L;
+
+    public interface Listener {
+        /**
+         * Called for each sample of a valid frame, in order.
+         *
+         * @param sample the decoded sample. It is reused for later samples, so it must not be kept.
+         */
+        void onSampleDecoded(@NonNull AccelSample sample);
+    }
+
+    private final AccelSample[] pool = new AccelSample[POOL_SIZE];
+    /** Copies of the raw frames, one per pooled sample, so no frame is overwritten before its samples. */
+    private final byte[][] frames = new byte[POOL_SIZE][];
+    private int nextSample, nextFrame;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    public AccelFrameDecoder() {
+        final int maxFrameSize = AccelFrame.HEADER_SIZE + AccelFrame.MAX_SAMPLES * AccelFrame.SAMPLE_SIZE
+                + AccelFrame.CHECK_SIZE;
+        for (int i = 0; i < POOL_SIZE; i++) {
+            pool[i] = new AccelSample();
+            frames[i] = new byte[maxFrameSize];
+        }
+    }
+
+    /**
+     * Validates and decodes the frame.
+     *
+     * @param frame     the buffer with the frame.
+     * @param offset    the offset of the frame in the buffer.
+     * @param length    the length of the frame.
+     * @param timestamp the time the frame was received.
+     * @param listener  the listener notified with each sample.
+     * @return the number of samples decoded, or 0 if the frame is invalid.
+     */
+    public int decode(@NonNull final byte[] frame, final int offset, final int length,
+                      final long timestamp, @NonNull final Listener listener) {
+        final int count = AccelFrame.getSampleCount(frame, offset, length);
+        if (count <= 0 || !AccelFrame.isValid(frame, offset, length))
+            return 0;
+
+        final byte[] copy = frames[nextFrame];
+        nextFrame = (nextFrame + 1) % POOL_SIZE;
+        System.arraycopy(frame, offset, copy, 0, length);
+
+        final long span = timestamp - lastTimestamp;
+        final long interval = count > 1 && lastTimestamp != Long.MIN_VALUE && span > 0
+                && span <= MAX_BATCH_SPAN_NS ? span / count : 0;
+        lastTimestamp = timestamp;
+
+        for (int i = 0; i < count; i++) {
+            final int position = offset + i * AccelFrame.SAMPLE_SIZE;
+            final AccelSample sample = pool[nextSample];
+            nextSample = (nextSample + 1) % POOL_SIZE;
+            sample.set(timestamp - (count - 1 - i) * interval,
+                    AccelFrame.getInt16(frame, position + AccelFrame.X_OFFSET),
+                    AccelFrame.getInt16(frame, position + AccelFrame.Y_OFFSET),
+                    AccelFrame.getInt16(frame, position + AccelFrame.Z_OFFSET));
+            sample.setFrame(copy, length);
+            listener.onSampleDecoded(sample);
+        }
+        return count;
+    }
+}
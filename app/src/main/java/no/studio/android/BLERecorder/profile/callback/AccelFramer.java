@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.callback;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Reassembles accelerometer frames from a stream of notifications.
+ * <p>
+ * Notifications are appended to a reused byte ring. Frames are found by the AA FF sync bytes,
+ * their length is taken from the payload length byte and the sum and add checks are verified
+ * before the frame is emitted, so a frame may be split across notifications and several frames
+ * may come in one. After garbage or a failed check the framer drops one byte and searches for
+ * the next sync bytes. Dropped bytes are counted. The framer does not allocate and has no
+ * Android dependencies; it is not thread safe.
+ */
+public class AccelFramer {
+    /** The sync bytes every frame starts with. */
+    public static final byte SYNC_0 = (byte) 0xAA, SYNC_1 = (byte) 0xFF;
+    /** The maximum size of a frame, with the largest payload length. */
+    public static final int MAX_FRAME_SIZE = AccelFrame.HEADER_SIZE + 255 + AccelFrame.CHECK_SIZE;
+    /** Size of the ring, a power of 2 able to hold a partial frame and a full notification. */
+    private static final int RING_SIZE = 1024;
+
+    public interface Listener {
+        /**
+         * Called for each complete frame with valid checks.
+         *
+         * @param frame  the buffer with the frame. It is reused for the next frame.
+         * @param offset the offset of the frame in the buffer.
+         * @param length the length of the frame.
+         */
+        void onFrame(@NonNull byte[] frame, int offset, int length);
+    }
+
+    private final byte[] ring = new byte[RING_SIZE];
+    private final byte[] frame = new byte[MAX_FRAME_SIZE];
+    private int head, size;
+    private long frames, droppedBytes, checkErrors;
+
+    /**
+     * Appends received bytes and emits all frames completed by them.
+     *
+     * @param data     the received bytes.
+     * @param offset   the offset of the bytes in the buffer.
+     * @param length   the number of bytes.
+     * @param listener the listener notified with each complete frame.
+     * @return the number of frames emitted.
+     */
+    public int append(@NonNull final byte[] data, int offset, int length, @NonNull final Listener listener) {
+        // A notification larger than the free space pushes out the oldest bytes
+        if (length > RING_SIZE) {
+            drop(size);
+            droppedBytes += length - RING_SIZE;
+            offset += length - RING_SIZE;
+            length = RING_SIZE;
+        }
+        if (size + length > RING_SIZE)
+            drop(size + length - RING_SIZE);
+        final int tail = (head + size) & (RING_SIZE - 1);
+        final int first = Math.min(length, RING_SIZE - tail);
+        System.arraycopy(data, offset, ring, tail, first);
+        System.arraycopy(data, offset + first, ring, 0, length - first);
+        size += length;
+
+        int emitted = 0;
+        while (size >= AccelFrame.HEADER_SIZE) {
+            if (ring[head] != SYNC_0 || ring[(head + 1) & (RING_SIZE - 1)] != SYNC_1) {
+                drop(1);
+                continue;
+            }
+            final int frameLength = AccelFrame.HEADER_SIZE
+                    + (ring[(head + AccelFrame.LENGTH_OFFSET) & (RING_SIZE - 1)] & 0xFF)
+                    + AccelFrame.CHECK_SIZE;
+            if (size < frameLength)
+                break;
+            copyFrame(frameLength);
+            if (!AccelFrame.isValid(frame, 0, frameLength)) {
+                checkErrors++;
+                drop(1);
+                continue;
+            }
+            head = (head + frameLength) & (RING_SIZE - 1);
+            size -= frameLength;
+            frames++;
+            emitted++;
+            listener.onFrame(frame, 0, frameLength);
+        }
+        return emitted;
+    }
+
+    /**
+     * Discards the buffered bytes, for example after reconnection. The counters are kept.
+     */
+    public void clear() {
+        head = size = 0;
+    }
+
+    /**
+     * Clears the counters.
+     */
+    public void resetCounters() {
+        frames = droppedBytes = checkErrors = 0;
+    }
+
+    /** Returns the number of frames emitted. */
+    public long getFrameCount() {
+        return frames;
+    }
+
+    /** Returns the number of bytes dropped while searching for frames. */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /** Returns the number of frames with the sync bytes and failed checks. */
+    public long getCheckErrors() {
+        return checkErrors;
+    }
+
+    /** Returns the number of bytes waiting for the rest of a frame. */
+    public int getPendingBytes() {
+        return size;
+    }
+
+    private void drop(final int count) {
+        head = (head + count) & (RING_SIZE - 1);
+        size -= count;
+        droppedBytes += count;
+    }
+
+    private void copyFrame(final int length) {
+        final int first = Math.min(length, RING_SIZE - head);
+        System.arraycopy(ring, head, frame, 0, first);
+        System.arraycopy(ring, 0, frame, first, length - first);
+    }
+}
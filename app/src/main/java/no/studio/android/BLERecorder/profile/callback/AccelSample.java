@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.callback;
+
+import androidx.annotation.NonNull;
+
+/**
+ * A decoded accelerometer sample.
+ * <p>
+ * Samples are pooled by the {@link AccelFrameDecoder} and reused for later frames, so consumers
+ * must read the values when notified and must not keep the sample. Consumers that need the
+ * sample later, for example on another thread, keep a copy with {@link #copyFrom(AccelSample)}.
+ */
+public final class AccelSample {
+    private long timestamp;
+    private int x, y, z;
+    private byte[] frame = new byte[0];
+    private int frameLength;
+    /** The buffer of the copied frames, null for pooled samples. */
+    private byte[] ownFrame;
+
+    /**
+     * Creates an empty sample, to be filled with {@link #copyFrom(AccelSample)}.
+     */
+    public AccelSample() {
+    }
+
+    /**
+     * Copies the values and the raw frame of the given sample into this one. The frame is copied
+     * into a buffer owned by this sample, which is reused by later copies.
+     */
+    public void copyFrom(@NonNull final AccelSample sample) {
+        timestamp = sample.timestamp;
+        x = sample.x;
+        y = sample.y;
+        z = sample.z;
+        if (ownFrame == null || ownFrame.length < sample.frameLength)
+            ownFrame = new byte[sample.frame.length];
+        System.arraycopy(sample.frame, 0, ownFrame, 0, sample.frameLength);
+        frame = ownFrame;
+        frameLength = sample.frameLength;
+    }
+
+    /**
+     * Returns the time the frame was received, in {@link android.os.SystemClock#elapsedRealtimeNanos()}.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /** Returns the X acceleration, in milli-g. */
+    public int getX() {
+        return x;
+    }
+
+    /** Returns the Y acceleration, in milli-g. */
+    public int getY() {
+        return y;
+    }
+
+    /** Returns the Z acceleration, in milli-g. */
+    public int getZ() {
+        return z;
+    }
+
+    /**
+     * Returns the buffer with a copy of the raw frame the sample was decoded from, shared with
+     * the other samples of the frame. Only the first {@link #getFrameLength()} bytes are valid.
+     */
+    @NonNull
+    public byte[] getFrame() {
+        return frame;
+    }
+
+    public int getFrameLength() {
+        return frameLength;
+    }
+
+    void set(final long timestamp, final int x, final int y, final int z) {
+        this.timestamp = timestamp;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+    }
+
+    void setFrame(@NonNull final byte[] frame, final int length) {
+        this.frame = frame;
+        this.frameLength = length;
+    }
+}
@@ -24,14 +24,20 @@ package no.studio.android.BLERecorder.profile.callback;
 
 import androidx.annotation.NonNull;
 
-import no.nordicsemi.android.ble.data.Data;
-
 public interface BLEAccelCallback {
 
     /**
-     * Called when a button was pressed or released on device.
+     * Called for each sample of a valid accelerometer frame.
+     *
+     * @param sample the decoded sample. It is reused for later frames, so it must not be kept.
+     */
+    void onAccelSampleReceived(@NonNull final AccelSample sample);
+
+    /**
+     * Called when the sequence counters show that frames were lost before the next one.
      *
-     * @param accel true if the button was pressed, false if released.
+     * @param count     the number of frames lost.
+     * @param timestamp the time the gap was detected, in {@link android.os.SystemClock#elapsedRealtimeNanos()}.
      */
-    void onAccelDataChanged(@NonNull final Data accel);
+    void onFramesLost(final int count, final long timestamp);
 }
@@ -23,6 +23,7 @@
 package no.studio.android.BLERecorder.profile.callback;
 
 import android.bluetooth.BluetoothDevice;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 
@@ -31,25 +32,83 @@ import no.nordicsemi.android.ble.data.Data;
 
 @SuppressWarnings("ConstantConditions")
 public abstract class BLEAccelDataCallback implements ProfileDataCallback, BLEAccelCallback {
+    private final AccelFramer framer = new AccelFramer();
+    private final AccelFrameDecoder decoder = new AccelFrameDecoder();
+    private final SequenceTracker sequence = new SequenceTracker();
+    private final AccelFrameDecoder.Listener sampleListener = this::onAccelSampleReceived;
+    private final AccelFramer.Listener frameListener = this::onFrame;
+    /** The time the notification being framed was received. */
+    private long timestamp;
+    private int invalidFrames;
+    private volatile long samples;
+    private volatile long bytes;
 
     @Override
     public void onDataReceived(@NonNull final BluetoothDevice device, @NonNull final Data data) {
-
-        if (data.size() != 12) {
-            onInvalidDataReceived(device, data);
+        // Stamp the notification before anything else, so the time is as close to its arrival as possible
+        timestamp = SystemClock.elapsedRealtimeNanos();
+        final byte[] value = data.getValue();
+        if (value == null)
             return;
-        }
-        byte sumCheck = 0, addCheck = 0;
-        byte[] dataBuff = data.getValue();
-        for (byte i = 0; i < (dataBuff[3]+4); i++) {
-            sumCheck += dataBuff[i];
-            addCheck += sumCheck;
-        }
-        if((sumCheck == dataBuff[dataBuff[3]+4]) && (addCheck == dataBuff[dataBuff[3]+5])) {
-            onAccelDataChanged(data);
-            return; //true
-        }else{
+        bytes += value.length;
+        // Frames may be split across notifications, or come several in one
+        final long dropped = framer.getDroppedBytes();
+        invalidFrames = 0;
+        framer.append(value, 0, value.length, frameListener);
+        if (framer.getDroppedBytes() != dropped || invalidFrames > 0) {
             onInvalidDataReceived(device, data);
         }
     }
+
+    /**
+     * Returns the framer, with the counters of frames and dropped bytes.
+     */
+    @NonNull
+    public AccelFramer getFramer() {
+        return framer;
+    }
+
+    /**
+     * Returns the tracker of the frame sequence counters, with the lost frame counters.
+     */
+    @NonNull
+    public SequenceTracker getSequenceTracker() {
+        return sequence;
+    }
+
+    /**
+     * Returns the number of samples received since the last reset.
+     */
+    public long getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * Returns the number of bytes of notifications received since the last reset.
+     */
+    public long getByteCount() {
+        return bytes;
+    }
+
+    /**
+     * Discards a partial frame and the sequence state, for example when the device disconnected.
+     */
+    public void reset() {
+        framer.clear();
+        sequence.reset();
+        samples = 0;
+        bytes = 0;
+    }
+
+    private void onFrame(@NonNull final byte[] frame, final int offset, final int length) {
+        final int lost = sequence.onFrame(frame[offset + AccelFrame.SEQUENCE_OFFSET] & 0xFF, timestamp);
+        if (lost == SequenceTracker.DUPLICATE)
+            return;
+        if (lost > 0)
+            onFramesLost(lost, timestamp);
+        final int count = decoder.decode(frame, offset, length, timestamp, sampleListener);
+        if (count == 0)
+            invalidFrames++;
+        samples += count;
+    }
 }
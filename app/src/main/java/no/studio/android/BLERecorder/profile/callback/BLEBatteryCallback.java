@@ -29,10 +29,10 @@ import androidx.annotation.NonNull;
 public interface BLEBatteryCallback {
 
     /**
-     * Called when the data has been sent to the connected device.
+     * Called when the battery level has been read from the connected device.
      *
      * @param device the target device.
-     * @param on true when LED was enabled, false when disabled.
+     * @param level  the battery level, in percent.
      */
-    void onBatteryStateChanged(@NonNull final BluetoothDevice device, final boolean on);
+    void onBatteryLevelReceived(@NonNull final BluetoothDevice device, final int level);
 }
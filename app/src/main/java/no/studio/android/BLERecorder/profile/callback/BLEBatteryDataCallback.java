@@ -32,8 +32,7 @@ import no.nordicsemi.android.ble.data.Data;
 
 @SuppressWarnings("ConstantConditions")
 public abstract class BLEBatteryDataCallback implements ProfileDataCallback, DataSentCallback, BLEBatteryCallback {
-    private static final byte STATE_OFF = 0x00;
-    private static final byte STATE_ON = 0x01;
+    private static final int LEVEL_MAX = 100;
 
     @Override
     public void onDataReceived(@NonNull final BluetoothDevice device, @NonNull final Data data) {
@@ -51,11 +50,9 @@ public abstract class BLEBatteryDataCallback implements ProfileDataCallback, Dat
             return;
         }
 
-        final int state = data.getIntValue(Data.FORMAT_UINT8, 0);
-        if (state == STATE_ON) {
-            onBatteryStateChanged(device, true);
-        } else if (state == STATE_OFF) {
-            onBatteryStateChanged(device, false);
+        final int level = data.getIntValue(Data.FORMAT_UINT8, 0);
+        if (level <= LEVEL_MAX) {
+            onBatteryLevelReceived(device, level);
         } else {
             onInvalidDataReceived(device, data);
         }
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.callback;
+
+/**
+ * Tracks the 8-bit sequence counter of the frames to detect lost, duplicate and reordered
+ * notifications.
+ * <p>
+ * The counter is byte 2 of the frame, which older peripherals send as a constant F1. The tracker
+ * therefore only arms once two consecutive frames have counters increasing by one; until then
+ * no frame is reported lost. A counter ahead of the expected one means the frames in between
+ * were lost. The counter of the previous frame means a duplicate. A counter behind means either
+ * a late, reordered frame, which was counted lost when the gap was seen and is taken back from
+ * the lost frames, or a forward gap of half the range or more.
+ * <p>
+ * The counter alone cannot tell these apart, so the arrival times are used: the peripheral sends
+ * frames at a steady rate, so a forward gap of half the range takes at least half the range of
+ * frame intervals, averaged over consecutive frames. A frame behind arriving sooner is late, one
+ * arriving later is a forward gap. Until the interval is known, a frame behind is late only if
+ * lost frames are pending, that is counted lost and not arrived since. A late frame with no
+ * frames pending is a stray copy of an older frame and is dropped as a duplicate. Gaps of the
+ * whole counter range or more are counted modulo the range.
+ * <p>
+ * Counters are updated on the thread receiving the notifications and may be read on any thread.
+ */
+public class SequenceTracker {
+    /** Returned by {@link #onFrame(int, long)} for a duplicate frame, which should be dropped. */
+    public static final int DUPLICATE = -1;
+
+    private static final int RANGE = 256;
+    /** Number of frame intervals averaged to estimate the frame rate. */
+    private static final int AVERAGE_FRAMES = 64;
+
+    private boolean armed;
+    private int last = -1;
+    private long lastTimestamp;
+    /** Average interval between consecutive frames, in nanoseconds, over up to AVERAGE_FRAMES. */
+    private long averageInterval;
+    private int intervals;
+    /** Frames counted lost that may still arrive late, at most half the range. */
+    private int pending;
+    private volatile long received, lost, duplicates, reordered;
+
+    /**
+     * Processes the sequence counter of a received frame.
+     *
+     * @param sequence  the 8-bit sequence counter.
+     * @param timestamp the time the frame was received, in nanoseconds.
+     * @return the number of frames lost just before this one, 0 if none, or {@link #DUPLICATE}.
+     */
+    public int onFrame(final int sequence, final long timestamp) {
+        final int previous = last;
+        if (!armed) {
+            last = sequence;
+            lastTimestamp = timestamp;
+            armed = previous >= 0 && sequence == ((previous + 1) & 0xFF);
+            received++;
+            return 0;
+        }
+        final int diff = (sequence - previous) & 0xFF;
+        if (diff == 0) {
+            duplicates++;
+            return DUPLICATE;
+        }
+        final long elapsed = timestamp - lastTimestamp;
+        final boolean timed = intervals >= AVERAGE_FRAMES && averageInterval > 0;
+        if (diff >= RANGE / 2) {
+            final boolean late = timed ? elapsed < RANGE / 2 * averageInterval : pending > 0;
+            if (late) {
+                if (pending == 0) {
+                    // No gap this frame could fill
+                    duplicates++;
+                    return DUPLICATE;
+                }
+                // A late frame, counted lost when the gap was detected
+                received++;
+                reordered++;
+                pending--;
+                lost--;
+                return 0;
+            }
+        }
+        received++;
+        if (diff == 1) {
+            // Until AVERAGE_FRAMES intervals are seen, this is their mean
+            intervals = Math.min(intervals + 1, AVERAGE_FRAMES);
+            averageInterval += (elapsed - averageInterval) / intervals;
+        }
+        last = sequence;
+        lastTimestamp = timestamp;
+        lost += diff - 1;
+        pending = Math.min(pending + diff - 1, RANGE / 2 - 1);
+        return diff - 1;
+    }
+
+    /**
+     * Disarms the tracker and clears the counters, for example after reconnection.
+     */
+    public void reset() {
+        armed = false;
+        last = -1;
+        lastTimestamp = averageInterval = 0;
+        intervals = pending = 0;
+        received = lost = duplicates = reordered = 0;
+    }
+
+    /** Returns whether the peripheral sends sequence counters. */
+    public boolean isArmed() {
+        return armed;
+    }
+
+    /** Returns the number of frames received, without duplicates. */
+    public long getReceived() {
+        return received;
+    }
+
+    /** Returns the number of frames lost. */
+    public long getLost() {
+        return lost;
+    }
+
+    /** Returns the number of duplicate frames dropped. */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /** Returns the number of frames received out of order. */
+    public long getReordered() {
+        return reordered;
+    }
+
+    /**
+     * Returns the fraction of frames lost, from 0 to 1.
+     */
+    public double getLossRate() {
+        final long lost = this.lost;
+        final long total = received + lost;
+        return total > 0 ? (double) lost / total : 0;
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.channel;
+
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import no.nordicsemi.android.ble.callback.DataReceivedCallback;
+import no.nordicsemi.android.ble.data.Data;
+
+/**
+ * A registered sensor channel: its codec, the buffer with the latest samples and the
+ * characteristic found on the connected device.
+ * <p>
+ * The channel is the notification callback of its characteristic, so every channel shares
+ * this one callback class.
+ */
+public class Channel implements DataReceivedCallback {
+	private final ChannelCodec codec;
+	private final ChannelBuffer buffer;
+	@Nullable
+	private BluetoothGattCharacteristic characteristic;
+	private long invalidNotifications;
+
+	Channel(@NonNull final ChannelCodec codec, final int capacity) {
+		this.codec = codec;
+		this.buffer = new ChannelBuffer(codec.getValueCount(), capacity);
+	}
+
+	@NonNull
+	public ChannelCodec getCodec() {
+		return codec;
+	}
+
+	@NonNull
+	public ChannelBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Returns the characteristic of the channel on the connected device, or null if the device
+	 * does not have it.
+	 */
+	@Nullable
+	public BluetoothGattCharacteristic getCharacteristic() {
+		return characteristic;
+	}
+
+	public void setCharacteristic(@Nullable final BluetoothGattCharacteristic characteristic) {
+		this.characteristic = characteristic;
+		codec.reset();
+	}
+
+	/**
+	 * Returns the number of notifications that could not be decoded.
+	 */
+	public long getInvalidNotifications() {
+		return invalidNotifications;
+	}
+
+	@Override
+	public void onDataReceived(@NonNull final BluetoothDevice device, @NonNull final Data data) {
+		final long timestamp = SystemClock.elapsedRealtimeNanos();
+		final byte[] value = data.getValue();
+		if (value == null || codec.decode(value, 0, value.length, timestamp, buffer) < 0)
+			invalidNotifications++;
+	}
+}
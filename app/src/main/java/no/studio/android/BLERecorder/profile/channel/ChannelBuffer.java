@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.channel;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Ring buffer of the latest samples of a channel, in primitive arrays.
+ * <p>
+ * Each sample has a timestamp and a fixed number of signed 16-bit values, stored as ints.
+ * Samples are numbered from 0 in the order written; only the last {@link #getCapacity()}
+ * samples are kept. Writing does not allocate. All methods are synchronized, so samples may be
+ * written on the BLE thread and read on the UI thread.
+ */
+public class ChannelBuffer {
+	private final int valueCount;
+	private final int capacity;
+	private final long[] timestamps;
+	private final int[] values;
+	private long count;
+
+	/**
+	 * @param valueCount number of values in each sample.
+	 * @param capacity   number of samples kept, a power of 2.
+	 */
+	public ChannelBuffer(final int valueCount, final int capacity) {
+		if (Integer.bitCount(capacity) != 1)
+			throw new IllegalArgumentException("Capacity must be a power of 2");
+		this.valueCount = valueCount;
+		this.capacity = capacity;
+		this.timestamps = new long[capacity];
+		this.values = new int[capacity * valueCount];
+	}
+
+	public int getValueCount() {
+		return valueCount;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Writes a sample with the values decoded from signed 16-bit little endian integers.
+	 *
+	 * @param timestamp the timestamp of the sample.
+	 * @param data      the buffer with the values.
+	 * @param offset    the offset of the first value in the buffer.
+	 */
+	public synchronized void writeInt16(final long timestamp, @NonNull final byte[] data, final int offset) {
+		final int index = (int) (count & (capacity - 1));
+		timestamps[index] = timestamp;
+		final int base = index * valueCount;
+		for (int i = 0; i < valueCount; i++) {
+			final int position = offset + i * 2;
+			values[base + i] = (short) ((data[position] & 0xFF) | (data[position + 1] << 8));
+		}
+		count++;
+	}
+
+	/**
+	 * Returns the number of samples written since the buffer was created or cleared.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the timestamp of the given sample. The sample must be one of the last
+	 * {@link #getCapacity()} written.
+	 */
+	public synchronized long getTimestamp(final long sample) {
+		return timestamps[(int) (sample & (capacity - 1))];
+	}
+
+	/**
+	 * Returns a value of the given sample. The sample must be one of the last
+	 * {@link #getCapacity()} written.
+	 *
+	 * @param sample the sample number.
+	 * @param value  the index of the value in the sample.
+	 */
+	public synchronized int getValue(final long sample, final int value) {
+		return values[(int) (sample & (capacity - 1)) * valueCount + value];
+	}
+
+	/**
+	 * Returns a value of the last sample, or 0 if none was written.
+	 *
+	 * @param value the index of the value in the sample.
+	 */
+	public synchronized int getLatest(final int value) {
+		return count > 0 ? getValue(count - 1, value) : 0;
+	}
+
+	/**
+	 * Clears the buffer.
+	 */
+	public synchronized void clear() {
+		count = 0;
+	}
+}
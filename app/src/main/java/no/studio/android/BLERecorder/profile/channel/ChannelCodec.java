@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.channel;
+
+import androidx.annotation.NonNull;
+
+import java.util.UUID;
+
+/**
+ * Decoder of the notifications of a sensor characteristic.
+ * <p>
+ * A codec decodes the raw bytes straight into a {@link ChannelBuffer}, without allocation.
+ * Codecs are registered in the {@link ChannelRegistry} by characteristic UUID.
+ */
+public interface ChannelCodec {
+
+	/**
+	 * Returns the name of the channel, for logs and the UI.
+	 */
+	@NonNull
+	String getName();
+
+	/**
+	 * Returns the UUID of the characteristic the channel is notified on.
+	 */
+	@NonNull
+	UUID getUuid();
+
+	/**
+	 * Returns the number of values in each sample, for example 3 for a 3-axis sensor.
+	 */
+	int getValueCount();
+
+	/**
+	 * Decodes a notification into the buffer.
+	 *
+	 * @param data      the received bytes.
+	 * @param offset    the offset of the bytes in the buffer.
+	 * @param length    the number of bytes.
+	 * @param timestamp the time the notification was received, in nanoseconds.
+	 * @param buffer    the buffer the samples are written to.
+	 * @return the number of samples written, or -1 if the data were invalid.
+	 */
+	int decode(@NonNull byte[] data, int offset, int length, long timestamp, @NonNull ChannelBuffer buffer);
+
+	/**
+	 * Discards any partially received data, for example when the device disconnected.
+	 */
+	void reset();
+}
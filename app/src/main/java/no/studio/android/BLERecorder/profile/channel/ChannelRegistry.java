@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.channel;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Registry of the additional sensor channels, by characteristic UUID.
+ * <p>
+ * The BLE manager subscribes to every registered channel whose characteristic the device has.
+ * Adding a channel only takes registering its {@link ChannelCodec}.
+ */
+public class ChannelRegistry {
+	/** Default number of samples kept for each channel. */
+	public static final int DEFAULT_CAPACITY = 1024;
+
+	private final Map<UUID, Channel> channels = new LinkedHashMap<>();
+
+	/**
+	 * Registers a channel, replacing the one with the same UUID, if any.
+	 *
+	 * @param codec    the codec of the channel.
+	 * @param capacity the number of samples kept, a power of 2.
+	 * @return the channel.
+	 */
+	@NonNull
+	public Channel register(@NonNull final ChannelCodec codec, final int capacity) {
+		final Channel channel = new Channel(codec, capacity);
+		channels.put(codec.getUuid(), channel);
+		return channel;
+	}
+
+	/**
+	 * Registers a channel keeping the {@link #DEFAULT_CAPACITY} samples.
+	 */
+	@NonNull
+	public Channel register(@NonNull final ChannelCodec codec) {
+		return register(codec, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Returns the channel of the given characteristic, or null if not registered.
+	 */
+	@Nullable
+	public Channel get(@NonNull final UUID uuid) {
+		return channels.get(uuid);
+	}
+
+	/**
+	 * Returns all registered channels, in the order of registration.
+	 */
+	@NonNull
+	public Collection<Channel> getChannels() {
+		return Collections.unmodifiableCollection(channels.values());
+	}
+}
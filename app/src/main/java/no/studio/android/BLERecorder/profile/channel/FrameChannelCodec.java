@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.channel;
+
+import androidx.annotation.NonNull;
+
+import java.util.UUID;
+
+import no.studio.android.BLERecorder.profile.callback.AccelFrame;
+import no.studio.android.BLERecorder.profile.callback.AccelFramer;
+
+/**
+ * Codec of channels using the same framing as the accelerometer, see {@link AccelFrame}:
+ * sync bytes, payload length, samples of signed 16-bit little endian values and the sum and add
+ * checks. Frames are reassembled with an {@link AccelFramer}, so they may be split across
+ * notifications.
+ */
+public class FrameChannelCodec implements ChannelCodec {
+	private final String name;
+	private final UUID uuid;
+	private final int valueCount;
+	private final int sampleSize;
+	private final AccelFramer framer = new AccelFramer();
+	private final AccelFramer.Listener listener = this::onFrame;
+
+	/** State of the current {@link #decode} call, used by the frame listener. */
+	private long timestamp;
+	private ChannelBuffer buffer;
+	private int samples;
+	private boolean invalid;
+
+	/**
+	 * @param name       the name of the channel.
+	 * @param uuid       the UUID of the characteristic.
+	 * @param valueCount the number of 16-bit values in each sample.
+	 */
+	public FrameChannelCodec(@NonNull final String name, @NonNull final UUID uuid, final int valueCount) {
+		this.name = name;
+		this.uuid = uuid;
+		this.valueCount = valueCount;
+		this.sampleSize = valueCount * 2;
+	}
+
+	@NonNull
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	@NonNull
+	@Override
+	public UUID getUuid() {
+		return uuid;
+	}
+
+	@Override
+	public int getValueCount() {
+		return valueCount;
+	}
+
+	@Override
+	public int decode(@NonNull final byte[] data, final int offset, final int length,
+					  final long timestamp, @NonNull final ChannelBuffer buffer) {
+		this.timestamp = timestamp;
+		this.buffer = buffer;
+		samples = 0;
+		invalid = false;
+		final long dropped = framer.getDroppedBytes();
+		framer.append(data, offset, length, listener);
+		this.buffer = null;
+		return invalid || framer.getDroppedBytes() != dropped ? -1 : samples;
+	}
+
+	@Override
+	public void reset() {
+		framer.clear();
+	}
+
+	private void onFrame(@NonNull final byte[] frame, final int offset, final int length) {
+		final int payloadLength = length - AccelFrame.HEADER_SIZE - AccelFrame.CHECK_SIZE;
+		if (payloadLength == 0 || payloadLength % sampleSize != 0) {
+			invalid = true;
+			return;
+		}
+		for (int position = AccelFrame.HEADER_SIZE; position < AccelFrame.HEADER_SIZE + payloadLength; position += sampleSize) {
+			buffer.writeInt16(timestamp, frame, offset + position);
+			samples++;
+		}
+	}
+}
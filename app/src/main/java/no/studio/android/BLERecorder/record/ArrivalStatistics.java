@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import java.util.Locale;
+
+/**
+ * Running statistics of the intervals between sample arrival times.
+ * <p>
+ * The mean and variance of the intervals are updated with Welford's algorithm, so adding
+ * a timestamp takes constant time and does not allocate. The jitter is the standard deviation
+ * of the intervals. All methods are synchronized, so timestamps may be added on the BLE thread
+ * while the statistics are read elsewhere.
+ */
+public class ArrivalStatistics {
+	private long count;
+	private long first, last;
+	private long minInterval, maxInterval;
+	private double meanInterval, m2;
+
+	/**
+	 * Adds the arrival time of a sample.
+	 *
+	 * @param timestamp the arrival time, in nanoseconds. Timestamps must not decrease.
+	 */
+	public synchronized void add(final long timestamp) {
+		if (count == 0) {
+			first = timestamp;
+		} else {
+			final long interval = timestamp - last;
+			final long intervals = count;
+			if (intervals == 1 || interval < minInterval)
+				minInterval = interval;
+			if (intervals == 1 || interval > maxInterval)
+				maxInterval = interval;
+			final double delta = interval - meanInterval;
+			meanInterval += delta / intervals;
+			m2 += delta * (interval - meanInterval);
+		}
+		last = timestamp;
+		count++;
+	}
+
+	/**
+	 * Clears the statistics.
+	 */
+	public synchronized void reset() {
+		count = 0;
+		first = last = 0;
+		minInterval = maxInterval = 0;
+		meanInterval = m2 = 0;
+	}
+
+	/**
+	 * Returns the number of timestamps added.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the mean interval between samples, in nanoseconds.
+	 */
+	public synchronized double getMeanInterval() {
+		return meanInterval;
+	}
+
+	/**
+	 * Returns the standard deviation of the intervals between samples, in nanoseconds.
+	 */
+	public synchronized double getJitter() {
+		return count > 2 ? Math.sqrt(m2 / (count - 2)) : 0;
+	}
+
+	/**
+	 * Returns the shortest interval between samples, in nanoseconds.
+	 */
+	public synchronized long getMinInterval() {
+		return minInterval;
+	}
+
+	/**
+	 * Returns the longest interval between samples, in nanoseconds.
+	 */
+	public synchronized long getMaxInterval() {
+		return maxInterval;
+	}
+
+	/**
+	 * Returns the measured sample rate, in Hz, or 0 if not enough samples were added.
+	 */
+	public synchronized double getRate() {
+		return count > 1 && last > first ? (count - 1) * 1e9 / (last - first) : 0;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format(Locale.US,
+				"%d samples, %.1f Hz, interval %.3f ms (min %.3f, max %.3f), jitter %.3f ms",
+				count, getRate(), meanInterval / 1e6, minInterval / 1e6, maxInterval / 1e6, getJitter() / 1e6);
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The compact binary recording format (.blerec).
+ * <p>
+ * All values are little endian. The file starts with a header:
+ * <pre>
+ * offset size
+ *   0     4   magic, "BREC"
+ *   4     2   format version
+ *   6     2   header length, in bytes
+ *   8     8   start time, in milliseconds since epoch
+ *  16     4   scale factor, float, g per LSB
+ *  20     2   flags, see {@link #FLAG_RECOVERED}
+ *  22     1   device address length, n
+ *  23     n   device address, ASCII
+ * </pre>
+ * followed by checksummed blocks, see {@link RecordJournal}, each holding a number of
+ * fixed-size records:
+ * <pre>
+ * offset size
+ *   0     8   timestamp, in nanoseconds since the start of the recording (monotonic)
+ *   8     2   X, int16, as received in the frame
+ *  10     2   Y, int16, as received in the frame
+ *  12     2   Z, int16, as received in the frame
+ * </pre>
+ * A record with both X and Y equal to {@link RecordFormat#GAP_MARKER} is a gap marker: Z frames
+ * were lost over the air just before its timestamp.
+ * Version 1 files had no flags field and the records followed the header directly.
+ */
+public class BinaryRecordFormat implements RecordFormat {
+	public static final String EXTENSION = ".blerec";
+
+	static final byte[] MAGIC = { 'B', 'R', 'E', 'C' };
+	static final int VERSION = 2;
+	/** Size of the fixed part of the header, before the device address. */
+	static final int HEADER_FIXED_SIZE = 23;
+	/** Size of the fixed part of the version 1 header, which had no flags. */
+	static final int HEADER_FIXED_SIZE_V1 = 21;
+	/** Offset of the flags in the header. */
+	static final int FLAGS_OFFSET = 20;
+	/** Flag set by {@link RecordRecovery} when the recording was not closed properly. */
+	public static final int FLAG_RECOVERED = 0x0001;
+	/** Size of a single record. */
+	public static final int RECORD_SIZE = 14;
+	/** The raw values are in milli-g. */
+	public static final float DEFAULT_SCALE = 0.001f;
+
+	private final String deviceAddress;
+	private final long startTime;
+	private final float scale;
+	private final byte[] record = new byte[RECORD_SIZE];
+
+	/**
+	 * Creates the format for a new recording.
+	 *
+	 * @param deviceAddress the address of the recorded device.
+	 * @param startTime     the start time of the recording, in milliseconds since epoch.
+	 * @param scale         the scale factor, in g per LSB.
+	 */
+	public BinaryRecordFormat(@NonNull final String deviceAddress, final long startTime, final float scale) {
+		this.deviceAddress = deviceAddress;
+		this.startTime = startTime;
+		this.scale = scale;
+	}
+
+	@NonNull
+	@Override
+	public String getExtension() {
+		return EXTENSION;
+	}
+
+	@Override
+	public boolean isJournaled() {
+		return true;
+	}
+
+	@Override
+	public void writeHeader(@NonNull final OutputStream out) throws IOException {
+		final byte[] address = deviceAddress.getBytes(StandardCharsets.US_ASCII);
+		final int length = HEADER_FIXED_SIZE + address.length;
+		final byte[] header = new byte[length];
+		System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+		putInt16(header, 4, VERSION);
+		putInt16(header, 6, length);
+		putInt64(header, 8, startTime);
+		putInt32(header, 16, Float.floatToIntBits(scale));
+		putInt16(header, FLAGS_OFFSET, 0);
+		header[22] = (byte) address.length;
+		System.arraycopy(address, 0, header, HEADER_FIXED_SIZE, address.length);
+		out.write(header);
+	}
+
+	@Override
+	public int writeSample(@NonNull final OutputStream out, final long timestamp,
+						   final int x, final int y, final int z) throws IOException {
+		putInt64(record, 0, timestamp);
+		putInt16(record, 8, x);
+		putInt16(record, 10, y);
+		putInt16(record, 12, z);
+		out.write(record);
+		return RECORD_SIZE;
+	}
+
+	static void putInt16(@NonNull final byte[] buffer, final int offset, final int value) {
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >> 8);
+	}
+
+	static void putInt32(@NonNull final byte[] buffer, final int offset, final int value) {
+		putInt16(buffer, offset, value);
+		putInt16(buffer, offset + 2, value >> 16);
+	}
+
+	static void putInt64(@NonNull final byte[] buffer, final int offset, final long value) {
+		putInt32(buffer, offset, (int) value);
+		putInt32(buffer, offset + 4, (int) (value >> 32));
+	}
+
+	static int getInt16(@NonNull final byte[] buffer, final int offset) {
+		return (short) ((buffer[offset] & 0xFF) | (buffer[offset + 1] << 8));
+	}
+
+	static int getUInt16(@NonNull final byte[] buffer, final int offset) {
+		return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+	}
+
+	static int getInt32(@NonNull final byte[] buffer, final int offset) {
+		return getUInt16(buffer, offset) | (getUInt16(buffer, offset + 2) << 16);
+	}
+
+	static long getInt64(@NonNull final byte[] buffer, final int offset) {
+		return (getInt32(buffer, offset) & 0xFFFFFFFFL) | ((long) getInt32(buffer, offset + 4) << 32);
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Allocation-free encoder of fixed-point values to CSV text.
+ * <p>
+ * Values in milli-units are printed with 3 decimal places using integer arithmetic only. The output
+ * is identical to <code>String.format("%.3f,", value / 1000.0f)</code> in locales using a dot
+ * as the decimal separator, which is what the recordings always used.
+ */
+public final class CsvEncoder {
+	/** The maximum number of bytes a 16-bit value takes, including the separator: "-32.768,". */
+	public static final int MAX_INT16_LENGTH = 8;
+	/** The maximum number of bytes a timestamp in nanoseconds takes as seconds, including the separator. */
+	public static final int MAX_TIMESTAMP_LENGTH = 20;
+
+	private CsvEncoder() {
+		// Utility class.
+	}
+
+	/**
+	 * Writes the value in milli-units as decimal text with 3 decimal places, followed by a comma.
+	 *
+	 * @param buffer the target buffer.
+	 * @param offset the offset in the buffer to write at.
+	 * @param milli  the value in milli-units, for example milli-g.
+	 * @return the offset just after the written text.
+	 */
+	public static int encodeMilli(@NonNull final byte[] buffer, int offset, final int milli) {
+		long value = milli;
+		if (value < 0) {
+			buffer[offset++] = '-';
+			value = -value;
+		}
+		final long integer = value / 1000;
+		final int fraction = (int) (value - integer * 1000);
+		offset = encodeInteger(buffer, offset, integer);
+		buffer[offset++] = '.';
+		buffer[offset++] = (byte) ('0' + fraction / 100);
+		buffer[offset++] = (byte) ('0' + fraction / 10 % 10);
+		buffer[offset++] = (byte) ('0' + fraction % 10);
+		buffer[offset++] = ',';
+		return offset;
+	}
+
+	/**
+	 * Writes the timestamp in nanoseconds as seconds with 6 decimal places, followed by a comma.
+	 * The timestamp is truncated to whole microseconds.
+	 *
+	 * @param buffer the target buffer.
+	 * @param offset the offset in the buffer to write at.
+	 * @param nanos  the timestamp, in nanoseconds.
+	 * @return the offset just after the written text.
+	 */
+	public static int encodeSeconds(@NonNull final byte[] buffer, int offset, final long nanos) {
+		long micro = nanos / 1000;
+		if (micro < 0) {
+			buffer[offset++] = '-';
+			micro = -micro;
+		}
+		final long integer = micro / 1_000_000;
+		int fraction = (int) (micro - integer * 1_000_000);
+		offset = encodeInteger(buffer, offset, integer);
+		buffer[offset++] = '.';
+		for (int i = offset + 5; i >= offset; i--) {
+			buffer[i] = (byte) ('0' + fraction % 10);
+			fraction /= 10;
+		}
+		offset += 6;
+		buffer[offset++] = ',';
+		return offset;
+	}
+
+	/**
+	 * Writes the non-negative integer as decimal text.
+	 *
+	 * @param buffer the target buffer.
+	 * @param offset the offset in the buffer to write at.
+	 * @param value  the value, must not be negative.
+	 * @return the offset just after the written text.
+	 */
+	public static int encodeInteger(@NonNull final byte[] buffer, int offset, long value) {
+		if (value == 0) {
+			buffer[offset++] = '0';
+			return offset;
+		}
+		int digits = 0;
+		for (long v = value; v > 0; v /= 10)
+			digits++;
+		int position = offset + digits;
+		while (value > 0) {
+			buffer[--position] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		return offset + digits;
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The CSV format, one line per sample, with the time since the start of the recording in seconds
+ * printed with 6 decimal places, and acceleration in g printed with 3 decimal places.
+ * Lines are encoded with {@link CsvEncoder} into a reused buffer, without allocation.
+ */
+public class CsvRecordFormat implements RecordFormat {
+	public static final String EXTENSION = ".csv";
+
+	private static final byte[] HEADER = "Time (s),X Accel,Y Accel,Z Accel,\r\n".getBytes(StandardCharsets.UTF_8);
+
+	/** Reused line buffer, large enough for the timestamp, 3 values and the line break. */
+	private final byte[] line = new byte[CsvEncoder.MAX_TIMESTAMP_LENGTH + 3 * CsvEncoder.MAX_INT16_LENGTH + 2];
+
+	@NonNull
+	@Override
+	public String getExtension() {
+		return EXTENSION;
+	}
+
+	@Override
+	public void writeHeader(@NonNull final OutputStream out) throws IOException {
+		out.write(HEADER);
+	}
+
+	@Override
+	public int writeSample(@NonNull final OutputStream out, final long timestamp,
+						   final int x, final int y, final int z) throws IOException {
+		int length = CsvEncoder.encodeSeconds(line, 0, timestamp);
+		length = CsvEncoder.encodeMilli(line, length, x);
+		length = CsvEncoder.encodeMilli(line, length, y);
+		length = CsvEncoder.encodeMilli(line, length, z);
+		line[length++] = '\r';
+		line[length++] = '\n';
+		out.write(line, 0, length);
+		return length;
+	}
+
+	/**
+	 * Writes the gap as a line with the timestamp and empty values.
+	 */
+	@Override
+	public int writeGap(@NonNull final OutputStream out, final long timestamp, final int lostFrames) throws IOException {
+		int length = CsvEncoder.encodeSeconds(line, 0, timestamp);
+		line[length++] = ',';
+		line[length++] = ',';
+		line[length++] = ',';
+		line[length++] = '\r';
+		line[length++] = '\n';
+		out.write(line, 0, length);
+		return length;
+	}
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compression of blocks of {@link BinaryRecordFormat} records.
+ * <p>
+ * Consecutive accelerometer samples are highly correlated, so each axis is stored as the
+ * difference to the previous sample, and the timestamp as the difference to the previous
+ * sample interval. The differences are zigzag-encoded, so that small negative values stay
+ * small, packed as varints and the result is deflated.
+ * <p>
+ * Each block starts from zero, so it can be decoded without reading the blocks before it.
+ * An instance keeps its buffers between blocks and is not thread safe.
+ */
+public class DeltaBlockCodec {
+	/** The block flag marking blocks encoded with this codec, see {@link RecordJournal}. */
+	public static final int BLOCK_FLAG = 0x0001;
+
+	/** Maximum varint length of one record: a 64-bit timestamp delta and three 17-bit deltas. */
+	private static final int MAX_VARINT_RECORD_SIZE = 10 + 3 * 3;
+
+	private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private final Inflater inflater = new Inflater();
+	private byte[] varints = new byte[0];
+	private byte[] encoded = new byte[0];
+	/** The last value read by {@link #getVarint(byte[], int, int)}. */
+	private long value;
+
+	/**
+	 * Encodes the records.
+	 *
+	 * @param records the records, in {@link BinaryRecordFormat}.
+	 * @param count   the number of records.
+	 * @return the length of the encoded data, available in {@link #getEncoded()}.
+	 */
+	public int encode(@NonNull final byte[] records, final int count) {
+		ensureVarintCapacity(count);
+		int length = 0;
+		long previousTime = 0, previousInterval = 0;
+		int previousX = 0, previousY = 0, previousZ = 0;
+		for (int i = 0, offset = 0; i < count; i++, offset += BinaryRecordFormat.RECORD_SIZE) {
+			final long time = BinaryRecordFormat.getInt64(records, offset);
+			final int x = BinaryRecordFormat.getInt16(records, offset + 8);
+			final int y = BinaryRecordFormat.getInt16(records, offset + 10);
+			final int z = BinaryRecordFormat.getInt16(records, offset + 12);
+			final long interval = time - previousTime;
+			length = putVarint(varints, length, zigzag(interval - previousInterval));
+			length = putVarint(varints, length, zigzag(x - previousX));
+			length = putVarint(varints, length, zigzag(y - previousY));
+			length = putVarint(varints, length, zigzag(z - previousZ));
+			previousTime = time;
+			previousInterval = interval;
+			previousX = x;
+			previousY = y;
+			previousZ = z;
+		}
+
+		deflater.reset();
+		deflater.setInput(varints, 0, length);
+		deflater.finish();
+		int encodedLength = 0;
+		while (!deflater.finished()) {
+			if (encodedLength == encoded.length)
+				encoded = grow(encoded, Math.max(1024, encoded.length * 2));
+			encodedLength += deflater.deflate(encoded, encodedLength, encoded.length - encodedLength);
+		}
+		return encodedLength;
+	}
+
+	/**
+	 * Returns the buffer with the data encoded by the last call to {@link #encode(byte[], int)}.
+	 */
+	@NonNull
+	public byte[] getEncoded() {
+		return encoded;
+	}
+
+	/**
+	 * Decodes a block encoded with {@link #encode(byte[], int)}.
+	 *
+	 * @param payload the encoded data.
+	 * @param length  the length of the encoded data.
+	 * @param count   the number of records in the block.
+	 * @param records the target buffer, at least count * {@link BinaryRecordFormat#RECORD_SIZE} long.
+	 * @throws IOException when the data are corrupted.
+	 */
+	public void decode(@NonNull final byte[] payload, final int length, final int count,
+					   @NonNull final byte[] records) throws IOException {
+		ensureVarintCapacity(count);
+		final int varintLength;
+		inflater.reset();
+		inflater.setInput(payload, 0, length);
+		try {
+			varintLength = inflater.inflate(varints);
+		} catch (final DataFormatException e) {
+			throw new IOException("Invalid compressed block", e);
+		}
+		if (!inflater.finished())
+			throw new IOException("Invalid compressed block");
+
+		int position = 0;
+		long time = 0, interval = 0;
+		int x = 0, y = 0, z = 0;
+		for (int i = 0, offset = 0; i < count; i++, offset += BinaryRecordFormat.RECORD_SIZE) {
+			position = getVarint(varints, position, varintLength);
+			interval += unzigzag(value);
+			time += interval;
+			position = getVarint(varints, position, varintLength);
+			x += (int) unzigzag(value);
+			position = getVarint(varints, position, varintLength);
+			y += (int) unzigzag(value);
+			position = getVarint(varints, position, varintLength);
+			z += (int) unzigzag(value);
+			BinaryRecordFormat.putInt64(records, offset, time);
+			BinaryRecordFormat.putInt16(records, offset + 8, x);
+			BinaryRecordFormat.putInt16(records, offset + 10, y);
+			BinaryRecordFormat.putInt16(records, offset + 12, z);
+		}
+	}
+
+	/**
+	 * Releases the native resources of the compressor.
+	 */
+	public void release() {
+		deflater.end();
+		inflater.end();
+	}
+
+	private int getVarint(@NonNull final byte[] buffer, int position, final int limit) throws IOException {
+		long result = 0;
+		int shift = 0;
+		byte b;
+		do {
+			if (position >= limit)
+				throw new IOException("Compressed block too short");
+			b = buffer[position++];
+			result |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0 && shift < 64);
+		value = result;
+		return position;
+	}
+
+	private static int putVarint(@NonNull final byte[] buffer, int position, long value) {
+		while ((value & ~0x7FL) != 0) {
+			buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte) value;
+		return position;
+	}
+
+	private static long zigzag(final long value) {
+		return (value << 1) ^ (value >> 63);
+	}
+
+	private static long unzigzag(final long value) {
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private void ensureVarintCapacity(final int count) {
+		final int capacity = count * MAX_VARINT_RECORD_SIZE;
+		if (varints.length < capacity)
+			varints = new byte[capacity];
+	}
+
+	@NonNull
+	private static byte[] grow(@NonNull final byte[] buffer, final int size) {
+		final byte[] result = new byte[size];
+		System.arraycopy(buffer, 0, result, 0, buffer.length);
+		return result;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Output stream writing to a file through memory-mapped, pre-allocated segments.
+ * <p>
+ * The file is extended by one segment at a time and the segment is mapped into memory, so that
+ * writing is a plain memory copy. Dirty pages are written back by the OS asynchronously, there
+ * is no system call per write. When a segment fills up, it is forced to the storage and the next
+ * one is mapped.
+ * On {@link #close()} the file is truncated to the number of bytes actually written.
+ * <p>
+ * {@link #flush()} does nothing, as the data are already in the page cache.
+ * Use {@link #sync()} to force them to the storage.
+ */
+public class MappedSegmentOutputStream extends OutputStream {
+	/** Default size of a segment. */
+	public static final int DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final int segmentSize;
+	private MappedByteBuffer segment;
+	private long segmentStart;
+	private boolean closed;
+
+	/**
+	 * Creates the file, overwriting it if it exists, and maps the first segment.
+	 *
+	 * @param file        the target file.
+	 * @param segmentSize the size of the segments, in bytes.
+	 * @throws IOException when the file could not be created or mapped.
+	 */
+	public MappedSegmentOutputStream(@NonNull final File file, final int segmentSize) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.channel = this.file.getChannel();
+		this.segmentSize = segmentSize;
+		try {
+			this.file.setLength(0);
+			this.segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+		} catch (final IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the number of bytes written so far.
+	 */
+	public long getPosition() {
+		return segmentStart + segment.position();
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		ensureOpen();
+		if (!segment.hasRemaining())
+			nextSegment();
+		segment.put((byte) b);
+	}
+
+	@Override
+	public void write(@NonNull final byte[] b, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (!segment.hasRemaining())
+				nextSegment();
+			final int count = Math.min(len, segment.remaining());
+			segment.put(b, off, count);
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Forces the data written so far to the storage device.
+	 *
+	 * @throws IOException when the stream was closed.
+	 */
+	public void sync() throws IOException {
+		ensureOpen();
+		segment.force();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try {
+			final long length = getPosition();
+			segment.force();
+			segment = null;
+			channel.truncate(length);
+		} finally {
+			file.close();
+		}
+	}
+
+	private void nextSegment() throws IOException {
+		// The full segment is forced before it is unmapped, so sync() only has the current one to force
+		segment.force();
+		segmentStart += segmentSize;
+		segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed)
+			throw new IOException("Stream closed");
+	}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streaming export of a {@link RecordSession}.
+ * <p>
+ * The records are passed through a chain of stages: the time range slice, the decimation,
+ * the conversion to the target {@link RecordFormat} and the optional GZIP compression, and
+ * written to a file or any stream, for example a pipe. Only one record and fixed size buffers
+ * are held in memory at any time, so the time and memory needed does not depend on the length
+ * of the recording beyond the slice. The export should be run on a worker thread; it reports
+ * its progress to the {@link ProgressListener} and may be cancelled from any thread.
+ */
+public class RecordExport {
+	/** Extension appended to the name of compressed exports. */
+	public static final String GZIP_EXTENSION = ".gz";
+
+	/** Number of records between checks for cancellation. */
+	private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	public interface ProgressListener {
+		/**
+		 * Called on the export thread when the progress changes.
+		 *
+		 * @param percent the progress, from 0 to 100.
+		 */
+		void onProgress(int percent);
+	}
+
+	private final RecordSession session;
+	private final RecordFormat format;
+	private final long from, to;
+	private final int decimation;
+	private final boolean compressed;
+	private volatile boolean cancelled;
+
+	private RecordExport(@NonNull final Builder builder) {
+		this.session = builder.session;
+		this.format = builder.format;
+		this.from = builder.from;
+		this.to = builder.to;
+		this.decimation = builder.decimation;
+		this.compressed = builder.compressed;
+	}
+
+	/**
+	 * Returns the file name of the export: the session name with the extension of the format,
+	 * followed by {@link #GZIP_EXTENSION} if compressed.
+	 */
+	@NonNull
+	public String getFileName() {
+		return session.getName() + format.getExtension() + (compressed ? GZIP_EXTENSION : "");
+	}
+
+	/**
+	 * Cancels the export. The thread running the export stops shortly after.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Exports the session to the given file. The file is deleted if the export fails or is
+	 * cancelled.
+	 *
+	 * @param file     the target file. It will be overwritten if it exists.
+	 * @param listener optional progress listener.
+	 * @throws InterruptedIOException when the export was cancelled.
+	 * @throws IOException            when reading or writing failed.
+	 */
+	public void writeTo(@NonNull final File file, @Nullable final ProgressListener listener) throws IOException {
+		boolean success = false;
+		try {
+			writeTo(new FileOutputStream(file), listener);
+			success = true;
+		} finally {
+			if (!success)
+				file.delete();
+		}
+	}
+
+	/**
+	 * Exports the session to the given stream, which is closed afterwards.
+	 *
+	 * @param output   the target stream, for example the write end of a pipe.
+	 * @param listener optional progress listener.
+	 * @throws InterruptedIOException when the export was cancelled.
+	 * @throws IOException            when reading or writing failed.
+	 */
+	public void writeTo(@NonNull final OutputStream output, @Nullable final ProgressListener listener) throws IOException {
+		OutputStream out = output;
+		try {
+			if (compressed)
+				out = new GZIPOutputStream(out, 64 * 1024);
+			out = new BufferedOutputStream(out, 64 * 1024);
+		} catch (final IOException e) {
+			output.close();
+			throw e;
+		}
+
+		try (OutputStream stream = out;
+			 RecordSessionReader reader = new RecordSessionReader(session, from, to)) {
+			final long start = from != Long.MIN_VALUE ? from : 0;
+			final long end = to != Long.MAX_VALUE ? to : getEstimatedEnd();
+			int percent = -1;
+			long records = 0, samples = 0;
+
+			format.writeHeader(stream);
+			while (reader.next()) {
+				final long timestamp = reader.getTimestamp();
+				// Gaps are always exported, and not counted by the decimation
+				if (reader.isGap())
+					format.writeGap(stream, timestamp, reader.getZ());
+				else if (samples++ % decimation == 0)
+					format.writeSample(stream, timestamp, reader.getX(), reader.getY(), reader.getZ());
+				if (++records % CANCEL_CHECK_INTERVAL == 0) {
+					if (cancelled)
+						throw new InterruptedIOException("Export cancelled");
+					if (listener != null && end > start) {
+						final int progress = (int) Math.min(99, (timestamp - start) * 100 / (end - start));
+						if (progress != percent) {
+							percent = progress;
+							listener.onProgress(progress);
+						}
+					}
+				}
+			}
+			if (cancelled)
+				throw new InterruptedIOException("Export cancelled");
+		}
+		if (listener != null)
+			listener.onProgress(100);
+	}
+
+	/**
+	 * Returns the approximate timestamp of the last record, taken from the session index,
+	 * or 0 if the session has no index.
+	 */
+	private long getEstimatedEnd() {
+		final File indexFile = session.getIndexFile();
+		if (!indexFile.exists())
+			return 0;
+		try {
+			final RecordIndex index = RecordIndex.load(indexFile);
+			return index.size() > 0 ? index.getTimestamp(index.size() - 1) : 0;
+		} catch (final IOException e) {
+			e.printStackTrace();
+			return 0;
+		}
+	}
+
+	/**
+	 * Builder of {@link RecordExport}. By default the whole session is exported, without
+	 * decimation or compression.
+	 */
+	public static class Builder {
+		private final RecordSession session;
+		private final RecordFormat format;
+		private long from = Long.MIN_VALUE, to = Long.MAX_VALUE;
+		private int decimation = 1;
+		private boolean compressed;
+
+		/**
+		 * @param session the session to export.
+		 * @param format  the target format. Journaled formats are not supported, as the records
+		 *                are written without block framing.
+		 */
+		public Builder(@NonNull final RecordSession session, @NonNull final RecordFormat format) {
+			if (format.isJournaled())
+				throw new IllegalArgumentException("Journaled formats cannot be exported");
+			this.session = session;
+			this.format = format;
+		}
+
+		/**
+		 * Limits the export to the records in the given time range.
+		 *
+		 * @param from the first timestamp to export, inclusive, in nanoseconds.
+		 * @param to   the last timestamp to export, inclusive, in nanoseconds.
+		 */
+		@NonNull
+		public Builder setRange(final long from, final long to) {
+			this.from = from;
+			this.to = to;
+			return this;
+		}
+
+		/**
+		 * Sets the decimation factor: only every n-th sample of the range is exported.
+		 * Gap markers are always exported.
+		 *
+		 * @param decimation the factor, 1 to export all records.
+		 */
+		@NonNull
+		public Builder setDecimation(final int decimation) {
+			if (decimation < 1)
+				throw new IllegalArgumentException("Decimation must be at least 1");
+			this.decimation = decimation;
+			return this;
+		}
+
+		/**
+		 * Sets whether the output is compressed with GZIP.
+		 */
+		@NonNull
+		public Builder setCompressed(final boolean compressed) {
+			this.compressed = compressed;
+			return this;
+		}
+
+		@NonNull
+		public RecordExport build() {
+			return new RecordExport(this);
+		}
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Encoding of recorded accelerometer samples.
+ * <p>
+ * Implementations are used from a single thread, the one of the {@link RecordWriter}, and may
+ * keep reusable buffers.
+ */
+public interface RecordFormat {
+	/**
+	 * Value of X and Y of a gap marker: a record telling that samples were lost before the
+	 * given time, with the number of lost frames in Z. Real samples never have both values set
+	 * to the minimum.
+	 */
+	int GAP_MARKER = Short.MIN_VALUE;
+
+	/**
+	 * Returns whether the record with the given X and Y values is a gap marker.
+	 */
+	static boolean isGap(final int x, final int y) {
+		return x == GAP_MARKER && y == GAP_MARKER;
+	}
+
+	/**
+	 * Returns the file name extension of this format, including the leading dot.
+	 */
+	@NonNull
+	String getExtension();
+
+	/**
+	 * Returns whether the samples are written in checksummed blocks, see {@link RecordJournal}.
+	 * Text formats return false, so that the file contains nothing but the encoded samples.
+	 */
+	default boolean isJournaled() {
+		return false;
+	}
+
+	/**
+	 * Writes the file header. This is called once, before any sample is written.
+	 *
+	 * @param out the output stream.
+	 * @throws IOException when writing failed.
+	 */
+	void writeHeader(@NonNull final OutputStream out) throws IOException;
+
+	/**
+	 * Writes a single sample.
+	 *
+	 * @param out       the output stream.
+	 * @param timestamp the time of the sample since the start of the recording, in nanoseconds.
+	 * @param x         X acceleration, in milli-g.
+	 * @param y         Y acceleration, in milli-g.
+	 * @param z         Z acceleration, in milli-g.
+	 * @return the number of bytes written.
+	 * @throws IOException when writing failed.
+	 */
+	int writeSample(@NonNull final OutputStream out, final long timestamp,
+					final int x, final int y, final int z) throws IOException;
+
+	/**
+	 * Writes a gap marker. By default it is written as a record with {@link #GAP_MARKER} values.
+	 *
+	 * @param out        the output stream.
+	 * @param timestamp  the time the gap was detected, since the start of the recording, in nanoseconds.
+	 * @param lostFrames the number of frames lost, up to 32767.
+	 * @return the number of bytes written.
+	 * @throws IOException when writing failed.
+	 */
+	default int writeGap(@NonNull final OutputStream out, final long timestamp, final int lostFrames) throws IOException {
+		return writeSample(out, timestamp, GAP_MARKER, GAP_MARKER, lostFrames);
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Time index of a {@link RecordSession}.
+ * <p>
+ * The index has one entry per block written, mapping the timestamp of the first sample of
+ * the block to the part of the session and the offset of the block in that part. Entries are
+ * sorted by timestamp, so the block containing any position can be found by binary search and
+ * reading can start there, instead of at the beginning of the session.
+ * <p>
+ * All values are little endian. After an 8-byte header ("BIDX", version, entry size) follow
+ * the entries:
+ * <pre>
+ * offset size
+ *   0     8   timestamp of the first sample of the block, in nanoseconds
+ *   8     4   part number
+ *  12     4   offset of the block in the part file
+ * </pre>
+ */
+public class RecordIndex {
+	static final byte[] MAGIC = { 'B', 'I', 'D', 'X' };
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 8;
+	static final int ENTRY_SIZE = 16;
+
+	private long[] timestamps;
+	private int[] parts;
+	private long[] offsets;
+	private int size;
+
+	private RecordIndex(final int capacity) {
+		timestamps = new long[capacity];
+		parts = new int[capacity];
+		offsets = new long[capacity];
+	}
+
+	/**
+	 * Loads the index from the file. A truncated entry at the end is ignored.
+	 *
+	 * @param file the index file.
+	 * @return the index.
+	 * @throws IOException when the file could not be read or is not an index.
+	 */
+	@NonNull
+	public static RecordIndex load(@NonNull final File file) throws IOException {
+		try (InputStream in = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+			final byte[] buffer = new byte[Math.max(HEADER_SIZE, ENTRY_SIZE)];
+			if (!readFully(in, buffer, HEADER_SIZE))
+				throw new EOFException();
+			for (int i = 0; i < MAGIC.length; i++) {
+				if (buffer[i] != MAGIC[i])
+					throw new IOException("Not a recording index: " + file.getName());
+			}
+			if (BinaryRecordFormat.getUInt16(buffer, 4) != VERSION
+					|| BinaryRecordFormat.getUInt16(buffer, 6) != ENTRY_SIZE)
+				throw new IOException("Unsupported recording index: " + file.getName());
+
+			final RecordIndex index = new RecordIndex((int) Math.max(16, (file.length() - HEADER_SIZE) / ENTRY_SIZE));
+			while (readFully(in, buffer, ENTRY_SIZE)) {
+				index.add(BinaryRecordFormat.getInt64(buffer, 0),
+						BinaryRecordFormat.getInt32(buffer, 8),
+						BinaryRecordFormat.getInt32(buffer, 12) & 0xFFFFFFFFL);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Cuts off the entries of the blocks that are not in the given part anymore, after the part
+	 * was truncated by {@link RecordRecovery}, and all entries after them. A truncated entry at
+	 * the end is cut off as well.
+	 *
+	 * @param file   the index file.
+	 * @param part   the part number.
+	 * @param length the length of the part file.
+	 * @return true if the index was truncated.
+	 * @throws IOException when the file could not be read or written, or is not an index.
+	 */
+	static boolean truncate(@NonNull final File file, final int part, final long length) throws IOException {
+		final RecordIndex index = load(file);
+		int entries = 0;
+		while (entries < index.size && (index.parts[entries] != part || index.offsets[entries] < length))
+			entries++;
+		final long indexLength = HEADER_SIZE + (long) entries * ENTRY_SIZE;
+		if (indexLength >= file.length())
+			return false;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(indexLength);
+			raf.getFD().sync();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of entries.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/** Returns the timestamp of the first sample of the block of the given entry. */
+	public long getTimestamp(final int entry) {
+		return timestamps[entry];
+	}
+
+	/** Returns the part number of the given entry. */
+	public int getPart(final int entry) {
+		return parts[entry];
+	}
+
+	/** Returns the offset of the block of the given entry in its part file. */
+	public long getOffset(final int entry) {
+		return offsets[entry];
+	}
+
+	/**
+	 * Finds the block that contains the given timestamp.
+	 *
+	 * @param timestamp the timestamp, in nanoseconds since the start of the session.
+	 * @return the last entry with a timestamp lower or equal to the given one, 0 if the
+	 * timestamp is before the first entry, or -1 if the index is empty.
+	 */
+	public int find(final long timestamp) {
+		int low = 0, high = size - 1, result = size > 0 ? 0 : -1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			if (timestamps[middle] <= timestamp) {
+				result = middle;
+				low = middle + 1;
+			} else {
+				high = middle - 1;
+			}
+		}
+		return result;
+	}
+
+	private void add(final long timestamp, final int part, final long offset) {
+		if (size == timestamps.length) {
+			final int capacity = size * 2;
+			final long[] newTimestamps = new long[capacity];
+			final int[] newParts = new int[capacity];
+			final long[] newOffsets = new long[capacity];
+			System.arraycopy(timestamps, 0, newTimestamps, 0, size);
+			System.arraycopy(parts, 0, newParts, 0, size);
+			System.arraycopy(offsets, 0, newOffsets, 0, size);
+			timestamps = newTimestamps;
+			parts = newParts;
+			offsets = newOffsets;
+		}
+		timestamps[size] = timestamp;
+		parts[size] = part;
+		offsets[size] = offset;
+		size++;
+	}
+
+	private static boolean readFully(@NonNull final InputStream in, @NonNull final byte[] buffer,
+									 final int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			final int count = in.read(buffer, read, length - read);
+			if (count < 0)
+				return false;
+			read += count;
+		}
+		return true;
+	}
+
+	/**
+	 * Appends entries to an index file.
+	 */
+	public static class Writer implements Closeable {
+		private final OutputStream outputStream;
+		private final byte[] entry = new byte[ENTRY_SIZE];
+
+		/**
+		 * Creates the index file, overwriting it if it exists.
+		 *
+		 * @param file the index file.
+		 * @throws IOException when the file could not be created.
+		 */
+		public Writer(@NonNull final File file) throws IOException {
+			outputStream = new BufferedOutputStream(new FileOutputStream(file), 4 * 1024);
+			final byte[] header = new byte[HEADER_SIZE];
+			System.arraycopy(MAGIC, 0, header, 0, MAGIC.length);
+			BinaryRecordFormat.putInt16(header, 4, VERSION);
+			BinaryRecordFormat.putInt16(header, 6, ENTRY_SIZE);
+			outputStream.write(header);
+		}
+
+		/**
+		 * Adds an entry for a block.
+		 *
+		 * @param timestamp the timestamp of the first sample of the block.
+		 * @param part      the part number.
+		 * @param offset    the offset of the block in the part file.
+		 * @throws IOException when writing failed.
+		 */
+		public void add(final long timestamp, final int part, final long offset) throws IOException {
+			BinaryRecordFormat.putInt64(entry, 0, timestamp);
+			BinaryRecordFormat.putInt32(entry, 8, part);
+			BinaryRecordFormat.putInt32(entry, 12, (int) offset);
+			outputStream.write(entry);
+		}
+
+		/**
+		 * Writes the buffered entries to the file.
+		 *
+		 * @throws IOException when writing failed.
+		 */
+		public void flush() throws IOException {
+			outputStream.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			outputStream.close();
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.util.zip.CRC32;
+
+/**
+ * Block framing of journaled recordings.
+ * <p>
+ * The samples are written in blocks, one block per flush of the {@link RecordWriter}. Each block
+ * carries its sample count and a CRC32, so that a block torn by a crash, or never written,
+ * can be detected and cut off by {@link RecordRecovery} without losing the blocks before it.
+ * <p>
+ * All values are little endian:
+ * <pre>
+ * offset size
+ *   0     4   magic, "BLK1"
+ *   4     2   number of samples in the block
+ *   6     2   flags, 0 for plain records
+ *   8     4   payload length, n
+ *  12     4   CRC32 of bytes 4-11 and of the payload
+ *  16     n   payload
+ * </pre>
+ */
+public final class RecordJournal {
+
+	/**
+	 * When to force the written blocks to the storage device.
+	 */
+	public enum SyncPolicy {
+		/** Never, leave writing back to the OS. A crash of the OS may lose recent blocks. */
+		NEVER,
+		/** After each block. Safest, but costs an fsync per flush. */
+		PER_BLOCK,
+		/** After the block that was written when the sync interval elapsed. */
+		INTERVAL
+	}
+
+	static final byte[] BLOCK_MAGIC = { 'B', 'L', 'K', '1' };
+	/** Size of the block header. */
+	public static final int BLOCK_HEADER_SIZE = 16;
+	/** Maximum number of samples in a block. */
+	public static final int MAX_BLOCK_SAMPLES = 0xFFFF;
+	/** Maximum payload length accepted when reading, to reject corrupted headers early. */
+	static final int MAX_BLOCK_LENGTH = 16 * 1024 * 1024;
+
+	private RecordJournal() {
+		// Utility class.
+	}
+
+	/**
+	 * Fills the block header for the given payload.
+	 *
+	 * @param header      the header buffer, at least {@link #BLOCK_HEADER_SIZE} bytes long.
+	 * @param sampleCount the number of samples in the block.
+	 * @param flags       the block flags.
+	 * @param payload     the payload buffer.
+	 * @param length      the payload length.
+	 * @param crc         a reusable CRC32 instance.
+	 */
+	static void writeBlockHeader(@NonNull final byte[] header, final int sampleCount, final int flags,
+								 @NonNull final byte[] payload, final int length,
+								 @NonNull final CRC32 crc) {
+		System.arraycopy(BLOCK_MAGIC, 0, header, 0, BLOCK_MAGIC.length);
+		BinaryRecordFormat.putInt16(header, 4, sampleCount);
+		BinaryRecordFormat.putInt16(header, 6, flags);
+		BinaryRecordFormat.putInt32(header, 8, length);
+		BinaryRecordFormat.putInt32(header, 12, (int) checksum(header, payload, length, crc));
+	}
+
+	/**
+	 * Returns whether the header has the block magic and a plausible payload length.
+	 */
+	static boolean isValidHeader(@NonNull final byte[] header) {
+		for (int i = 0; i < BLOCK_MAGIC.length; i++) {
+			if (header[i] != BLOCK_MAGIC[i])
+				return false;
+		}
+		final int length = getPayloadLength(header);
+		return length >= 0 && length <= MAX_BLOCK_LENGTH;
+	}
+
+	/**
+	 * Returns whether the payload matches the CRC stored in the header.
+	 */
+	static boolean isValidPayload(@NonNull final byte[] header, @NonNull final byte[] payload,
+								  @NonNull final CRC32 crc) {
+		final long expected = BinaryRecordFormat.getInt32(header, 12) & 0xFFFFFFFFL;
+		return checksum(header, payload, getPayloadLength(header), crc) == expected;
+	}
+
+	static int getSampleCount(@NonNull final byte[] header) {
+		return BinaryRecordFormat.getUInt16(header, 4);
+	}
+
+	static int getFlags(@NonNull final byte[] header) {
+		return BinaryRecordFormat.getUInt16(header, 6);
+	}
+
+	static int getPayloadLength(@NonNull final byte[] header) {
+		return BinaryRecordFormat.getInt32(header, 8);
+	}
+
+	private static long checksum(@NonNull final byte[] header, @NonNull final byte[] payload,
+								 final int length, @NonNull final CRC32 crc) {
+		crc.reset();
+		crc.update(header, 4, 8);
+		crc.update(payload, 0, length);
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * Sequential reader of recordings in the {@link BinaryRecordFormat}.
+ * <p>
+ * The reader does not allocate per record: the values of the current record are available
+ * through the getters after each successful call to {@link #next()}. Blocks of journaled
+ * recordings are verified against their CRC; reading stops at the first invalid block.
+ * Blocks compressed with the {@link DeltaBlockCodec} are decoded one at a time.
+ */
+public class RecordReader implements Closeable {
+	private final InputStream inputStream;
+	private final int version;
+	private final int headerLength;
+	private final long startTime;
+	private final float scale;
+	private final int flags;
+	private final String deviceAddress;
+	private final byte[] record = new byte[BinaryRecordFormat.RECORD_SIZE];
+
+	private final byte[] blockHeader = new byte[RecordJournal.BLOCK_HEADER_SIZE];
+	private final CRC32 crc = new CRC32();
+	private byte[] payload = new byte[0];
+	private byte[] records = new byte[0];
+	private byte[] block;
+	private DeltaBlockCodec codec;
+	private int blockOffset, blockLength;
+	private boolean corrupted;
+	/** Number of bytes read from the file. */
+	private long position;
+
+	private long timestamp;
+	private int x, y, z;
+
+	/**
+	 * Opens the recording and reads its header.
+	 *
+	 * @param file the recording file.
+	 * @throws IOException when the file could not be read or is not a valid recording.
+	 */
+	public RecordReader(@NonNull final File file) throws IOException {
+		inputStream = new BufferedInputStream(new FileInputStream(file), 64 * 1024);
+		try {
+			final byte[] prefix = new byte[8];
+			readFully(prefix, 0, prefix.length);
+			for (int i = 0; i < BinaryRecordFormat.MAGIC.length; i++) {
+				if (prefix[i] != BinaryRecordFormat.MAGIC[i])
+					throw new IOException("Not a recording: " + file.getName());
+			}
+			version = BinaryRecordFormat.getUInt16(prefix, 4);
+			if (version < 1 || version > BinaryRecordFormat.VERSION)
+				throw new IOException("Unsupported recording version: " + version);
+			headerLength = BinaryRecordFormat.getUInt16(prefix, 6);
+			final int fixedSize = version == 1
+					? BinaryRecordFormat.HEADER_FIXED_SIZE_V1 : BinaryRecordFormat.HEADER_FIXED_SIZE;
+			if (headerLength < fixedSize)
+				throw new IOException("Invalid recording header: " + file.getName());
+
+			final byte[] header = new byte[headerLength];
+			System.arraycopy(prefix, 0, header, 0, prefix.length);
+			readFully(header, prefix.length, headerLength - prefix.length);
+			startTime = BinaryRecordFormat.getInt64(header, 8);
+			scale = Float.intBitsToFloat(BinaryRecordFormat.getInt32(header, 16));
+			flags = version == 1 ? 0 : BinaryRecordFormat.getUInt16(header, BinaryRecordFormat.FLAGS_OFFSET);
+			final int addressLength = Math.min(header[fixedSize - 1] & 0xFF, headerLength - fixedSize);
+			deviceAddress = new String(header, fixedSize, addressLength, StandardCharsets.US_ASCII);
+		} catch (final IOException e) {
+			inputStream.close();
+			throw e;
+		}
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the length of the file header, in bytes.
+	 */
+	public int getHeaderLength() {
+		return headerLength;
+	}
+
+	/**
+	 * Returns the start time of the recording, in milliseconds since epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the scale factor of the raw values, in g per LSB.
+	 */
+	public float getScale() {
+		return scale;
+	}
+
+	@NonNull
+	public String getDeviceAddress() {
+		return deviceAddress;
+	}
+
+	/**
+	 * Returns whether the recording was not closed properly and its tail was cut off
+	 * by {@link RecordRecovery}.
+	 */
+	public boolean isRecovered() {
+		return (flags & BinaryRecordFormat.FLAG_RECOVERED) != 0;
+	}
+
+	/**
+	 * Returns whether reading stopped at an invalid block, before the end of the file.
+	 * Such a file was not closed properly and has not been recovered yet.
+	 */
+	public boolean isCorrupted() {
+		return corrupted;
+	}
+
+	/**
+	 * Skips forward to the block at the given offset, as found in the {@link RecordIndex}.
+	 * Records of the current block that were not read yet are discarded.
+	 *
+	 * @param offset the offset of the block in the file.
+	 * @throws IOException when the offset is before the current position or the file could
+	 *                     not be read.
+	 */
+	public void skipTo(final long offset) throws IOException {
+		if (version == 1)
+			throw new IOException("Recording version 1 has no blocks");
+		if (offset < position)
+			throw new IOException("Cannot skip backwards to " + offset);
+		blockOffset = blockLength = 0;
+		while (position < offset) {
+			final long skipped = inputStream.skip(offset - position);
+			if (skipped <= 0)
+				throw new EOFException();
+			position += skipped;
+		}
+	}
+
+	/**
+	 * Reads the next record.
+	 *
+	 * @return true if a record was read, false at the end of the file or at the first invalid
+	 * block. A truncated record at the end of the file is ignored.
+	 * @throws IOException when reading failed.
+	 */
+	public boolean next() throws IOException {
+		final byte[] source;
+		final int offset;
+		if (version == 1) {
+			if (!read(record, record.length))
+				return false;
+			source = record;
+			offset = 0;
+		} else {
+			while (blockOffset + BinaryRecordFormat.RECORD_SIZE > blockLength) {
+				if (!nextBlock())
+					return false;
+			}
+			source = block;
+			offset = blockOffset;
+			blockOffset += BinaryRecordFormat.RECORD_SIZE;
+		}
+		timestamp = BinaryRecordFormat.getInt64(source, offset);
+		x = BinaryRecordFormat.getInt16(source, offset + 8);
+		y = BinaryRecordFormat.getInt16(source, offset + 10);
+		z = BinaryRecordFormat.getInt16(source, offset + 12);
+		return true;
+	}
+
+	/**
+	 * Returns the timestamp of the current record, in nanoseconds since the start of the recording.
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/** Returns the raw X value of the current record. */
+	public int getX() {
+		return x;
+	}
+
+	/** Returns the raw Y value of the current record. */
+	public int getY() {
+		return y;
+	}
+
+	/** Returns the raw Z value of the current record. */
+	public int getZ() {
+		return z;
+	}
+
+	/**
+	 * Returns whether the current record is a gap marker, with the number of lost frames in Z.
+	 */
+	public boolean isGap() {
+		return RecordFormat.isGap(x, y);
+	}
+
+	@Override
+	public void close() throws IOException {
+		inputStream.close();
+		if (codec != null)
+			codec.release();
+	}
+
+	/**
+	 * Reads and verifies the next block.
+	 *
+	 * @return true if a valid block was read, false at the end of the file or an invalid block.
+	 */
+	private boolean nextBlock() throws IOException {
+		blockOffset = blockLength = 0;
+		if (corrupted || !read(blockHeader, blockHeader.length))
+			return false;
+		if (!RecordJournal.isValidHeader(blockHeader)) {
+			corrupted = true;
+			return false;
+		}
+		final int length = RecordJournal.getPayloadLength(blockHeader);
+		if (payload.length < length)
+			payload = new byte[length];
+		if (!read(payload, length) || !RecordJournal.isValidPayload(blockHeader, payload, crc)) {
+			corrupted = true;
+			return false;
+		}
+		final int flags = RecordJournal.getFlags(blockHeader);
+		if (flags == 0) {
+			block = payload;
+			blockLength = length;
+		} else if (flags == DeltaBlockCodec.BLOCK_FLAG) {
+			final int count = RecordJournal.getSampleCount(blockHeader);
+			final int recordsLength = count * BinaryRecordFormat.RECORD_SIZE;
+			if (records.length < recordsLength)
+				records = new byte[recordsLength];
+			if (codec == null)
+				codec = new DeltaBlockCodec();
+			codec.decode(payload, length, count, records);
+			block = records;
+			blockLength = recordsLength;
+		} else {
+			corrupted = true;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads exactly the given number of bytes.
+	 *
+	 * @return true if read, false if the end of the file was reached before.
+	 */
+	private boolean read(@NonNull final byte[] buffer, final int length) throws IOException {
+		try {
+			readFully(buffer, 0, length);
+			return true;
+		} catch (final EOFException e) {
+			return false;
+		}
+	}
+
+	private void readFully(@NonNull final byte[] buffer, final int offset, final int length) throws IOException {
+		int read = 0;
+		while (read < length) {
+			final int count = inputStream.read(buffer, offset + read, length - read);
+			if (count < 0)
+				throw new EOFException();
+			read += count;
+		}
+		position += length;
+	}
+}
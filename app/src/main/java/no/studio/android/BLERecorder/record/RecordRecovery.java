@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Recovery of journaled recordings that were not closed properly, for example because the app
+ * process was killed while recording.
+ * <p>
+ * The blocks of the recording are verified one by one. The file is truncated just after the last
+ * valid block, dropping a torn block and the unused part of a pre-allocated segment, and the
+ * recording is marked with {@link BinaryRecordFormat#FLAG_RECOVERED}. The entries of the dropped
+ * blocks are cut off the session {@link RecordIndex} as well.
+ */
+public final class RecordRecovery {
+
+	/**
+	 * The outcome of recovering a single recording.
+	 */
+	public static class Result {
+		/** The recovered file. */
+		@NonNull
+		public final File file;
+		/** The number of samples in the valid blocks that were kept. */
+		public final long samples;
+		/** The number of bytes cut off the end of the file. */
+		public final long discardedBytes;
+
+		Result(@NonNull final File file, final long samples, final long discardedBytes) {
+			this.file = file;
+			this.samples = samples;
+			this.discardedBytes = discardedBytes;
+		}
+	}
+
+	private RecordRecovery() {
+		// Utility class.
+	}
+
+	/**
+	 * Recovers all binary recordings in the given directory.
+	 *
+	 * @param directory the directory with recordings.
+	 * @param filter    optional filter, called just before each file is checked; files it
+	 *                  rejects, for example the one being recorded, are skipped.
+	 * @return the list of recordings that had to be recovered.
+	 */
+	@NonNull
+	public static List<Result> recoverAll(@NonNull final File directory, @Nullable final FileFilter filter) {
+		final List<Result> results = new ArrayList<>();
+		final File[] files = directory.listFiles();
+		if (files == null)
+			return results;
+		for (final File file : files) {
+			if (!RecordConverter.isBinaryRecording(file) || (filter != null && !filter.accept(file)))
+				continue;
+			try {
+				final Result result = recover(file);
+				if (result != null)
+					results.add(result);
+			} catch (final IOException e) {
+				// Not a recording, or unreadable. Leave it as it is.
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Verifies the blocks of the recording and cuts off the invalid tail, if there is one.
+	 *
+	 * @param file the recording.
+	 * @return the result if the file had to be recovered, null if it was intact.
+	 * @throws IOException when the file could not be read or is not a journaled recording.
+	 */
+	@Nullable
+	public static Result recover(@NonNull final File file) throws IOException {
+		final long fileLength;
+		long position;
+		long samples = 0;
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			final byte[] prefix = new byte[8];
+			raf.readFully(prefix);
+			for (int i = 0; i < BinaryRecordFormat.MAGIC.length; i++) {
+				if (prefix[i] != BinaryRecordFormat.MAGIC[i])
+					throw new IOException("Not a recording: " + file.getName());
+			}
+			if (BinaryRecordFormat.getUInt16(prefix, 4) < 2)
+				throw new IOException("Recording is not journaled: " + file.getName());
+
+			fileLength = raf.length();
+			final byte[] blockHeader = new byte[RecordJournal.BLOCK_HEADER_SIZE];
+			final CRC32 crc = new CRC32();
+			byte[] payload = new byte[0];
+			position = BinaryRecordFormat.getUInt16(prefix, 6);
+			while (position + blockHeader.length <= fileLength) {
+				raf.seek(position);
+				raf.readFully(blockHeader);
+				if (!RecordJournal.isValidHeader(blockHeader))
+					break;
+				final int length = RecordJournal.getPayloadLength(blockHeader);
+				if (position + blockHeader.length + length > fileLength)
+					break;
+				if (payload.length < length)
+					payload = new byte[length];
+				raf.readFully(payload, 0, length);
+				if (!RecordJournal.isValidPayload(blockHeader, payload, crc))
+					break;
+				samples += RecordJournal.getSampleCount(blockHeader);
+				position += blockHeader.length + length;
+			}
+			if (position >= fileLength)
+				return null;
+
+			raf.setLength(position);
+			raf.seek(BinaryRecordFormat.FLAGS_OFFSET);
+			final byte[] flags = new byte[2];
+			raf.readFully(flags);
+			BinaryRecordFormat.putInt16(flags, 0,
+					BinaryRecordFormat.getUInt16(flags, 0) | BinaryRecordFormat.FLAG_RECOVERED);
+			raf.seek(BinaryRecordFormat.FLAGS_OFFSET);
+			raf.write(flags);
+			raf.getFD().sync();
+		}
+
+		// The session index must not point past the blocks that were kept
+		final File index = RecordSession.of(file).getIndexFile();
+		if (index.exists()) {
+			try {
+				RecordIndex.truncate(index, RecordSession.getPart(file), position);
+			} catch (final IOException e) {
+				// The index is only a hint, readers check it against the parts
+				e.printStackTrace();
+			}
+		}
+		return new Result(file, samples, fileLength - position);
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A recording session, split into parts by the {@link RecordWriter} when a part reaches
+ * its maximum size or duration.
+ * <p>
+ * The first part is named <code>name.blerec</code>, the following ones <code>name-1.blerec</code>,
+ * <code>name-2.blerec</code>, and so on. Each part is a complete recording with its own header,
+ * with timestamps relative to the start of the session. The session index,
+ * <code>name.blidx</code>, maps timestamps to the part and block offset, see {@link RecordIndex}.
+ * The summary used to review the session, <code>name.blsum</code>, is built on demand, see
+ * {@link SummaryPyramid}.
+ */
+public class RecordSession {
+	/** Extension of the session index file. */
+	public static final String INDEX_EXTENSION = ".blidx";
+	/** Extension of the session summary file. */
+	public static final String SUMMARY_EXTENSION = ".blsum";
+
+	private final File directory;
+	private final String name;
+
+	/**
+	 * @param directory the directory with the session files.
+	 * @param name      the name of the session, without extension.
+	 */
+	public RecordSession(@NonNull final File directory, @NonNull final String name) {
+		this.directory = directory;
+		this.name = name;
+	}
+
+	/**
+	 * Returns the session the given part file belongs to.
+	 *
+	 * @param file any part of the session.
+	 * @return the session.
+	 */
+	@NonNull
+	public static RecordSession of(@NonNull final File file) {
+		String name = file.getName();
+		if (name.endsWith(BinaryRecordFormat.EXTENSION))
+			name = name.substring(0, name.length() - BinaryRecordFormat.EXTENSION.length());
+		final int dash = name.lastIndexOf('-');
+		if (dash > 0 && isNumber(name, dash + 1))
+			name = name.substring(0, dash);
+		return new RecordSession(file.getParentFile(), name);
+	}
+
+	/**
+	 * Returns the part number of the given part file.
+	 *
+	 * @param file any part of a session.
+	 * @return the part number, starting from 0.
+	 */
+	public static int getPart(@NonNull final File file) {
+		String name = file.getName();
+		if (name.endsWith(BinaryRecordFormat.EXTENSION))
+			name = name.substring(0, name.length() - BinaryRecordFormat.EXTENSION.length());
+		final int dash = name.lastIndexOf('-');
+		if (dash > 0 && isNumber(name, dash + 1))
+			return Integer.parseInt(name.substring(dash + 1));
+		return 0;
+	}
+
+	@NonNull
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the file of the given part. The file may not exist.
+	 *
+	 * @param part the part number, starting from 0.
+	 */
+	@NonNull
+	public File getPartFile(final int part) {
+		if (part == 0)
+			return new File(directory, name + BinaryRecordFormat.EXTENSION);
+		return new File(directory, name + "-" + part + BinaryRecordFormat.EXTENSION);
+	}
+
+	@NonNull
+	public File getIndexFile() {
+		return new File(directory, name + INDEX_EXTENSION);
+	}
+
+	@NonNull
+	public File getSummaryFile() {
+		return new File(directory, name + SUMMARY_EXTENSION);
+	}
+
+	/**
+	 * Returns the existing part files, in order.
+	 */
+	@NonNull
+	public List<File> getPartFiles() {
+		final List<File> files = new ArrayList<>();
+		for (int part = 0; ; part++) {
+			final File file = getPartFile(part);
+			if (!file.exists())
+				break;
+			files.add(file);
+		}
+		return files;
+	}
+
+	/**
+	 * Returns the total size of the part files, in bytes.
+	 */
+	public long length() {
+		long length = 0;
+		for (final File file : getPartFiles())
+			length += file.length();
+		return length;
+	}
+
+	/**
+	 * Deletes all part files, the index and the summary.
+	 *
+	 * @return true if all files were deleted.
+	 */
+	public boolean delete() {
+		boolean deleted = true;
+		for (final File file : getPartFiles())
+			deleted &= file.delete();
+		final File index = getIndexFile();
+		if (index.exists())
+			deleted &= index.delete();
+		final File summary = getSummaryFile();
+		if (summary.exists())
+			deleted &= summary.delete();
+		return deleted;
+	}
+
+	private static boolean isNumber(@NonNull final String text, final int start) {
+		if (start >= text.length())
+			return false;
+		for (int i = start; i < text.length(); i++) {
+			if (!Character.isDigit(text.charAt(i)))
+				return false;
+		}
+		return true;
+	}
+}
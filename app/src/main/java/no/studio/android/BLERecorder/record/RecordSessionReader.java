@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Sequential reader of all parts of a {@link RecordSession}, optionally limited to a time range.
+ * <p>
+ * When the session has an index, reading starts at the block containing the start of the range,
+ * so the cost of reading a slice depends on the length of the slice, not on its position in the
+ * session. Without an index, or for version 1 recordings, the parts are read from the beginning,
+ * as they are when the index points past the end of a part.
+ */
+public class RecordSessionReader implements Closeable {
+	private final RecordSession session;
+	private final long from, to;
+	@Nullable
+	private RecordReader reader;
+	private int part;
+	private boolean corrupted;
+
+	/**
+	 * Opens the session for reading all records.
+	 *
+	 * @param session the session.
+	 * @throws IOException when the first part could not be read.
+	 */
+	public RecordSessionReader(@NonNull final RecordSession session) throws IOException {
+		this(session, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * Opens the session for reading records with timestamps in the given range.
+	 *
+	 * @param session the session.
+	 * @param from    the first timestamp to read, inclusive, in nanoseconds.
+	 * @param to      the last timestamp to read, inclusive, in nanoseconds.
+	 * @throws IOException when the first part could not be read.
+	 */
+	public RecordSessionReader(@NonNull final RecordSession session, final long from, final long to) throws IOException {
+		this.session = session;
+		this.from = from;
+		this.to = to;
+
+		RecordIndex index = null;
+		if (from != Long.MIN_VALUE && session.getIndexFile().exists()) {
+			try {
+				index = RecordIndex.load(session.getIndexFile());
+			} catch (final IOException e) {
+				// The index is only a hint, read the session from the beginning
+				e.printStackTrace();
+			}
+		}
+		int entry = index != null ? index.find(from) : -1;
+		// An index left by a recording cut off by recovery may point past the end of a part,
+		// which cannot be skipped to
+		if (entry >= 0 && index.getOffset(entry) > session.getPartFile(index.getPart(entry)).length())
+			entry = -1;
+		part = entry >= 0 ? index.getPart(entry) : 0;
+		reader = open(part);
+		if (reader == null)
+			throw new FileNotFoundException(session.getPartFile(part).getPath());
+		if (entry >= 0 && reader.getVersion() > 1)
+			reader.skipTo(index.getOffset(entry));
+	}
+
+	/**
+	 * Returns the start time of the session, in milliseconds since epoch.
+	 */
+	public long getStartTime() {
+		return current().getStartTime();
+	}
+
+	/**
+	 * Returns the scale factor of the raw values, in g per LSB.
+	 */
+	public float getScale() {
+		return current().getScale();
+	}
+
+	@NonNull
+	public String getDeviceAddress() {
+		return current().getDeviceAddress();
+	}
+
+	/**
+	 * Returns whether reading stopped at an invalid block of one of the parts.
+	 */
+	public boolean isCorrupted() {
+		return corrupted;
+	}
+
+	/**
+	 * Reads the next record in the range.
+	 *
+	 * @return true if a record was read, false after the last record of the range.
+	 * @throws IOException when reading failed.
+	 */
+	public boolean next() throws IOException {
+		while (reader != null) {
+			if (reader.next()) {
+				final long timestamp = reader.getTimestamp();
+				if (timestamp < from)
+					continue;
+				if (timestamp > to)
+					break;
+				return true;
+			}
+			corrupted |= reader.isCorrupted();
+			final RecordReader next = open(part + 1);
+			if (next == null)
+				break;
+			reader.close();
+			reader = next;
+			part++;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the timestamp of the current record, in nanoseconds since the start of the session.
+	 */
+	public long getTimestamp() {
+		return current().getTimestamp();
+	}
+
+	/** Returns the raw X value of the current record. */
+	public int getX() {
+		return current().getX();
+	}
+
+	/** Returns the raw Y value of the current record. */
+	public int getY() {
+		return current().getY();
+	}
+
+	/** Returns the raw Z value of the current record. */
+	public int getZ() {
+		return current().getZ();
+	}
+
+	/**
+	 * Returns whether the current record is a gap marker, with the number of lost frames in Z.
+	 */
+	public boolean isGap() {
+		return current().isGap();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (reader != null)
+			reader.close();
+	}
+
+	@NonNull
+	private RecordReader current() {
+		if (reader == null)
+			throw new IllegalStateException("Reader closed");
+		return reader;
+	}
+
+	@Nullable
+	private RecordReader open(final int part) throws IOException {
+		final File file = session.getPartFile(part);
+		if (!file.exists())
+			return null;
+		return new RecordReader(file);
+	}
+}
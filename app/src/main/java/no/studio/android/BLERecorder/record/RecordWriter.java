@@ -0,0 +1,647 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Recording session writer.
+ * <p>
+ * The file is opened when the recording starts. Samples are handed over through a bounded
+ * queue and written on a dedicated thread, so the BLE callback never touches the file system.
+ * Samples are encoded using the given {@link RecordFormat} into an in-memory block, which is
+ * written to the file when the flush interval elapses or when more than the flush threshold
+ * bytes are pending, whichever comes first. For journaled formats each block is framed with
+ * a checksum, see {@link RecordJournal}, and synced according to the {@link RecordJournal.SyncPolicy}.
+ * Blocks of journaled formats may also be compressed with the {@link DeltaBlockCodec}.
+ * <p>
+ * By default the file is written through memory-mapped segments, see
+ * {@link MappedSegmentOutputStream}, so that writing a block costs a memory copy.
+ * <p>
+ * A writer created for a {@link RecordSession} starts a new part of the session when the current
+ * part reaches the maximum size or duration, and records each block of a journaled format in the
+ * session {@link RecordIndex}. Parts are only switched between blocks. It also builds the
+ * session {@link SummaryPyramid} from the samples it writes, and saves it when it is closed,
+ * so the recording can be reviewed without reading it again.
+ */
+public class RecordWriter {
+	/** Default number of samples the queue can hold before new samples are dropped. */
+	public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+	/** Default maximum time the data may stay buffered in memory, in milliseconds. */
+	public static final long DEFAULT_FLUSH_INTERVAL_MS = 1000;
+	/** Default number of buffered bytes that triggers a flush. */
+	public static final int DEFAULT_FLUSH_THRESHOLD = 8 * 1024;
+	/** Default size of the memory-mapped segments. */
+	public static final int DEFAULT_SEGMENT_SIZE = MappedSegmentOutputStream.DEFAULT_SEGMENT_SIZE;
+	/** Default interval of syncing for {@link RecordJournal.SyncPolicy#INTERVAL}, in milliseconds. */
+	public static final long DEFAULT_SYNC_INTERVAL_MS = 5000;
+	/** Default maximum size of a session part, in bytes. */
+	public static final long DEFAULT_MAX_PART_SIZE = 32 * 1024 * 1024;
+	/** Default maximum duration of a session part, in milliseconds. */
+	public static final long DEFAULT_MAX_PART_DURATION_MS = 15 * 60 * 1000;
+	/** Interval of polling the source ring for new samples, in milliseconds. */
+	private static final long SOURCE_POLL_INTERVAL_MS = 20;
+
+	@Nullable
+	private final RecordSession session;
+	private final RecordFormat format;
+	private final int segmentSize;
+	private final long maxPartSize;
+	private final long maxPartDurationNanos;
+	@Nullable
+	private final RecordIndex.Writer index;
+	/** The summary of the session, only used by the writer thread, or null. */
+	@Nullable
+	private final SummaryPyramid.Writer summary;
+	private final long flushIntervalMs;
+	private final int flushThreshold;
+	private final RecordJournal.SyncPolicy syncPolicy;
+	private final long syncIntervalMs;
+	@Nullable
+	private final DeltaBlockCodec codec;
+	private final Thread thread;
+	/** The cursor the samples are read from, or null if they are queued with {@link #write}. */
+	@Nullable
+	private final SampleRing.Cursor source;
+	private final SampleRing.Listener sourceListener = this::addToBatch;
+
+	/** Lock guarding the queue below. */
+	private final Object lock = new Object();
+	private final long[] queueTime;
+	private final int[] queueX, queueY, queueZ;
+	private int head, size;
+	private boolean closed;
+	/** The position in the source ring to read up to once closed, the samples published before. */
+	private long sourceEnd = Long.MAX_VALUE;
+	private long droppedSamples;
+
+	/** Batch of samples taken from the queue, only used by the writer thread. */
+	private final long[] batchTime;
+	private final int[] batchX, batchY, batchZ;
+	private int batchSize;
+	/** The block being filled, only used by the writer thread. */
+	private final BlockBuffer block;
+	private final byte[] blockHeader = new byte[RecordJournal.BLOCK_HEADER_SIZE];
+	private final CRC32 crc = new CRC32();
+	private int blockSamples;
+	private long blockTimestamp;
+	/** The current part, only used by the writer thread. */
+	private File file;
+	private OutputStream outputStream;
+	@Nullable
+	private FileOutputStream fileOutputStream;
+	private int part;
+	private long partPosition;
+	private long partTimestamp;
+	/** Whether blocks were written since the last sync. */
+	private boolean unsynced;
+	@Nullable
+	private volatile IOException error;
+
+	private RecordWriter(@NonNull final Builder builder) throws IOException {
+		final int queueCapacity = builder.queueCapacity;
+		this.session = builder.session;
+		this.format = builder.format;
+		this.segmentSize = builder.segmentSize;
+		this.maxPartSize = builder.maxPartSize;
+		this.maxPartDurationNanos = builder.maxPartDurationMs * 1_000_000L;
+		this.flushIntervalMs = builder.flushIntervalMs;
+		this.flushThreshold = builder.flushThreshold;
+		this.syncPolicy = builder.syncPolicy;
+		this.syncIntervalMs = builder.syncIntervalMs;
+		this.codec = builder.compressed && format.isJournaled() ? new DeltaBlockCodec() : null;
+		this.source = builder.source;
+		// The queue is not used when the samples are read from a ring
+		final int queueSize = source != null ? 0 : queueCapacity;
+		this.queueTime = new long[queueSize];
+		this.queueX = new int[queueSize];
+		this.queueY = new int[queueSize];
+		this.queueZ = new int[queueSize];
+		this.batchTime = new long[queueCapacity];
+		this.batchX = new int[queueCapacity];
+		this.batchY = new int[queueCapacity];
+		this.batchZ = new int[queueCapacity];
+		this.block = new BlockBuffer(flushThreshold * 2);
+		openPart(builder.file);
+		if (session != null && format.isJournaled()) {
+			try {
+				this.index = new RecordIndex.Writer(session.getIndexFile());
+			} catch (final IOException e) {
+				outputStream.close();
+				throw e;
+			}
+		} else {
+			this.index = null;
+		}
+		this.summary = session != null && format.isJournaled() ? new SummaryPyramid.Writer() : null;
+
+		thread = new Thread(this::run, "RecordWriter");
+		thread.start();
+	}
+
+	/**
+	 * Creates the recording file with the default queue size, flush, sync policy and segment size.
+	 *
+	 * @param file   the target file. It will be overwritten if it exists.
+	 * @param format the format of the recording.
+	 * @throws IOException when the file could not be opened.
+	 */
+	public RecordWriter(@NonNull final File file, @NonNull final RecordFormat format) throws IOException {
+		this(new Builder(file, format));
+	}
+
+	/**
+	 * Returns the file of the recording, or the first part of the session.
+	 */
+	@NonNull
+	public File getFile() {
+		return session != null ? session.getPartFile(0) : file;
+	}
+
+	/**
+	 * Returns the session, or null if the writer was not created for a session.
+	 */
+	@Nullable
+	public RecordSession getSession() {
+		return session;
+	}
+
+	/**
+	 * Queues a sample for writing. This method never blocks on I/O.
+	 *
+	 * @param timestamp the time of the sample since the start of the recording, in nanoseconds.
+	 * @param x         X acceleration, in milli-g.
+	 * @param y         Y acceleration, in milli-g.
+	 * @param z         Z acceleration, in milli-g.
+	 * @return true if the sample was queued, false if the writer was closed or the queue is full.
+	 * @throws IllegalStateException if the writer reads the samples from a ring.
+	 */
+	public boolean write(final long timestamp, final int x, final int y, final int z) {
+		if (source != null)
+			throw new IllegalStateException("Samples are read from the source ring");
+		synchronized (lock) {
+			if (closed)
+				return false;
+			if (size == queueX.length) {
+				droppedSamples++;
+				return false;
+			}
+			final int tail = (head + size) % queueX.length;
+			queueTime[tail] = timestamp;
+			queueX[tail] = x;
+			queueY[tail] = y;
+			queueZ[tail] = z;
+			size++;
+			if (size == 1)
+				lock.notify();
+			return true;
+		}
+	}
+
+	/**
+	 * Queues a gap marker, telling that frames were lost before the given time.
+	 * This method never blocks on I/O.
+	 *
+	 * @param timestamp  the time the gap was detected, since the start of the recording, in nanoseconds.
+	 * @param lostFrames the number of frames lost.
+	 * @return true if the marker was queued, false if the writer was closed or the queue is full.
+	 */
+	public boolean writeGap(final long timestamp, final int lostFrames) {
+		return write(timestamp, RecordFormat.GAP_MARKER, RecordFormat.GAP_MARKER,
+				Math.min(lostFrames, Short.MAX_VALUE));
+	}
+
+	/**
+	 * Returns the number of samples dropped because the queue was full.
+	 */
+	public long getDroppedSamples() {
+		synchronized (lock) {
+			return droppedSamples;
+		}
+	}
+
+	/**
+	 * Returns the error that stopped the writer thread, or null if writing succeeded so far.
+	 */
+	@Nullable
+	public IOException getError() {
+		return error;
+	}
+
+	/**
+	 * Tells the writer thread to write all queued samples, flush and close the file, without
+	 * waiting for it. No more samples are accepted. Use {@link #close()} to wait.
+	 */
+	public void stop() {
+		synchronized (lock) {
+			if (closed)
+				return;
+			closed = true;
+			// Samples published afterwards belong to the next recording
+			if (source != null)
+				sourceEnd = source.getPublished();
+			lock.notify();
+		}
+	}
+
+	/**
+	 * Writes all queued samples, flushes and closes the file. This method blocks until
+	 * the writer thread has finished.
+	 */
+	public void close() {
+		stop();
+		try {
+			thread.join();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void run() {
+		long lastFlush = System.currentTimeMillis();
+		long lastSync = lastFlush;
+		try {
+			while (true) {
+				final int count;
+				final boolean done;
+				if (source != null) {
+					final long end;
+					synchronized (lock) {
+						final long wait = Math.min(SOURCE_POLL_INTERVAL_MS,
+								lastFlush + flushIntervalMs - System.currentTimeMillis());
+						if (!closed && wait > 0 && source.available() == 0) {
+							try {
+								lock.wait(wait);
+							} catch (final InterruptedException e) {
+								closed = true;
+								sourceEnd = source.getPublished();
+							}
+						}
+						end = sourceEnd;
+					}
+					batchSize = 0;
+					final long max = Math.min(batchTime.length, end - source.getPosition());
+					count = max > 0 ? source.poll(sourceListener, (int) max) : 0;
+					// Done once everything published before closing has been read
+					done = source.getPosition() >= end;
+				} else {
+					synchronized (lock) {
+						final long wait = lastFlush + flushIntervalMs - System.currentTimeMillis();
+						if (size == 0 && !closed && wait > 0) {
+							try {
+								lock.wait(wait);
+							} catch (final InterruptedException e) {
+								closed = true;
+							}
+						}
+						count = size;
+						for (int i = 0; i < count; i++) {
+							final int index = (head + i) % queueX.length;
+							batchTime[i] = queueTime[index];
+							batchX[i] = queueX[index];
+							batchY[i] = queueY[index];
+							batchZ[i] = queueZ[index];
+						}
+						head = (head + count) % queueX.length;
+						size = 0;
+						done = closed;
+					}
+				}
+
+				for (int i = 0; i < count; i++) {
+					if (blockSamples == 0)
+						blockTimestamp = batchTime[i];
+					if (RecordFormat.isGap(batchX[i], batchY[i])) {
+						format.writeGap(block, batchTime[i], batchZ[i]);
+					} else {
+						format.writeSample(block, batchTime[i], batchX[i], batchY[i], batchZ[i]);
+						if (summary != null)
+							summary.add(batchTime[i], batchX[i], batchY[i], batchZ[i]);
+					}
+					if (++blockSamples == RecordJournal.MAX_BLOCK_SAMPLES || block.size() >= flushThreshold)
+						writeBlock();
+				}
+
+				final long now = System.currentTimeMillis();
+				if (blockSamples > 0 && (done || now - lastFlush >= flushIntervalMs)) {
+					writeBlock();
+				}
+				if (blockSamples == 0) {
+					lastFlush = now;
+				}
+				if (syncPolicy == RecordJournal.SyncPolicy.INTERVAL && unsynced && now - lastSync >= syncIntervalMs) {
+					sync();
+					lastSync = now;
+				}
+				if (done)
+					break;
+			}
+		} catch (final IOException e) {
+			error = e;
+			synchronized (lock) {
+				closed = true;
+			}
+		} finally {
+			try {
+				outputStream.close();
+				if (index != null)
+					index.close();
+			} catch (final IOException e) {
+				if (error == null)
+					error = e;
+			}
+			if (codec != null)
+				codec.release();
+			if (source != null)
+				source.close();
+		}
+		// The summary is only an optimization, it is rebuilt from the session when missing
+		if (summary != null && error == null) {
+			try {
+				summary.write(session);
+			} catch (final IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	private void addToBatch(final long timestamp, final int x, final int y, final int z) {
+		batchTime[batchSize] = timestamp;
+		batchX[batchSize] = x;
+		batchY[batchSize] = y;
+		batchZ[batchSize] = z;
+		batchSize++;
+	}
+
+	/**
+	 * Writes the pending block to the file, framed if the format is journaled.
+	 */
+	private void writeBlock() throws IOException {
+		if (session != null && partTimestamp != Long.MIN_VALUE && (partPosition >= maxPartSize
+				|| blockTimestamp - partTimestamp >= maxPartDurationNanos)) {
+			nextPart();
+		}
+		if (partTimestamp == Long.MIN_VALUE)
+			partTimestamp = blockTimestamp;
+		final long blockPosition = partPosition;
+
+		if (codec != null) {
+			final int length = codec.encode(block.getBuffer(), blockSamples);
+			RecordJournal.writeBlockHeader(blockHeader, blockSamples, DeltaBlockCodec.BLOCK_FLAG,
+					codec.getEncoded(), length, crc);
+			outputStream.write(blockHeader);
+			outputStream.write(codec.getEncoded(), 0, length);
+			partPosition += blockHeader.length + length;
+		} else {
+			if (format.isJournaled()) {
+				RecordJournal.writeBlockHeader(blockHeader, blockSamples, 0,
+						block.getBuffer(), block.size(), crc);
+				outputStream.write(blockHeader);
+				partPosition += blockHeader.length;
+			}
+			outputStream.write(block.getBuffer(), 0, block.size());
+			partPosition += block.size();
+		}
+		block.reset();
+		blockSamples = 0;
+		unsynced = true;
+		if (syncPolicy == RecordJournal.SyncPolicy.PER_BLOCK)
+			sync();
+		// The entry follows the block, so the index never points past the data written
+		if (index != null) {
+			index.add(blockTimestamp, part, blockPosition);
+			index.flush();
+		}
+	}
+
+	/**
+	 * Closes the current part and starts the next one of the session.
+	 */
+	private void nextPart() throws IOException {
+		if (unsynced && syncPolicy != RecordJournal.SyncPolicy.NEVER)
+			sync();
+		outputStream.close();
+		part++;
+		openPart(session.getPartFile(part));
+	}
+
+	/**
+	 * Creates the part file and writes the format header to it.
+	 */
+	private void openPart(@NonNull final File file) throws IOException {
+		this.file = file;
+		if (segmentSize > 0) {
+			fileOutputStream = null;
+			outputStream = new MappedSegmentOutputStream(file, segmentSize);
+		} else {
+			fileOutputStream = new FileOutputStream(file);
+			outputStream = fileOutputStream;
+		}
+		try {
+			// The header is buffered first, so its length is known
+			final BlockBuffer header = new BlockBuffer(64);
+			format.writeHeader(header);
+			outputStream.write(header.getBuffer(), 0, header.size());
+			partPosition = header.size();
+			partTimestamp = Long.MIN_VALUE;
+		} catch (final IOException e) {
+			outputStream.close();
+			throw e;
+		}
+	}
+
+	private void sync() throws IOException {
+		unsynced = false;
+		if (outputStream instanceof MappedSegmentOutputStream) {
+			((MappedSegmentOutputStream) outputStream).sync();
+		} else if (fileOutputStream != null) {
+			fileOutputStream.getFD().sync();
+		}
+	}
+
+	/**
+	 * Reusable in-memory block with access to its buffer.
+	 */
+	private static class BlockBuffer extends ByteArrayOutputStream {
+		BlockBuffer(final int size) {
+			super(size);
+		}
+
+		byte[] getBuffer() {
+			return buf;
+		}
+	}
+
+	/**
+	 * Builder of {@link RecordWriter} with a custom queue, flush and sync configuration.
+	 */
+	public static class Builder {
+		private final File file;
+		@Nullable
+		private final RecordSession session;
+		private final RecordFormat format;
+		private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+		private long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+		private int flushThreshold = DEFAULT_FLUSH_THRESHOLD;
+		private int segmentSize = DEFAULT_SEGMENT_SIZE;
+		private RecordJournal.SyncPolicy syncPolicy = RecordJournal.SyncPolicy.INTERVAL;
+		private long syncIntervalMs = DEFAULT_SYNC_INTERVAL_MS;
+		private boolean compressed;
+		private long maxPartSize = DEFAULT_MAX_PART_SIZE;
+		private long maxPartDurationMs = DEFAULT_MAX_PART_DURATION_MS;
+		@Nullable
+		private SampleRing.Cursor source;
+
+		/**
+		 * @param file   the target file. It will be overwritten if it exists.
+		 * @param format the format of the recording.
+		 */
+		public Builder(@NonNull final File file, @NonNull final RecordFormat format) {
+			this.file = file;
+			this.session = null;
+			this.format = format;
+		}
+
+		/**
+		 * Creates a builder of a writer that splits the recording into parts of the session
+		 * and writes the session index.
+		 *
+		 * @param session the session. Its files will be overwritten if they exist.
+		 * @param format  the format of the recording.
+		 */
+		public Builder(@NonNull final RecordSession session, @NonNull final RecordFormat format) {
+			this.file = session.getPartFile(0);
+			this.session = session;
+			this.format = format;
+		}
+
+		/**
+		 * Sets the cursor of a ring the samples are read from, instead of being queued with
+		 * {@link RecordWriter#write}. The writer thread polls the ring, so the producer never
+		 * takes a lock. The cursor is only read by the writer thread, which closes it when it
+		 * stops, also on an error, so a failed writer does not hold the ring back. Recordings
+		 * should use a {@link SampleRing.Backpressure#GROW} cursor, so no sample is skipped.
+		 * Once stopped, the writer reads the samples published before, and leaves those published
+		 * afterwards to the next recording.
+		 */
+		@NonNull
+		public Builder setSource(@NonNull final SampleRing.Cursor source) {
+			this.source = source;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of samples waiting to be written, or read from the source
+		 * at once.
+		 */
+		@NonNull
+		public Builder setQueueCapacity(final int queueCapacity) {
+			this.queueCapacity = queueCapacity;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum time the data may stay buffered in memory, in milliseconds.
+		 */
+		@NonNull
+		public Builder setFlushInterval(final long flushIntervalMs) {
+			this.flushIntervalMs = flushIntervalMs;
+			return this;
+		}
+
+		/**
+		 * Sets the number of buffered bytes that triggers a flush.
+		 */
+		@NonNull
+		public Builder setFlushThreshold(final int flushThreshold) {
+			this.flushThreshold = flushThreshold;
+			return this;
+		}
+
+		/**
+		 * Sets the size of the memory-mapped segments, or 0 to write the file using
+		 * a file stream instead.
+		 */
+		@NonNull
+		public Builder setSegmentSize(final int segmentSize) {
+			this.segmentSize = segmentSize;
+			return this;
+		}
+
+		/**
+		 * Sets when the written data are forced to the storage device.
+		 *
+		 * @param syncPolicy     the policy.
+		 * @param syncIntervalMs the interval, used with {@link RecordJournal.SyncPolicy#INTERVAL}.
+		 */
+		@NonNull
+		public Builder setSyncPolicy(@NonNull final RecordJournal.SyncPolicy syncPolicy,
+									 final long syncIntervalMs) {
+			this.syncPolicy = syncPolicy;
+			this.syncIntervalMs = syncIntervalMs;
+			return this;
+		}
+
+		/**
+		 * Sets whether the blocks are compressed with the {@link DeltaBlockCodec}.
+		 * This has no effect on formats that are not journaled.
+		 */
+		@NonNull
+		public Builder setCompressed(final boolean compressed) {
+			this.compressed = compressed;
+			return this;
+		}
+
+		/**
+		 * Sets when a new part of the session is started. This has no effect if the builder
+		 * was not created for a session.
+		 *
+		 * @param maxPartSize       the maximum size of a part, in bytes.
+		 * @param maxPartDurationMs the maximum duration of a part, in milliseconds.
+		 */
+		@NonNull
+		public Builder setPartLimits(final long maxPartSize, final long maxPartDurationMs) {
+			this.maxPartSize = maxPartSize;
+			this.maxPartDurationMs = maxPartDurationMs;
+			return this;
+		}
+
+		/**
+		 * Creates the recording file and starts the writer thread.
+		 *
+		 * @throws IOException when the file could not be opened.
+		 */
+		@NonNull
+		public RecordWriter build() throws IOException {
+			return new RecordWriter(this);
+		}
+	}
+}
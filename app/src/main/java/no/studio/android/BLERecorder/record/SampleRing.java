@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Ring buffer of samples written by one producer thread and read by any number of consumers,
+ * each through its own {@link Cursor}.
+ * <p>
+ * The samples are kept in primitive columns, so publishing neither locks nor allocates. The
+ * producer publishes a sample by advancing its sequence counter, and each cursor tells the
+ * producer how far it has read by advancing its own. The counters are padded to their own
+ * cache lines, so the producer and the consumers do not slow each other down by writing to
+ * the same line.
+ * <p>
+ * Each cursor declares what happens when it falls behind by the whole ring, see
+ * {@link Backpressure}. The producer never waits for a consumer: a slow consumer either makes
+ * the ring grow, up to its maximum capacity, or loses its oldest samples, and never holds back
+ * the others. Only when the ring can not grow any more, new samples are dropped for everyone.
+ * <p>
+ * The values are stored as 16-bit numbers, which the accelerometer values and the
+ * {@link RecordFormat#GAP_MARKER gap markers} fit into.
+ */
+public final class SampleRing {
+	/** Default initial capacity, several seconds of samples at the highest rates. */
+	public static final int DEFAULT_CAPACITY = 8192;
+	/** Size of a sample in the ring, in bytes. */
+	public static final int SAMPLE_SIZE = 8 + 3 * 2;
+	/** Number of samples a {@link Backpressure#DROP_OLDEST} cursor copies at once. */
+	private static final int COPY_BATCH = 256;
+
+	/**
+	 * What happens when a cursor has not read the sample the producer would overwrite.
+	 */
+	public enum Backpressure {
+		/**
+		 * The cursor never loses samples. The ring grows to make room, and only when it reached
+		 * its maximum capacity, new samples are dropped. For consumers that must see every
+		 * sample, like the recording writer.
+		 */
+		GROW,
+		/**
+		 * The cursor keeps the latest samples and skips the oldest ones it has not read.
+		 * For consumers that only show the recent data, like the graph.
+		 */
+		DROP_OLDEST
+	}
+
+	/**
+	 * Receives the samples read by a cursor.
+	 */
+	public interface Listener {
+		void onSample(long timestamp, int x, int y, int z);
+	}
+
+	private final int maxCapacity;
+	/** The columns, replaced by larger ones when the ring grows. */
+	private volatile Segment segment;
+	/** The number of samples published, written by the producer only. */
+	private final Sequence published = new Sequence(0);
+	/** The cursors, replaced on every change. */
+	private volatile Cursor[] cursors = new Cursor[0];
+	/** The lowest sequence of the {@link Backpressure#GROW} cursors seen by the producer. */
+	private long growGate;
+	/** The lowest sequence of the {@link Backpressure#DROP_OLDEST} cursors seen by the producer. */
+	private long dropGate;
+	private volatile long dropped;
+
+	/**
+	 * Creates a ring of fixed capacity.
+	 *
+	 * @param capacity the capacity, rounded up to a power of two.
+	 */
+	public SampleRing(final int capacity) {
+		this(capacity, capacity);
+	}
+
+	/**
+	 * Creates a ring that grows when a {@link Backpressure#GROW} cursor falls behind.
+	 *
+	 * @param capacity    the initial capacity, rounded up to a power of two.
+	 * @param maxCapacity the maximum capacity, rounded up to a power of two.
+	 */
+	public SampleRing(final int capacity, final int maxCapacity) {
+		if (capacity <= 0 || maxCapacity < capacity)
+			throw new IllegalArgumentException("Invalid capacity: " + capacity + ", maximum " + maxCapacity);
+		segment = new Segment(roundUp(capacity));
+		this.maxCapacity = roundUp(maxCapacity);
+	}
+
+	/**
+	 * Returns the largest capacity that fits into the given number of bytes.
+	 */
+	public static int getCapacityForBytes(final long bytes) {
+		return Integer.highestOneBit((int) Math.min(Integer.MAX_VALUE, Math.max(1, bytes / SAMPLE_SIZE)));
+	}
+
+	/**
+	 * Returns the current capacity.
+	 */
+	public int getCapacity() {
+		return segment.mask + 1;
+	}
+
+	public int getMaxCapacity() {
+		return maxCapacity;
+	}
+
+	/**
+	 * Publishes a sample. Only one thread may publish.
+	 *
+	 * @return true if the sample was published, false if it was dropped because the ring
+	 * has reached its maximum capacity and a {@link Backpressure#GROW} cursor has not read
+	 * the sample it would overwrite.
+	 */
+	public boolean publish(final long timestamp, final int x, final int y, final int z) {
+		final long sequence = published.value;
+		Segment current = segment;
+		if (sequence - growGate > current.mask && (growGate = getMinimumSequence(sequence)) + current.mask < sequence) {
+			if (current.mask + 1 == maxCapacity) {
+				dropped++;
+				return false;
+			}
+			current = grow(current, sequence);
+		}
+		if (sequence - dropGate > current.mask)
+			dropGate = skipOldest(sequence, current.mask + 1);
+		final int index = (int) sequence & current.mask;
+		current.timestamps[index] = timestamp;
+		current.xs[index] = (short) x;
+		current.ys[index] = (short) y;
+		current.zs[index] = (short) z;
+		published.lazySet(sequence + 1);
+		return true;
+	}
+
+	/**
+	 * Returns the number of samples published.
+	 */
+	public long getPublished() {
+		return published.value;
+	}
+
+	/**
+	 * Returns the number of samples dropped because the ring could not grow any more.
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Creates a cursor that reads the samples published from now on. A
+	 * {@link Backpressure#GROW} cursor keeps the samples it has not read in the ring until it
+	 * is {@link Cursor#close() closed}, so it must be read regularly.
+	 */
+	@NonNull
+	public synchronized Cursor newCursor(@NonNull final Backpressure backpressure) {
+		final Cursor cursor = new Cursor(backpressure, published.value);
+		final Cursor[] current = cursors;
+		final Cursor[] updated = Arrays.copyOf(current, current.length + 1);
+		updated[current.length] = cursor;
+		cursors = updated;
+		return cursor;
+	}
+
+	private synchronized void removeCursor(@NonNull final Cursor cursor) {
+		final Cursor[] current = cursors;
+		for (int i = 0; i < current.length; i++) {
+			if (current[i] == cursor) {
+				final Cursor[] updated = new Cursor[current.length - 1];
+				System.arraycopy(current, 0, updated, 0, i);
+				System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+				cursors = updated;
+				return;
+			}
+		}
+	}
+
+	private long getMinimumSequence(final long sequence) {
+		long minimum = sequence;
+		for (final Cursor cursor : cursors) {
+			if (cursor.backpressure == Backpressure.GROW)
+				minimum = Math.min(minimum, cursor.sequence.value);
+		}
+		return minimum;
+	}
+
+	/**
+	 * Moves the {@link Backpressure#DROP_OLDEST} cursors that have not read the sample about to
+	 * be overwritten past it, and returns the lowest sequence of these cursors.
+	 */
+	private long skipOldest(final long sequence, final int capacity) {
+		final long oldest = sequence - capacity + 1;
+		long minimum = sequence;
+		for (final Cursor cursor : cursors) {
+			if (cursor.backpressure != Backpressure.DROP_OLDEST)
+				continue;
+			long position;
+			while ((position = cursor.sequence.value) < oldest) {
+				if (cursor.sequence.compareAndSet(position, oldest)) {
+					cursor.dropped += oldest - position;
+					position = oldest;
+					break;
+				}
+			}
+			minimum = Math.min(minimum, position);
+		}
+		return minimum;
+	}
+
+	/**
+	 * Replaces the columns with ones of twice the size, with a copy of the samples that may
+	 * not have been read yet. The old columns are not written to any more, so cursors still
+	 * reading them read valid samples.
+	 */
+	@NonNull
+	private Segment grow(@NonNull final Segment current, final long sequence) {
+		final Segment larger = new Segment(Math.min(maxCapacity, (current.mask + 1) * 2));
+		for (long s = Math.max(0, sequence - current.mask - 1); s < sequence; s++) {
+			final int from = (int) s & current.mask;
+			final int to = (int) s & larger.mask;
+			larger.timestamps[to] = current.timestamps[from];
+			larger.xs[to] = current.xs[from];
+			larger.ys[to] = current.ys[from];
+			larger.zs[to] = current.zs[from];
+		}
+		segment = larger;
+		return larger;
+	}
+
+	private static int roundUp(final int capacity) {
+		return capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+	}
+
+	/**
+	 * The columns of the samples.
+	 */
+	private static final class Segment {
+		final int mask;
+		final long[] timestamps;
+		final short[] xs, ys, zs;
+
+		Segment(final int capacity) {
+			mask = capacity - 1;
+			timestamps = new long[capacity];
+			xs = new short[capacity];
+			ys = new short[capacity];
+			zs = new short[capacity];
+		}
+	}
+
+	/**
+	 * A position in the ring, read by a single consumer thread.
+	 */
+	public final class Cursor {
+		private final Backpressure backpressure;
+		/** The number of samples read, or skipped by the producer. */
+		private final Sequence sequence;
+		/** Samples copied before being passed on, for {@link Backpressure#DROP_OLDEST} cursors. */
+		@Nullable
+		private final Segment copy;
+		/** The number of samples skipped by the producer, written by the producer only. */
+		private volatile long dropped;
+		private volatile int highWaterMark;
+
+		private Cursor(@NonNull final Backpressure backpressure, final long start) {
+			this.backpressure = backpressure;
+			this.sequence = new Sequence(start);
+			this.copy = backpressure == Backpressure.DROP_OLDEST ? new Segment(COPY_BATCH) : null;
+		}
+
+		@NonNull
+		public Backpressure getBackpressure() {
+			return backpressure;
+		}
+
+		/**
+		 * Returns the number of samples read, or skipped by the producer, so far: the position of
+		 * the next sample to read, comparable with {@link #getPublished()}.
+		 */
+		public long getPosition() {
+			return sequence.value;
+		}
+
+		/**
+		 * Returns the number of samples published to the ring, see {@link SampleRing#getPublished()}.
+		 */
+		public long getPublished() {
+			return published.value;
+		}
+
+		/**
+		 * Returns the number of samples published and not read yet.
+		 */
+		public int available() {
+			return (int) (published.value - sequence.value);
+		}
+
+		/**
+		 * Returns the number of samples this cursor lost because it fell behind, always 0 for
+		 * {@link Backpressure#GROW} cursors.
+		 */
+		public long getDropped() {
+			return dropped;
+		}
+
+		/**
+		 * Returns the highest number of unread samples seen when the cursor was polled.
+		 */
+		public int getHighWaterMark() {
+			return highWaterMark;
+		}
+
+		/**
+		 * Passes the unread samples, at most the given number, to the listener.
+		 *
+		 * @return the number of samples read.
+		 */
+		public int poll(@NonNull final Listener listener, final int max) {
+			// The columns must be read after the sequence, so they contain the samples published
+			final long end = published.value;
+			final Segment current = segment;
+			final long start = sequence.value;
+			if (end - start > highWaterMark)
+				highWaterMark = (int) Math.min(Integer.MAX_VALUE, end - start);
+			if (copy != null)
+				return pollCopy(listener, max, end, current);
+
+			final long last = Math.min(end, start + max);
+			for (long s = start; s < last; s++) {
+				final int index = (int) s & current.mask;
+				listener.onSample(current.timestamps[index], current.xs[index], current.ys[index], current.zs[index]);
+			}
+			if (last > start)
+				sequence.lazySet(last);
+			return (int) (last - start);
+		}
+
+		/**
+		 * Reads the samples of a {@link Backpressure#DROP_OLDEST} cursor. The producer may
+		 * overwrite them while they are being read, so they are copied first and only passed on
+		 * if the producer has not moved the cursor in the meantime.
+		 */
+		private int pollCopy(@NonNull final Listener listener, final int max, final long end,
+							 @NonNull final Segment current) {
+			int count = 0;
+			while (count < max) {
+				final long start = sequence.value;
+				final long last = Math.min(end, start + Math.min(max - count, COPY_BATCH));
+				if (last <= start)
+					break;
+				for (long s = start; s < last; s++) {
+					final int from = (int) s & current.mask;
+					final int to = (int) (s - start);
+					copy.timestamps[to] = current.timestamps[from];
+					copy.xs[to] = current.xs[from];
+					copy.ys[to] = current.ys[from];
+					copy.zs[to] = current.zs[from];
+				}
+				if (!sequence.compareAndSet(start, last))
+					continue;
+				final int length = (int) (last - start);
+				for (int i = 0; i < length; i++)
+					listener.onSample(copy.timestamps[i], copy.xs[i], copy.ys[i], copy.zs[i]);
+				count += length;
+			}
+			return count;
+		}
+
+		/**
+		 * Removes the cursor from the ring, so it no longer holds samples back.
+		 */
+		public void close() {
+			removeCursor(this);
+		}
+	}
+
+	@SuppressWarnings("unused")
+	private static class LeftPadding {
+		long p1, p2, p3, p4, p5, p6, p7;
+	}
+
+	private static class Value extends LeftPadding {
+		volatile long value;
+	}
+
+	/**
+	 * A sequence counter on its own cache line. Fields of a subclass follow the fields of its
+	 * superclass, so the value is surrounded by the padding.
+	 */
+	@SuppressWarnings("unused")
+	private static final class Sequence extends Value {
+		private static final AtomicLongFieldUpdater<Value> UPDATER =
+				AtomicLongFieldUpdater.newUpdater(Value.class, "value");
+		long p9, p10, p11, p12, p13, p14, p15;
+
+		Sequence(final long initial) {
+			value = initial;
+		}
+
+		/** Sets the value without waiting for the write to be visible to other threads. */
+		void lazySet(final long value) {
+			UPDATER.lazySet(this, value);
+		}
+
+		boolean compareAndSet(final long expected, final long value) {
+			return UPDATER.compareAndSet(this, expected, value);
+		}
+	}
+}
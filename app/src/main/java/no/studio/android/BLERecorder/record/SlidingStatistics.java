@@ -0,0 +1,368 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Running statistics of the three axes of the samples: mean, RMS, standard deviation and peak,
+ * over a sliding time window or over all samples added since the last reset.
+ * <p>
+ * The mean and the variance are updated with Welford's algorithm, which for a sliding window
+ * also takes the samples leaving the window out again, and the minimum and the maximum are kept
+ * with monotonic deques. Each sample is added and expired once, so the cost per sample is
+ * constant, whatever the length of the window. The samples in the window are kept in primitive
+ * ring buffers, which double when the window holds more samples than they fit, and soon stop
+ * growing, so nothing is allocated per sample. The statistics over all samples keep no samples.
+ * <p>
+ * Taking samples out of the running sums lets their rounding errors build up, so for a sliding
+ * window the sums are recomputed from the samples in the window each time all the samples it
+ * held at the previous recomputation have left it. That is one more pass over each sample, and
+ * bounds the error to that of the updates since, instead of since the last reset. Adding
+ * samples only, as over the whole session, is stable and needs no recomputation.
+ * <p>
+ * Samples only leave the window when a sample is added or {@link #expireBefore(long)} is called,
+ * which the owner should do periodically, so the window empties when the samples stop coming.
+ * <p>
+ * The values are in the units of the samples. All methods are synchronized, so samples may be
+ * added on the BLE thread while the statistics are read elsewhere, best with
+ * {@link #snapshot(Snapshot)}, which reads all of them at the same moment.
+ */
+public class SlidingStatistics {
+	/** Length of the window of the statistics over all samples since the last reset. */
+	public static final long WHOLE_SESSION = 0;
+	private static final int AXES = 3;
+	/** Initial number of samples kept for the window. */
+	private static final int INITIAL_CAPACITY = 1024;
+
+	/**
+	 * The statistics of all axes taken at one moment, filled by {@link #snapshot(Snapshot)}.
+	 * A snapshot may be reused, so reading the statistics does not allocate.
+	 */
+	public static final class Snapshot {
+		private long count;
+		private final double[] means = new double[AXES], rms = new double[AXES], deviations = new double[AXES];
+		private final int[] peaks = new int[AXES];
+
+		/** Returns the number of samples in the window. */
+		public long getCount() {
+			return count;
+		}
+
+		/** Returns the mean of the axis, 0 to 2. */
+		public double getMean(final int axis) {
+			return means[axis];
+		}
+
+		/** Returns the root mean square of the axis, 0 to 2. */
+		public double getRms(final int axis) {
+			return rms[axis];
+		}
+
+		/** Returns the sample standard deviation of the axis, 0 to 2. */
+		public double getStandardDeviation(final int axis) {
+			return deviations[axis];
+		}
+
+		/** Returns the peak of the axis, 0 to 2: the largest absolute value. */
+		public int getPeak(final int axis) {
+			return peaks[axis];
+		}
+	}
+
+	private final long windowNanos;
+	private long count;
+	private final double[] means = new double[AXES], m2s = new double[AXES];
+
+	// Samples in the window, sample s at s & mask, from head to tail, exclusive
+	private int mask;
+	private long[] timestamps;
+	private int[][] values;
+	private long head, tail;
+	/** The sample number at which the running sums are recomputed next. */
+	private long nextRecompute;
+	// Positions of the samples in the deques, each is a ring of sample numbers from first to last, exclusive
+	private long[][] minDeques, maxDeques;
+	private final long[] minFirst = new long[AXES], minLast = new long[AXES];
+	private final long[] maxFirst = new long[AXES], maxLast = new long[AXES];
+	// Extremes of all samples, for the whole session
+	private final int[] mins = new int[AXES], maxs = new int[AXES];
+
+	/**
+	 * @param windowNanos the length of the window, in nanoseconds, or {@link #WHOLE_SESSION}.
+	 */
+	public SlidingStatistics(final long windowNanos) {
+		this.windowNanos = windowNanos;
+		if (windowNanos != WHOLE_SESSION)
+			allocate(INITIAL_CAPACITY);
+	}
+
+	/**
+	 * Returns the length of the window, in nanoseconds, or {@link #WHOLE_SESSION}.
+	 */
+	public long getWindow() {
+		return windowNanos;
+	}
+
+	/**
+	 * Adds a sample. Samples older than the window before its timestamp are taken out.
+	 *
+	 * @param timestamp the time of the sample, in nanoseconds. Timestamps must not decrease.
+	 */
+	public synchronized void add(final long timestamp, final int x, final int y, final int z) {
+		if (windowNanos == WHOLE_SESSION) {
+			if (count == 0) {
+				mins[0] = maxs[0] = x;
+				mins[1] = maxs[1] = y;
+				mins[2] = maxs[2] = z;
+			}
+			count++;
+			accumulate(0, x);
+			accumulate(1, y);
+			accumulate(2, z);
+			return;
+		}
+
+		expireBefore(timestamp);
+		if (tail - head == timestamps.length)
+			allocate(timestamps.length * 2);
+		final int index = (int) tail & mask;
+		timestamps[index] = timestamp;
+		values[0][index] = x;
+		values[1][index] = y;
+		values[2][index] = z;
+		count++;
+		for (int axis = 0; axis < AXES; axis++) {
+			final int value = values[axis][index];
+			addWelford(axis, value);
+			// The deques keep the samples that may still become the extreme, in order
+			final long[] minDeque = minDeques[axis];
+			while (minLast[axis] > minFirst[axis]
+					&& values[axis][(int) minDeque[(int) (minLast[axis] - 1) & mask] & mask] >= value)
+				minLast[axis]--;
+			minDeque[(int) minLast[axis]++ & mask] = tail;
+			final long[] maxDeque = maxDeques[axis];
+			while (maxLast[axis] > maxFirst[axis]
+					&& values[axis][(int) maxDeque[(int) (maxLast[axis] - 1) & mask] & mask] <= value)
+				maxLast[axis]--;
+			maxDeque[(int) maxLast[axis]++ & mask] = tail;
+		}
+		tail++;
+	}
+
+	/**
+	 * Takes out the samples older than the window before the given time. This has no effect on
+	 * the statistics over the whole session.
+	 *
+	 * @param now the current time, in nanoseconds, in the time base of the samples.
+	 */
+	public synchronized void expireBefore(final long now) {
+		if (windowNanos == WHOLE_SESSION)
+			return;
+		final long start = head;
+		while (head < tail && timestamps[(int) head & mask] <= now - windowNanos)
+			expire();
+		if (head != start && head >= nextRecompute)
+			recompute();
+	}
+
+	/**
+	 * Copies the statistics of all axes into the snapshot, all taken at the same moment.
+	 */
+	public synchronized void snapshot(@NonNull final Snapshot target) {
+		target.count = count;
+		for (int axis = 0; axis < AXES; axis++) {
+			target.means[axis] = getMean(axis);
+			target.rms[axis] = getRms(axis);
+			target.deviations[axis] = getStandardDeviation(axis);
+			target.peaks[axis] = getPeak(axis);
+		}
+	}
+
+	/**
+	 * Removes all samples.
+	 */
+	public synchronized void reset() {
+		count = 0;
+		head = tail = nextRecompute = 0;
+		for (int axis = 0; axis < AXES; axis++) {
+			means[axis] = m2s[axis] = 0;
+			mins[axis] = maxs[axis] = 0;
+			minFirst[axis] = minLast[axis] = maxFirst[axis] = maxLast[axis] = 0;
+		}
+	}
+
+	/**
+	 * Returns the number of samples in the window.
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the mean of the axis, 0 to 2.
+	 */
+	public synchronized double getMean(final int axis) {
+		return means[axis];
+	}
+
+	/**
+	 * Returns the root mean square of the axis, 0 to 2.
+	 */
+	public synchronized double getRms(final int axis) {
+		if (count == 0)
+			return 0;
+		return Math.sqrt(m2s[axis] / count + means[axis] * means[axis]);
+	}
+
+	/**
+	 * Returns the sample variance of the axis, 0 to 2.
+	 */
+	public synchronized double getVariance(final int axis) {
+		return count > 1 ? m2s[axis] / (count - 1) : 0;
+	}
+
+	/**
+	 * Returns the sample standard deviation of the axis, 0 to 2.
+	 */
+	public synchronized double getStandardDeviation(final int axis) {
+		return Math.sqrt(getVariance(axis));
+	}
+
+	/**
+	 * Returns the lowest value of the axis, 0 to 2.
+	 */
+	public synchronized int getMin(final int axis) {
+		if (count == 0)
+			return 0;
+		if (windowNanos == WHOLE_SESSION)
+			return mins[axis];
+		return values[axis][(int) minDeques[axis][(int) minFirst[axis] & mask] & mask];
+	}
+
+	/**
+	 * Returns the highest value of the axis, 0 to 2.
+	 */
+	public synchronized int getMax(final int axis) {
+		if (count == 0)
+			return 0;
+		if (windowNanos == WHOLE_SESSION)
+			return maxs[axis];
+		return values[axis][(int) maxDeques[axis][(int) maxFirst[axis] & mask] & mask];
+	}
+
+	/**
+	 * Returns the peak of the axis, 0 to 2: the largest absolute value.
+	 */
+	public synchronized int getPeak(final int axis) {
+		return Math.max(Math.abs(getMin(axis)), Math.abs(getMax(axis)));
+	}
+
+	private void accumulate(final int axis, final int value) {
+		if (value < mins[axis]) mins[axis] = value;
+		if (value > maxs[axis]) maxs[axis] = value;
+		addWelford(axis, value);
+	}
+
+	/** Adds the value to the mean and variance, after count was incremented. */
+	private void addWelford(final int axis, final int value) {
+		final double delta = value - means[axis];
+		means[axis] += delta / count;
+		m2s[axis] += delta * (value - means[axis]);
+	}
+
+	/**
+	 * Takes the oldest sample out of the window.
+	 */
+	private void expire() {
+		final int index = (int) head & mask;
+		count--;
+		for (int axis = 0; axis < AXES; axis++) {
+			final int value = values[axis][index];
+			if (count == 0) {
+				means[axis] = m2s[axis] = 0;
+			} else {
+				final double delta = value - means[axis];
+				means[axis] -= delta / count;
+				// Rounding may leave a tiny negative sum where the samples are all equal
+				m2s[axis] = Math.max(0, m2s[axis] - delta * (value - means[axis]));
+			}
+			if (minDeques[axis][(int) minFirst[axis] & mask] == head)
+				minFirst[axis]++;
+			if (maxDeques[axis][(int) maxFirst[axis] & mask] == head)
+				maxFirst[axis]++;
+		}
+		head++;
+	}
+
+	/**
+	 * Recomputes the means and the sums of squared deviations from the samples in the window,
+	 * dropping the rounding errors accumulated by the updates.
+	 */
+	private void recompute() {
+		for (int axis = 0; axis < AXES; axis++) {
+			final int[] axisValues = values[axis];
+			long sum = 0;
+			for (long s = head; s < tail; s++)
+				sum += axisValues[(int) s & mask];
+			final double mean = count > 0 ? (double) sum / count : 0;
+			double m2 = 0;
+			for (long s = head; s < tail; s++) {
+				final double delta = axisValues[(int) s & mask] - mean;
+				m2 += delta * delta;
+			}
+			means[axis] = mean;
+			m2s[axis] = m2;
+		}
+		nextRecompute = tail;
+	}
+
+	/**
+	 * Allocates the buffers for the given number of samples, a power of 2, moving the samples
+	 * in the window over.
+	 */
+	private void allocate(final int capacity) {
+		final int newMask = capacity - 1;
+		final long[] newTimestamps = new long[capacity];
+		final int[][] newValues = new int[AXES][capacity];
+		final long[][] newMinDeques = new long[AXES][capacity];
+		final long[][] newMaxDeques = new long[AXES][capacity];
+		for (long s = head; s < tail; s++) {
+			final int from = (int) s & mask, to = (int) s & newMask;
+			newTimestamps[to] = timestamps[from];
+			for (int axis = 0; axis < AXES; axis++)
+				newValues[axis][to] = values[axis][from];
+		}
+		for (int axis = 0; axis < AXES; axis++) {
+			for (long p = minFirst[axis]; p < minLast[axis]; p++)
+				newMinDeques[axis][(int) p & newMask] = minDeques[axis][(int) p & mask];
+			for (long p = maxFirst[axis]; p < maxLast[axis]; p++)
+				newMaxDeques[axis][(int) p & newMask] = maxDeques[axis][(int) p & mask];
+		}
+		mask = newMask;
+		timestamps = newTimestamps;
+		values = newValues;
+		minDeques = newMinDeques;
+		maxDeques = newMaxDeques;
+	}
+}
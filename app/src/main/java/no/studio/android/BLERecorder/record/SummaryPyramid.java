@@ -0,0 +1,485 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Multi-resolution summary of a {@link RecordSession}, for showing a recording at any zoom
+ * without reading its samples.
+ * <p>
+ * Level 0 has a bucket for every {@link #BASE_SAMPLES} samples, and each following level merges
+ * two buckets of the level below, up to a level with a single bucket. A bucket holds the
+ * minimum, the maximum and the mean of each axis, in raw units. Gap markers are skipped, so the
+ * buckets follow the sample count, not the time.
+ * <p>
+ * The summary is saved next to the session, see {@link RecordSession#getSummaryFile()}.
+ * The {@link RecordWriter} builds level 0 with a {@link Writer} while recording and saves the
+ * summary when it stops, so a finished recording opens without reading its samples. A summary
+ * that is missing or out of date, because the size of the session changed, is rebuilt with
+ * a single pass over the session. The file is memory-mapped, and the buckets are read in tiles
+ * of {@link #TILE_BUCKETS}, of which the most recently used are kept decoded in a table indexed
+ * by level and tile, so panning and zooming read neither the recording nor, mostly, the summary
+ * file, and do not allocate.
+ * <p>
+ * All values are little endian. After a 56-byte header follow the levels, from level 0 up,
+ * each bucket with the minimum, maximum and mean of X, Y and Z as 16-bit integers:
+ * <pre>
+ * offset size
+ *   0     4   "BSUM"
+ *   4     2   version
+ *   6     2   bucket size, 18
+ *   8     4   samples per bucket of level 0
+ *  12     4   number of levels
+ *  16     8   number of samples
+ *  24     8   total size of the session parts the summary was built from
+ *  32     8   timestamp of the last sample, in nanoseconds
+ *  40     8   start time of the session, in milliseconds since epoch
+ *  48     4   scale factor of the raw values, float, in g per LSB
+ *  52     4   reserved
+ * </pre>
+ * Instances are not thread safe. The summary may be opened on a worker thread and then used on
+ * another one.
+ */
+public class SummaryPyramid {
+	static final byte[] MAGIC = { 'B', 'S', 'U', 'M' };
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 56;
+	/** Number of values in a bucket, the minimum, maximum and mean of each axis. */
+	private static final int VALUES = 9;
+	static final int BUCKET_SIZE = 2 * VALUES;
+	/** Number of samples in a bucket of level 0. */
+	public static final int BASE_SAMPLES = 8;
+	/** Number of buckets in a tile, the unit of reading and caching. */
+	public static final int TILE_BUCKETS = 1024;
+	/** Number of decoded tiles kept, 18 kB each. */
+	private static final int MAX_TILES = 64;
+
+	/**
+	 * Decoded buckets of a level.
+	 */
+	public static final class Tile {
+		private final short[] values = new short[TILE_BUCKETS * VALUES];
+		private int size;
+		/** The level and index of the tile in the table, and when it was last used. */
+		private int level, index;
+		private long lastUsed;
+
+		/** Returns the number of buckets in the tile. */
+		public int size() {
+			return size;
+		}
+
+		/** Returns the minimum of the axis, 0 to 2, in the given bucket of the tile. */
+		public int getMin(final int bucket, final int axis) {
+			return values[bucket * VALUES + axis * 3];
+		}
+
+		/** Returns the maximum of the axis, 0 to 2, in the given bucket of the tile. */
+		public int getMax(final int bucket, final int axis) {
+			return values[bucket * VALUES + axis * 3 + 1];
+		}
+
+		/** Returns the mean of the axis, 0 to 2, in the given bucket of the tile. */
+		public int getMean(final int bucket, final int axis) {
+			return values[bucket * VALUES + axis * 3 + 2];
+		}
+	}
+
+	private final MappedByteBuffer buffer;
+	private final int levels;
+	private final long samples;
+	private final long duration;
+	private final long startTime;
+	private final float scale;
+	private final long[] levelOffsets;
+	private final long[] bucketCounts;
+	/** The decoded tiles by level and tile index, null where not decoded. */
+	private final Tile[][] table;
+	/** The decoded tiles, up to {@link #MAX_TILES}, reused for the least recently used one. */
+	private final Tile[] decoded = new Tile[MAX_TILES];
+	private int decodedCount;
+	private long useCounter;
+
+	private SummaryPyramid(@NonNull final MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		levels = buffer.getInt(12);
+		samples = buffer.getLong(16);
+		duration = buffer.getLong(32);
+		startTime = buffer.getLong(40);
+		scale = buffer.getFloat(48);
+		levelOffsets = new long[levels];
+		bucketCounts = new long[levels];
+		long offset = HEADER_SIZE;
+		long count = getBucketCount(samples, BASE_SAMPLES);
+		for (int level = 0; level < levels; level++) {
+			levelOffsets[level] = offset;
+			bucketCounts[level] = count;
+			offset += count * BUCKET_SIZE;
+			count = (count + 1) / 2;
+		}
+		table = new Tile[levels][];
+		for (int level = 0; level < levels; level++)
+			table[level] = new Tile[(int) getBucketCount(bucketCounts[level], TILE_BUCKETS)];
+	}
+
+	/**
+	 * Opens the summary of the session, building it first if it does not exist or is out of date,
+	 * for example for a session recorded without it. Building reads the whole session, so this
+	 * should be called on a worker thread.
+	 *
+	 * @param session the session.
+	 * @return the summary.
+	 * @throws IOException when the session or the summary could not be read or written.
+	 */
+	@NonNull
+	public static SummaryPyramid open(@NonNull final RecordSession session) throws IOException {
+		final File file = session.getSummaryFile();
+		final long sourceLength = session.length();
+		if (file.exists()) {
+			final MappedByteBuffer buffer = map(file);
+			if (isValid(buffer, file.length(), sourceLength))
+				return new SummaryPyramid(buffer);
+		}
+		build(session, sourceLength, file);
+		final MappedByteBuffer buffer = map(file);
+		if (!isValid(buffer, file.length(), sourceLength))
+			throw new IOException("Invalid summary: " + file.getName());
+		return new SummaryPyramid(buffer);
+	}
+
+	/** Returns the number of samples of the recording, without the gap markers. */
+	public long getSampleCount() {
+		return samples;
+	}
+
+	/** Returns the timestamp of the last sample, in nanoseconds since the start of the session. */
+	public long getDuration() {
+		return duration;
+	}
+
+	/** Returns the start time of the session, in milliseconds since epoch. */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/** Returns the scale factor of the raw values, in g per LSB. */
+	public float getScale() {
+		return scale;
+	}
+
+	public int getLevelCount() {
+		return levels;
+	}
+
+	/** Returns the number of samples in a bucket of the level. */
+	public long getSamplesPerBucket(final int level) {
+		return (long) BASE_SAMPLES << level;
+	}
+
+	/** Returns the number of buckets of the level. */
+	public long getBucketCount(final int level) {
+		return bucketCounts[level];
+	}
+
+	/**
+	 * Returns the coarsest level with buckets no larger than the given number of samples, for
+	 * showing a bucket or more per pixel.
+	 */
+	public int getLevel(final double samplesPerPixel) {
+		int level = 0;
+		while (level + 1 < levels && getSamplesPerBucket(level + 1) <= samplesPerPixel)
+			level++;
+		return level;
+	}
+
+	/**
+	 * Returns the tile of the level with the given index, containing the buckets from
+	 * index * {@link #TILE_BUCKETS}. The tile may be reused after {@link #MAX_TILES} other
+	 * tiles were requested, and must not be kept.
+	 */
+	@NonNull
+	public Tile getTile(final int level, final long index) {
+		final Tile[] tiles = table[level];
+		Tile tile = tiles[(int) index];
+		if (tile == null) {
+			tile = evict();
+			tile.level = level;
+			tile.index = (int) index;
+			tiles[(int) index] = tile;
+			final long first = index * TILE_BUCKETS;
+			tile.size = (int) Math.max(0, Math.min(TILE_BUCKETS, bucketCounts[level] - first));
+			final int offset = (int) (levelOffsets[level] + first * BUCKET_SIZE);
+			final short[] values = tile.values;
+			for (int i = 0; i < tile.size * VALUES; i++)
+				values[i] = buffer.getShort(offset + 2 * i);
+		}
+		tile.lastUsed = ++useCounter;
+		return tile;
+	}
+
+	/**
+	 * Returns a tile to decode into: a new one until {@link #MAX_TILES} are decoded, then the
+	 * least recently used one, removed from the table.
+	 */
+	@NonNull
+	private Tile evict() {
+		if (decodedCount < MAX_TILES)
+			return decoded[decodedCount++] = new Tile();
+		Tile oldest = decoded[0];
+		for (int i = 1; i < MAX_TILES; i++) {
+			if (decoded[i].lastUsed < oldest.lastUsed)
+				oldest = decoded[i];
+		}
+		table[oldest.level][oldest.index] = null;
+		return oldest;
+	}
+
+	private static long getBucketCount(final long samples, final long samplesPerBucket) {
+		return (samples + samplesPerBucket - 1) / samplesPerBucket;
+	}
+
+	@NonNull
+	private static MappedByteBuffer map(@NonNull final File file) throws IOException {
+		try (RandomAccessFile input = new RandomAccessFile(file, "r");
+			 FileChannel channel = input.getChannel()) {
+			final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return buffer;
+		}
+	}
+
+	private static boolean isValid(@NonNull final MappedByteBuffer buffer, final long length, final long sourceLength) {
+		if (length < HEADER_SIZE)
+			return false;
+		for (int i = 0; i < MAGIC.length; i++) {
+			if (buffer.get(i) != MAGIC[i])
+				return false;
+		}
+		if ((buffer.getShort(4) & 0xFFFF) != VERSION || buffer.getShort(6) != BUCKET_SIZE
+				|| buffer.getInt(8) != BASE_SAMPLES || buffer.getLong(24) != sourceLength)
+			return false;
+		// The levels must all be there
+		long expected = HEADER_SIZE;
+		long count = getBucketCount(buffer.getLong(16), BASE_SAMPLES);
+		for (int level = 0; level < buffer.getInt(12); level++) {
+			expected += count * BUCKET_SIZE;
+			count = (count + 1) / 2;
+		}
+		return length == expected;
+	}
+
+	/**
+	 * Builds the summary with a pass over the session, and writes it to the file.
+	 */
+	private static void build(@NonNull final RecordSession session, final long sourceLength,
+							  @NonNull final File file) throws IOException {
+		final Writer writer = new Writer();
+		final long startTime;
+		final float scale;
+		try (RecordSessionReader reader = new RecordSessionReader(session)) {
+			startTime = reader.getStartTime();
+			scale = reader.getScale();
+			while (reader.next()) {
+				if (!reader.isGap())
+					writer.add(reader.getTimestamp(), reader.getX(), reader.getY(), reader.getZ());
+			}
+		}
+		writer.write(file, sourceLength, startTime, scale);
+	}
+
+	/**
+	 * Builds the summary from the samples as they are recorded. Level 0 is kept in memory,
+	 * 18 bytes per {@link #BASE_SAMPLES} samples, and the levels above it are only computed
+	 * when the summary is written. Adding a sample does not allocate, but when the level
+	 * outgrows its array, which doubles.
+	 * <p>
+	 * Instances are not thread safe.
+	 */
+	public static class Writer {
+		private short[] level0 = new short[TILE_BUCKETS * VALUES];
+		private int buckets;
+		private long samples;
+		private long duration;
+		private final int[] min = new int[3], max = new int[3];
+		private final long[] sum = new long[3];
+		private int count;
+
+		/**
+		 * Adds a sample. Gap markers are skipped.
+		 *
+		 * @param timestamp the time of the sample since the start of the recording, in nanoseconds.
+		 * @param x         the raw X value.
+		 * @param y         the raw Y value.
+		 * @param z         the raw Z value.
+		 */
+		public void add(final long timestamp, final int x, final int y, final int z) {
+			if (RecordFormat.isGap(x, y))
+				return;
+			duration = timestamp;
+			samples++;
+			// The values are recorded as 16-bit integers
+			final short sx = (short) x, sy = (short) y, sz = (short) z;
+			if (count == 0) {
+				min[0] = max[0] = sx;
+				min[1] = max[1] = sy;
+				min[2] = max[2] = sz;
+				sum[0] = sum[1] = sum[2] = 0;
+			}
+			accumulate(0, sx);
+			accumulate(1, sy);
+			accumulate(2, sz);
+			if (++count == BASE_SAMPLES)
+				closeBucket();
+		}
+
+		/**
+		 * Writes the summary of the session recorded so far. The writer must not be used after.
+		 *
+		 * @param session the session, which must be closed, so its size is final.
+		 * @throws IOException when the session header could not be read or the summary written.
+		 */
+		public void write(@NonNull final RecordSession session) throws IOException {
+			final long sourceLength = session.length();
+			final long startTime;
+			final float scale;
+			try (RecordSessionReader reader = new RecordSessionReader(session)) {
+				startTime = reader.getStartTime();
+				scale = reader.getScale();
+			}
+			write(session.getSummaryFile(), sourceLength, startTime, scale);
+		}
+
+		private void accumulate(final int axis, final int value) {
+			if (value < min[axis]) min[axis] = value;
+			if (value > max[axis]) max[axis] = value;
+			sum[axis] += value;
+		}
+
+		private void closeBucket() {
+			if ((buckets + 1) * VALUES > level0.length)
+				level0 = Arrays.copyOf(level0, level0.length * 2);
+			for (int axis = 0; axis < 3; axis++) {
+				final int i = buckets * VALUES + axis * 3;
+				level0[i] = (short) min[axis];
+				level0[i + 1] = (short) max[axis];
+				level0[i + 2] = (short) Math.round((double) sum[axis] / count);
+			}
+			buckets++;
+			count = 0;
+		}
+
+		/**
+		 * Computes the levels above level 0 and writes the summary to the file. The file is
+		 * written under a temporary name first, so a failed write leaves no summary behind.
+		 */
+		private void write(@NonNull final File file, final long sourceLength,
+						   final long startTime, final float scale) throws IOException {
+			if (count > 0)
+				closeBucket();
+
+			// Each level merges pairs of buckets of the level below
+			final List<short[]> levels = new ArrayList<>();
+			levels.add(level0);
+			long samplesPerBucket = BASE_SAMPLES;
+			for (int count = buckets; count > 1; count = (count + 1) / 2) {
+				final short[] below = levels.get(levels.size() - 1);
+				final int merged = (count + 1) / 2;
+				final short[] level = new short[merged * VALUES];
+				for (int b = 0; b < merged; b++) {
+					final int left = 2 * b, right = left + 1;
+					for (int axis = 0; axis < 3; axis++) {
+						final int o = axis * 3;
+						final int l = left * VALUES + o, t = b * VALUES + o;
+						if (right >= count) {
+							System.arraycopy(below, l, level, t, 3);
+							continue;
+						}
+						final int r = right * VALUES + o;
+						// The right bucket may be the last one, with fewer samples
+						final long rightSamples = Math.min(samplesPerBucket, samples - right * samplesPerBucket);
+						level[t] = (short) Math.min(below[l], below[r]);
+						level[t + 1] = (short) Math.max(below[l + 1], below[r + 1]);
+						level[t + 2] = (short) Math.round((below[l + 2] * (double) samplesPerBucket + below[r + 2] * (double) rightSamples)
+								/ (samplesPerBucket + rightSamples));
+					}
+				}
+				levels.add(level);
+				samplesPerBucket *= 2;
+			}
+
+			final File temp = new File(file.getPath() + ".tmp");
+			final byte[] bytes = new byte[Math.max(HEADER_SIZE, 64 * 1024)];
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(temp), 64 * 1024)) {
+				System.arraycopy(MAGIC, 0, bytes, 0, MAGIC.length);
+				BinaryRecordFormat.putInt16(bytes, 4, VERSION);
+				BinaryRecordFormat.putInt16(bytes, 6, BUCKET_SIZE);
+				BinaryRecordFormat.putInt32(bytes, 8, BASE_SAMPLES);
+				BinaryRecordFormat.putInt32(bytes, 12, levels.size());
+				BinaryRecordFormat.putInt64(bytes, 16, samples);
+				BinaryRecordFormat.putInt64(bytes, 24, sourceLength);
+				BinaryRecordFormat.putInt64(bytes, 32, duration);
+				BinaryRecordFormat.putInt64(bytes, 40, startTime);
+				BinaryRecordFormat.putInt32(bytes, 48, Float.floatToIntBits(scale));
+				BinaryRecordFormat.putInt32(bytes, 52, 0);
+				out.write(bytes, 0, HEADER_SIZE);
+				int levelBuckets = buckets;
+				for (final short[] level : levels) {
+					final int length = levelBuckets * VALUES;
+					int n = 0;
+					for (int i = 0; i < length; i++) {
+						BinaryRecordFormat.putInt16(bytes, n, level[i]);
+						n += 2;
+						if (n == bytes.length) {
+							out.write(bytes, 0, n);
+							n = 0;
+						}
+					}
+					out.write(bytes, 0, n);
+					levelBuckets = (levelBuckets + 1) / 2;
+				}
+			} catch (final IOException e) {
+				temp.delete();
+				throw e;
+			}
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Could not save the summary: " + file.getName());
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.utils;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Formats numbers into a reusable char buffer, to be shown with
+ * {@link android.widget.TextView#setText(char[], int, int)} without allocating a string on
+ * every update. The TextView keeps a reference to the buffer, so each view needs its own
+ * formatter, and the buffer may only be changed right before setting it again.
+ */
+public class CharFormatter {
+	private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+	private char[] buffer;
+	private int length;
+
+	public CharFormatter(final int capacity) {
+		buffer = new char[capacity];
+	}
+
+	/**
+	 * Empties the buffer.
+	 */
+	@NonNull
+	public CharFormatter clear() {
+		length = 0;
+		return this;
+	}
+
+	@NonNull
+	public CharFormatter append(final char c) {
+		ensureCapacity(1);
+		buffer[length++] = c;
+		return this;
+	}
+
+	@NonNull
+	public CharFormatter append(@NonNull final String text) {
+		final int count = text.length();
+		ensureCapacity(count);
+		text.getChars(0, count, buffer, length);
+		length += count;
+		return this;
+	}
+
+	/**
+	 * Appends the decimal digits of the value.
+	 */
+	@NonNull
+	public CharFormatter append(final long value) {
+		return appendPadded(value, 1);
+	}
+
+	/**
+	 * Appends the decimal digits of the value, with leading zeros up to the given number
+	 * of digits.
+	 */
+	@NonNull
+	public CharFormatter appendPadded(long value, final int digits) {
+		if (value < 0) {
+			append('-');
+			value = -value;
+		}
+		int count = 1;
+		for (long v = value / 10; v > 0; v /= 10)
+			count++;
+		count = Math.max(count, digits);
+		ensureCapacity(count);
+		for (int i = length + count - 1; i >= length; i--) {
+			buffer[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+		length += count;
+		return this;
+	}
+
+	/**
+	 * Appends a fixed-point number, given as an integer scaled by 10^decimals. For example,
+	 * -1234 with 3 decimals is appended as -1.234.
+	 */
+	@NonNull
+	public CharFormatter appendFixed(final long scaled, final int decimals) {
+		long divisor = 1;
+		for (int i = 0; i < decimals; i++)
+			divisor *= 10;
+		final long magnitude = Math.abs(scaled);
+		if (scaled < 0)
+			append('-');
+		append(magnitude / divisor);
+		if (decimals > 0) {
+			append('.');
+			appendPadded(magnitude % divisor, decimals);
+		}
+		return this;
+	}
+
+	/**
+	 * Appends the bytes in hexadecimal, separated by spaces.
+	 */
+	@NonNull
+	public CharFormatter appendHex(@NonNull final byte[] bytes, final int count) {
+		ensureCapacity(count * 3);
+		for (int i = 0; i < count; i++) {
+			if (i > 0)
+				buffer[length++] = ' ';
+			final int v = bytes[i] & 0xFF;
+			buffer[length++] = HEX[v >>> 4];
+			buffer[length++] = HEX[v & 0x0F];
+		}
+		return this;
+	}
+
+	/**
+	 * Returns the buffer. Only the first {@link #length()} chars are valid.
+	 */
+	@NonNull
+	public char[] getBuffer() {
+		return buffer;
+	}
+
+	public int length() {
+		return length;
+	}
+
+	private void ensureCapacity(final int count) {
+		if (length + count > buffer.length) {
+			final char[] larger = new char[Math.max(buffer.length * 2, length + count)];
+			System.arraycopy(buffer, 0, larger, 0, length);
+			buffer = larger;
+		}
+	}
+}
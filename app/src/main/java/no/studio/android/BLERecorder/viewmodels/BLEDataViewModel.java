@@ -27,14 +27,26 @@ import android.bluetooth.BluetoothDevice;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import java.io.File;
+import java.io.IOException;
 
 import no.nordicsemi.android.ble.ConnectRequest;
-import no.nordicsemi.android.ble.data.Data;
 import no.nordicsemi.android.ble.livedata.state.ConnectionState;
 import no.studio.android.BLERecorder.adapter.DiscoveredBluetoothDevice;
 import no.studio.android.BLERecorder.profile.BLEManager;
+import no.studio.android.BLERecorder.profile.LinkParameters;
+import no.studio.android.BLERecorder.profile.callback.AccelSample;
+import no.studio.android.BLERecorder.profile.callback.SequenceTracker;
+import no.studio.android.BLERecorder.record.CsvRecordFormat;
+import no.studio.android.BLERecorder.record.RecordExport;
+import no.studio.android.BLERecorder.record.RecordSession;
+import no.studio.android.BLERecorder.record.SampleRing;
+import no.studio.android.BLERecorder.record.SlidingStatistics;
 import no.nordicsemi.android.log.LogSession;
 import no.nordicsemi.android.log.Logger;
 
@@ -43,6 +55,32 @@ public class BLEDataViewModel extends AndroidViewModel {
 	private BluetoothDevice device;
 	@Nullable
 	private ConnectRequest connectRequest;
+	/** The export in progress, or null. It outlives the activity on configuration changes. */
+	@Nullable
+	private RecordExport export;
+	/** Progress of the export in progress, in percent, or null if none is running. */
+	private final MutableLiveData<Integer> exportProgress = new MutableLiveData<>();
+	private final SingleLiveEvent<ExportResult> exportResult = new SingleLiveEvent<>();
+
+	/**
+	 * The outcome of an export of a recording to CSV.
+	 */
+	public static class ExportResult {
+		/** The exported file. */
+		@NonNull
+		public final File file;
+		/** The error the export failed with, or null. */
+		@Nullable
+		public final IOException error;
+		/** Whether the export was cancelled. */
+		public final boolean cancelled;
+
+		ExportResult(@NonNull final File file, @Nullable final IOException error, final boolean cancelled) {
+			this.file = file;
+			this.error = error;
+			this.cancelled = cancelled;
+		}
+	}
 
 	public BLEDataViewModel(@NonNull final Application application) {
 		super(application);
@@ -54,8 +92,73 @@ public class BLEDataViewModel extends AndroidViewModel {
 	public LiveData<ConnectionState> getConnectionState() {
 		return BLEManager.state;
 	}
-	public final LiveData<Data> getAccelData(){ return BLEManager.getAccelData();}
-	public final LiveData<Byte> getBatteryState(){ return BLEManager.getBatteryState();}
+	public final LiveData<Integer> getBatteryLevel(){ return BLEManager.getBatteryLevel();}
+	public final LiveData<LinkParameters> getLinkParameters(){ return BLEManager.getLinkParameters();}
+
+	/**
+	 * Copies the latest sample received while recording into the given one.
+	 *
+	 * @return true if a sample was received since the previous call, false otherwise.
+	 */
+	public boolean takeLatestSample(@NonNull final AccelSample target) {
+		return BLEManager.takeLatestSample(target);
+	}
+
+	/**
+	 * Sets the callback run once, on the BLE callback thread, when the next sample arrives.
+	 *
+	 * @return true if the callback was set, false if a sample is already waiting.
+	 */
+	public boolean awaitLatestSample(@Nullable final Runnable waiter) {
+		return BLEManager.awaitLatestSample(waiter);
+	}
+
+	/**
+	 * Returns the number of accelerometer samples received on the current connection.
+	 */
+	public long getReceivedSamples() {
+		return BLEManager.getReceivedSamples();
+	}
+
+	/**
+	 * Returns the number of bytes of accelerometer notifications received on the current connection.
+	 */
+	public long getReceivedBytes() {
+		return BLEManager.getReceivedBytes();
+	}
+
+	/**
+	 * Returns the ring with the samples of the current recording session.
+	 */
+	@NonNull
+	public SampleRing getSamples() {
+		return BLEManager.getSamples();
+	}
+
+	/**
+	 * Returns the cursor the recording writer reads the samples with, or null if not recording.
+	 */
+	@Nullable
+	public SampleRing.Cursor getRecordCursor() {
+		return BLEManager.getRecordCursor();
+	}
+
+	/**
+	 * Returns the statistics of the sample values of the current recording session over the
+	 * window with the given index in {@link BLEManager#STATISTICS_WINDOWS_NS}.
+	 */
+	@NonNull
+	public SlidingStatistics getSampleStatistics(final int window) {
+		return BLEManager.getSampleStatistics(window);
+	}
+
+	/**
+	 * Returns the tracker with the lost frame counters of the current connection.
+	 */
+	@NonNull
+	public SequenceTracker getSequenceTracker() {
+		return BLEManager.getSequenceTracker();
+	}
 
 	/**
 	 * Connect to the given peripheral.
@@ -89,17 +192,86 @@ public class BLEDataViewModel extends AndroidViewModel {
 	}
 
 	/**
-	 * Disconnect from peripheral.
+	 * Disconnect from peripheral and release the manager.
 	 */
 	private void disconnect() {
 		device = null;
 		if (connectRequest != null) {
 			connectRequest.cancelPendingConnection();
+			BLEManager.close();
 		} else if (BLEManager.isConnected()) {
-			BLEManager.disconnect().enqueue();
+			// The callback thread is stopped once the device is disconnected
+			BLEManager.disconnect().then(d -> BLEManager.close()).enqueue();
+		} else {
+			BLEManager.close();
 		}
 	}
 
+	/**
+	 * Returns the progress of the export in progress, in percent, or null if none is running.
+	 */
+	public LiveData<Integer> getExportProgress() {
+		return exportProgress;
+	}
+
+	/**
+	 * Returns the event with the outcome of each export.
+	 */
+	public LiveData<ExportResult> getExportResult() {
+		return exportResult;
+	}
+
+	/**
+	 * Returns whether an export is running.
+	 */
+	public boolean isExporting() {
+		return export != null;
+	}
+
+	/**
+	 * Exports the recording session to CSV on a worker thread. The progress and the result are
+	 * published through {@link #getExportProgress()} and {@link #getExportResult()}.
+	 *
+	 * @param session   the recording session.
+	 * @param directory the directory to write the export to.
+	 */
+	public void exportRecording(@NonNull final RecordSession session, @NonNull final File directory) {
+		if (export != null)
+			return;
+		final RecordExport task = new RecordExport.Builder(session, new CsvRecordFormat()).build();
+		final File csvFile = new File(directory, task.getFileName());
+		export = task;
+		exportProgress.setValue(0);
+		new Thread(() -> {
+			IOException error = null;
+			try {
+				// A recording just stopped may still be writing its last blocks
+				BLEManager.awaitRecordingClosed();
+				task.writeTo(csvFile, exportProgress::postValue);
+			} catch (IOException e) {
+				error = e;
+			}
+			final ExportResult result = new ExportResult(csvFile, error, task.isCancelled());
+			ContextCompat.getMainExecutor(getApplication()).execute(() -> onExportFinished(task, result));
+		}, "RecordExport").start();
+	}
+
+	/**
+	 * Cancels the export in progress, if any.
+	 */
+	public void cancelExport() {
+		if (export != null)
+			export.cancel();
+	}
+
+	private void onExportFinished(@NonNull final RecordExport task, @NonNull final ExportResult result) {
+		if (export != task)
+			return;
+		export = null;
+		exportProgress.setValue(null);
+		exportResult.setValue(result);
+	}
+
 	/**
 	 * Sends a command to turn ON or OFF the record_switch on the nRF5 DK.
 	 *
@@ -112,6 +284,7 @@ public class BLEDataViewModel extends AndroidViewModel {
 	@Override
 	protected void onCleared() {
 		super.onCleared();
+		cancelExport();
 		disconnect();
 	}
 }
@@ -0,0 +1,301 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.widget;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Real-time chart of the three acceleration axes.
+ * <p>
+ * The samples are kept in a float ring buffer per axis. Each axis is drawn with a single
+ * {@link Canvas#drawLines(float[], int, int, Paint)} call from a points array that is reused
+ * by every axis and frame, so neither appending nor drawing allocates. When the window spans
+ * more samples than the chart has pixels, the samples are reduced by a {@link ChartDecimator}
+ * to a few points per pixel column, so a window of minutes costs about as much as one of a
+ * few hundred samples.
+ * <p>
+ * The chart follows the newest samples. When scaling is enabled, dragging pans back through
+ * the buffer, pinching zooms the time axis, and a double tap returns to the live view. The
+ * value axis fits the visible samples.
+ * <p>
+ * Samples are appended on the UI thread. The view does not redraw itself on each sample, the
+ * owner invalidates it once per frame after appending the batch.
+ */
+public class AccelChartView extends View {
+	/** Number of samples kept per axis, the oldest ones are overwritten. Over 10 minutes at 200 Hz. */
+	public static final int CAPACITY = 1 << 17;
+	/** Number of samples visible initially. */
+	private static final float DEFAULT_VISIBLE_SAMPLES = 400;
+	private static final float MIN_VISIBLE_SAMPLES = 10;
+	private static final int AXES = ChartFrame.AXES;
+
+	private final float[][] values = new float[AXES][CAPACITY];
+	/** Number of samples appended since the last clear, the newest one has the index count - 1. */
+	private long count;
+	private final ChartDecimator decimator = new ChartDecimator(values, CAPACITY);
+	/** Points of each axis reduced by the decimator, sized for the width of the chart. */
+	private float[][] decimated = new float[AXES][0];
+	private final int[] decimatedLengths = new int[AXES];
+	/** Line segments of one axis, 4 coordinates each, reused by every axis and frame. */
+	private float[] points = new float[0];
+
+	/** Width of the viewport, in samples. */
+	private float visibleSamples = DEFAULT_VISIBLE_SAMPLES;
+	/** Distance of the right edge of the viewport from the newest sample, 0 when following it. */
+	private float scrollOffset;
+	private boolean scalable;
+
+	private final ChartFrame frame;
+	private final RectF plot;
+	private final ScaleGestureDetector scaleDetector;
+	private final GestureDetector gestureDetector;
+
+	public AccelChartView(@NonNull final Context context) {
+		this(context, null);
+	}
+
+	public AccelChartView(@NonNull final Context context, @Nullable final AttributeSet attrs) {
+		super(context, attrs);
+		frame = new ChartFrame(context);
+		plot = frame.plot;
+
+		scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+			@Override
+			public boolean onScale(final ScaleGestureDetector detector) {
+				zoom(1 / detector.getScaleFactor(), detector.getFocusX());
+				return true;
+			}
+		});
+		gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+			@Override
+			public boolean onDown(final MotionEvent e) {
+				return scalable;
+			}
+
+			@Override
+			public boolean onScroll(final MotionEvent e1, final MotionEvent e2, final float distanceX, final float distanceY) {
+				if (scaleDetector.isInProgress() || Math.abs(distanceX) < Math.abs(distanceY))
+					return false;
+				// Keep the enclosing scroll view from taking over a horizontal drag
+				getParent().requestDisallowInterceptTouchEvent(true);
+				pan(-distanceX);
+				return true;
+			}
+
+			@Override
+			public boolean onDoubleTap(final MotionEvent e) {
+				visibleSamples = DEFAULT_VISIBLE_SAMPLES;
+				scrollOffset = 0;
+				invalidate();
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Enables panning and zooming by touch.
+	 */
+	public void setScalable(final boolean scalable) {
+		this.scalable = scalable;
+	}
+
+	/**
+	 * Sets how the samples are reduced when the window spans more samples than the chart has
+	 * pixels.
+	 */
+	public void setDecimation(@NonNull final ChartDecimator.Mode mode) {
+		decimator.setMode(mode);
+		invalidate();
+	}
+
+	/**
+	 * Sets the width of the viewport, in samples.
+	 */
+	public void setVisibleSamples(final float samples) {
+		visibleSamples = Math.max(MIN_VISIBLE_SAMPLES, Math.min(samples, CAPACITY));
+		invalidate();
+	}
+
+	/**
+	 * Appends a sample, in g. The view is not invalidated.
+	 */
+	public void append(final float x, final float y, final float z) {
+		final int index = (int) (count % CAPACITY);
+		values[0][index] = x;
+		values[1][index] = y;
+		values[2][index] = z;
+		count++;
+		// A panned viewport stays on the samples it shows
+		if (scrollOffset > 0)
+			scrollOffset = Math.min(scrollOffset + 1, getMaxScrollOffset());
+	}
+
+	/**
+	 * Removes all samples and returns to the live view.
+	 */
+	public void clear() {
+		count = 0;
+		scrollOffset = 0;
+		decimator.reset();
+		invalidate();
+	}
+
+	private int getAvailable() {
+		return (int) Math.min(count, CAPACITY);
+	}
+
+	private float getMaxScrollOffset() {
+		return Math.max(0, getAvailable() - 1 - visibleSamples);
+	}
+
+	private void pan(final float dx) {
+		if (plot.width() <= 0)
+			return;
+		scrollOffset = Math.max(0, Math.min(scrollOffset + dx * visibleSamples / plot.width(), getMaxScrollOffset()));
+		invalidate();
+	}
+
+	private void zoom(final float factor, final float focusX) {
+		if (plot.width() <= 0)
+			return;
+		final float visible = Math.max(MIN_VISIBLE_SAMPLES, Math.min(visibleSamples * factor, CAPACITY));
+		// The sample under the focus stays in place
+		final float fromRight = Math.max(0, Math.min((plot.right - focusX) / plot.width(), 1));
+		scrollOffset -= fromRight * (visible - visibleSamples);
+		visibleSamples = visible;
+		scrollOffset = Math.max(0, Math.min(scrollOffset, getMaxScrollOffset()));
+		invalidate();
+	}
+
+	@SuppressLint("ClickableViewAccessibility")
+	@Override
+	public boolean onTouchEvent(final MotionEvent event) {
+		if (!scalable)
+			return super.onTouchEvent(event);
+		scaleDetector.onTouchEvent(event);
+		gestureDetector.onTouchEvent(event);
+		return true;
+	}
+
+	@Override
+	protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+		frame.layout(this, w, h);
+		// A decimated window has at most a few columns more than the chart has pixels,
+		// and up to two points in each
+		final int columns = Math.max(0, (int) plot.width()) + 8;
+		decimated = new float[AXES][4 * columns];
+		points = new float[8 * columns];
+	}
+
+	@Override
+	protected void onDraw(final Canvas canvas) {
+		if (plot.width() <= 0 || plot.height() <= 0)
+			return;
+		final int available = getAvailable();
+		final double right = count - 1 - scrollOffset;
+		final double left = right - visibleSamples;
+		final long first = Math.max(count - available, (long) Math.floor(left));
+		final long last = Math.min(count - 1, (long) Math.ceil(right));
+
+		// Decimate once there is more than a sample per pixel
+		final int samplesPerColumn = (int) Math.ceil(visibleSamples / plot.width());
+		final boolean decimate = samplesPerColumn > 1 && last > first;
+		float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+		if (decimate) {
+			decimator.decimate(first, last, count, samplesPerColumn, decimated, decimatedLengths);
+			min = decimator.getMin();
+			max = decimator.getMax();
+		} else {
+			for (int axis = 0; axis < AXES; axis++) {
+				final float[] axisValues = values[axis];
+				for (long i = first; i <= last; i++) {
+					final float v = axisValues[(int) (i % CAPACITY)];
+					if (v < min) min = v;
+					if (v > max) max = v;
+				}
+			}
+		}
+		frame.drawGrid(canvas, min, max);
+		min = frame.getMin();
+
+		final double scaleX = plot.width() / visibleSamples;
+		final float scaleY = frame.getScaleY();
+		canvas.save();
+		canvas.clipRect(plot);
+		if (decimate) {
+			// The decimated points are relative to the first sample
+			final float left0 = (float) (plot.right - (right - first) * scaleX);
+			for (int axis = 0; axis < AXES; axis++) {
+				final float[] axisPoints = decimated[axis];
+				final int length = 2 * decimatedLengths[axis];
+				int n = 0;
+				float px = left0 + (float) (axisPoints[0] * scaleX);
+				float py = plot.bottom - (axisPoints[1] - min) * scaleY;
+				for (int i = 2; i < length; i += 2) {
+					final float x = left0 + (float) (axisPoints[i] * scaleX);
+					final float y = plot.bottom - (axisPoints[i + 1] - min) * scaleY;
+					points[n++] = px;
+					points[n++] = py;
+					points[n++] = x;
+					points[n++] = y;
+					px = x;
+					py = y;
+				}
+				canvas.drawLines(points, 0, n, frame.linePaints[axis]);
+			}
+		} else if (last > first) {
+			for (int axis = 0; axis < AXES; axis++) {
+				final float[] axisValues = values[axis];
+				int n = 0;
+				float px = (float) (plot.right - (right - first) * scaleX);
+				float py = plot.bottom - (axisValues[(int) (first % CAPACITY)] - min) * scaleY;
+				for (long i = first + 1; i <= last; i++) {
+					final float x = (float) (plot.right - (right - i) * scaleX);
+					final float y = plot.bottom - (axisValues[(int) (i % CAPACITY)] - min) * scaleY;
+					points[n++] = px;
+					points[n++] = py;
+					points[n++] = x;
+					points[n++] = y;
+					px = x;
+					py = y;
+				}
+				canvas.drawLines(points, 0, n, frame.linePaints[axis]);
+			}
+		}
+		canvas.restore();
+
+		frame.drawLegend(canvas);
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.widget;
+
+import androidx.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Reduces the samples of a chart to a few points per pixel column, so that the cost of drawing
+ * a window does not depend on how many samples it spans.
+ * <p>
+ * The samples are split into columns of a fixed number of samples, aligned to the sample
+ * index, so a column keeps its content while the window pans and while new samples arrive.
+ * The statistics of complete columns are cached, and on each frame only the columns that came
+ * into view and the newest one, which is still filling, are computed. Changing the number of
+ * samples per column, by zooming, starts the cache over.
+ * <p>
+ * Two modes are supported:
+ * <ul>
+ * <li>{@link Mode#MIN_MAX} keeps the lowest and the highest sample of each column, in the order
+ * they came, so no spike is lost however far the chart is zoomed out.</li>
+ * <li>{@link Mode#LTTB} keeps one sample per column, chosen with the Largest-Triangle-Three-Buckets
+ * algorithm, which follows the shape of the signal with half the points. The choice depends
+ * on the previous column, so it may differ slightly after panning over columns that were not
+ * cached.</li>
+ * </ul>
+ * The decimator reads the ring buffers of the chart and must be used on the same thread.
+ */
+public class ChartDecimator {
+	private static final long NONE = -1;
+
+	public enum Mode {
+		MIN_MAX,
+		LTTB
+	}
+
+	private final float[][] values;
+	private final int capacity;
+	private final int axes;
+	private Mode mode = Mode.MIN_MAX;
+	private int samplesPerColumn;
+
+	// Statistics of the columns, column c is in slot c & mask and valid if tags[slot] == c
+	private int mask = -1;
+	private long[] tags = new long[0];
+	private int[] counts;
+	private float[][] mins, maxs, sums;
+	private int[][] minAt, maxAt;
+	// Samples chosen by LTTB, valid if selectedTags[slot] == c
+	private long[] selectedTags;
+	private long[][] selected;
+	private final long[] anchorIndex;
+	private final float[] anchorValue;
+
+	private float min, max;
+
+	/**
+	 * @param values   the ring buffer of each axis, sample i is at index i % capacity.
+	 * @param capacity the length of the ring buffers.
+	 */
+	public ChartDecimator(@NonNull final float[][] values, final int capacity) {
+		this.values = values;
+		this.capacity = capacity;
+		this.axes = values.length;
+		this.anchorIndex = new long[axes];
+		this.anchorValue = new float[axes];
+	}
+
+	public void setMode(@NonNull final Mode mode) {
+		this.mode = mode;
+	}
+
+	@NonNull
+	public Mode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Forgets the cached columns. Must be called when the samples are cleared and their
+	 * indices start over.
+	 */
+	public void reset() {
+		Arrays.fill(tags, NONE);
+		if (selectedTags != null)
+			Arrays.fill(selectedTags, NONE);
+	}
+
+	/**
+	 * Returns the lowest value of the columns decimated last, over all axes.
+	 */
+	public float getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the highest value of the columns decimated last, over all axes.
+	 */
+	public float getMax() {
+		return max;
+	}
+
+	/**
+	 * Decimates the samples from first to last, inclusive, which must still be in the buffer.
+	 * The points of each axis are written to out[axis] as pairs of the sample index, relative
+	 * to first, and the value, and their number to lengths[axis]. Each array must hold 4 floats
+	 * per column.
+	 *
+	 * @param count            the number of samples appended to the buffer.
+	 * @param samplesPerColumn the number of samples in a column, at least 1.
+	 */
+	public void decimate(final long first, final long last, final long count, final int samplesPerColumn,
+						 @NonNull final float[][] out, @NonNull final int[] lengths) {
+		if (samplesPerColumn != this.samplesPerColumn) {
+			this.samplesPerColumn = samplesPerColumn;
+			reset();
+		}
+		final long firstColumn = first / samplesPerColumn;
+		final long lastColumn = last / samplesPerColumn;
+		// Room for the column before, the LTTB anchor, and the one after, for its average
+		ensureSlots((int) (lastColumn - firstColumn) + 3);
+
+		final long oldest = Math.max(0, count - capacity);
+		min = Float.MAX_VALUE;
+		max = -Float.MAX_VALUE;
+		for (long c = firstColumn; c <= lastColumn; c++) {
+			final int slot = column(c, oldest, count);
+			for (int axis = 0; axis < axes; axis++) {
+				if (mins[axis][slot] < min) min = mins[axis][slot];
+				if (maxs[axis][slot] > max) max = maxs[axis][slot];
+			}
+		}
+		if (mode == Mode.LTTB)
+			largestTriangles(first, firstColumn, lastColumn, oldest, count, out, lengths);
+		else
+			minMax(first, firstColumn, lastColumn, out, lengths);
+	}
+
+	private void minMax(final long first, final long firstColumn, final long lastColumn,
+						@NonNull final float[][] out, @NonNull final int[] lengths) {
+		for (int axis = 0; axis < axes; axis++) {
+			final float[] points = out[axis];
+			final float[] axisMins = mins[axis], axisMaxs = maxs[axis];
+			final int[] axisMinAt = minAt[axis], axisMaxAt = maxAt[axis];
+			int n = 0;
+			for (long c = firstColumn; c <= lastColumn; c++) {
+				final int slot = (int) c & mask;
+				final long start = c * samplesPerColumn - first;
+				final int lowAt = axisMinAt[slot], highAt = axisMaxAt[slot];
+				// The extremes in the order they came, once if they are the same sample
+				if (lowAt <= highAt) {
+					points[n++] = start + lowAt;
+					points[n++] = axisMins[slot];
+				}
+				if (lowAt != highAt) {
+					points[n++] = start + highAt;
+					points[n++] = axisMaxs[slot];
+				}
+				if (lowAt > highAt) {
+					points[n++] = start + lowAt;
+					points[n++] = axisMins[slot];
+				}
+			}
+			lengths[axis] = n / 2;
+		}
+	}
+
+	private void largestTriangles(final long first, final long firstColumn, final long lastColumn,
+								  final long oldest, final long count,
+								  @NonNull final float[][] out, @NonNull final int[] lengths) {
+		// The line starts from the sample chosen in the previous column, if it is known,
+		// otherwise from the first sample of the window
+		final long previous = firstColumn - 1;
+		final int previousSlot = (int) previous & mask;
+		final boolean chained = previous >= 0 && selectedTags[previousSlot] == previous
+				&& previous * samplesPerColumn >= oldest;
+		for (int axis = 0; axis < axes; axis++) {
+			final long index = chained ? selected[axis][previousSlot] : Math.max(firstColumn * samplesPerColumn, oldest);
+			anchorIndex[axis] = index;
+			anchorValue[axis] = values[axis][(int) (index % capacity)];
+			out[axis][0] = index - first;
+			out[axis][1] = anchorValue[axis];
+		}
+		int n = 2;
+		for (long c = firstColumn; c <= lastColumn; c++) {
+			final int slot = column(c, oldest, count);
+			final long next = c + 1;
+			if (next * samplesPerColumn >= count) {
+				// The newest column ends the line with the newest sample
+				for (int axis = 0; axis < axes; axis++) {
+					out[axis][n] = count - 1 - first;
+					out[axis][n + 1] = values[axis][(int) ((count - 1) % capacity)];
+				}
+				n += 2;
+				break;
+			}
+			if (selectedTags[slot] != c) {
+				final int nextSlot = column(next, oldest, count);
+				select(c, slot, nextSlot, oldest, count);
+				// The choice is final once both columns are complete
+				selectedTags[slot] = tags[slot] == c && tags[nextSlot] == next ? c : NONE;
+			}
+			for (int axis = 0; axis < axes; axis++) {
+				final long index = selected[axis][slot];
+				anchorIndex[axis] = index;
+				anchorValue[axis] = values[axis][(int) (index % capacity)];
+				out[axis][n] = index - first;
+				out[axis][n + 1] = anchorValue[axis];
+			}
+			n += 2;
+		}
+		for (int axis = 0; axis < axes; axis++)
+			lengths[axis] = n / 2;
+	}
+
+	/**
+	 * Chooses the sample of the column that makes the largest triangle with the anchor, the
+	 * sample chosen before, and the average of the next column.
+	 */
+	private void select(final long c, final int slot, final int nextSlot, final long oldest, final long count) {
+		final long start = c * samplesPerColumn;
+		final long from = Math.max(start, oldest);
+		final long to = Math.min(start + samplesPerColumn, count);
+		final int nextCount = counts[nextSlot];
+		final long nextStart = (c + 1) * samplesPerColumn;
+		for (int axis = 0; axis < axes; axis++) {
+			final float[] axisValues = values[axis];
+			final long a = anchorIndex[axis];
+			final float va = anchorValue[axis];
+			// The average of the next column, relative to the anchor
+			final double tc = nextStart + (nextCount - 1) / 2.0 - a;
+			final double vc = sums[axis][nextSlot] / nextCount - va;
+			double largest = -1;
+			long chosen = from;
+			for (long i = from; i < to; i++) {
+				final double tb = i - a;
+				final double vb = axisValues[(int) (i % capacity)] - va;
+				final double area = Math.abs(tc * vb - tb * vc);
+				if (area > largest) {
+					largest = area;
+					chosen = i;
+				}
+			}
+			selected[axis][slot] = chosen;
+		}
+	}
+
+	/**
+	 * Returns the slot with the statistics of the column, computing them unless they are
+	 * cached. Only complete columns are cached, the newest one is computed each time.
+	 */
+	private int column(final long c, final long oldest, final long count) {
+		final int slot = (int) c & mask;
+		final long start = c * samplesPerColumn;
+		if (tags[slot] == c && start >= oldest)
+			return slot;
+		final long from = Math.max(start, oldest);
+		final long to = Math.min(start + samplesPerColumn, count);
+		for (int axis = 0; axis < axes; axis++) {
+			final float[] axisValues = values[axis];
+			float low = Float.MAX_VALUE, high = -Float.MAX_VALUE, sum = 0;
+			long lowAt = from, highAt = from;
+			for (long i = from; i < to; i++) {
+				final float v = axisValues[(int) (i % capacity)];
+				sum += v;
+				if (v < low) {
+					low = v;
+					lowAt = i;
+				}
+				if (v > high) {
+					high = v;
+					highAt = i;
+				}
+			}
+			mins[axis][slot] = low;
+			maxs[axis][slot] = high;
+			minAt[axis][slot] = (int) (lowAt - start);
+			maxAt[axis][slot] = (int) (highAt - start);
+			sums[axis][slot] = sum;
+		}
+		counts[slot] = (int) (to - from);
+		tags[slot] = from == start && to == start + samplesPerColumn ? c : NONE;
+		selectedTags[slot] = NONE;
+		return slot;
+	}
+
+	private void ensureSlots(final int columns) {
+		if (mask + 1 >= columns)
+			return;
+		final int slots = Integer.highestOneBit(columns - 1) << 1;
+		mask = slots - 1;
+		tags = new long[slots];
+		selectedTags = new long[slots];
+		counts = new int[slots];
+		mins = new float[axes][slots];
+		maxs = new float[axes][slots];
+		sums = new float[axes][slots];
+		minAt = new int[axes][slots];
+		maxAt = new int[axes][slots];
+		selected = new long[axes][slots];
+		reset();
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.widget;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+
+import no.studio.android.BLERecorder.utils.CharFormatter;
+
+/**
+ * The plot area, the grid with the value labels and the legend of the acceleration charts.
+ * Drawing does not allocate.
+ */
+class ChartFrame {
+	static final int AXES = 3;
+	private static final int[] COLORS = { Color.RED, Color.GREEN, Color.BLUE };
+	private static final String[] TITLES = { "X-accel", "Y-accel", "Z-accel" };
+	/** The smallest span of the value axis, in g, so the noise of a still device is not magnified. */
+	private static final float MIN_VALUE_SPAN = 0.1f;
+	/** Number of horizontal grid lines, each with a label. */
+	private static final int VALUE_GRID_LINES = 5;
+	/** Number of vertical grid lines. */
+	private static final int TIME_GRID_LINES = 4;
+
+	/** The area the samples are drawn in, inside the labels and the legend. */
+	final RectF plot = new RectF();
+	/** The line of each axis. */
+	final Paint[] linePaints = new Paint[AXES];
+	final float density;
+	private final Paint gridPaint = new Paint();
+	private final Paint labelPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+	private final CharFormatter label = new CharFormatter(12);
+	private final float[] gridPoints = new float[4 * (VALUE_GRID_LINES + TIME_GRID_LINES)];
+	/** The value range of the last grid drawn, in g. */
+	private float min, max;
+
+	ChartFrame(@NonNull final Context context) {
+		density = context.getResources().getDisplayMetrics().density;
+		for (int axis = 0; axis < AXES; axis++) {
+			final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+			paint.setColor(COLORS[axis]);
+			paint.setStrokeWidth(1.5f * density);
+			linePaints[axis] = paint;
+		}
+		gridPaint.setColor(Color.LTGRAY);
+		gridPaint.setStrokeWidth(density);
+		labelPaint.setColor(Color.GRAY);
+		labelPaint.setTextSize(11 * context.getResources().getDisplayMetrics().scaledDensity);
+	}
+
+	/**
+	 * Returns a paint of the given axis with the given alpha, for areas drawn under the lines.
+	 */
+	@NonNull
+	Paint createFillPaint(final int axis, final int alpha) {
+		final Paint paint = new Paint(linePaints[axis]);
+		paint.setAlpha(alpha);
+		paint.setStrokeWidth(density);
+		return paint;
+	}
+
+	/**
+	 * Lays out the plot area in a view of the given size.
+	 */
+	void layout(@NonNull final View view, final int w, final int h) {
+		final float labelWidth = labelPaint.measureText("-00.00") + 8 * density;
+		final float legendHeight = labelPaint.getTextSize() + 8 * density;
+		plot.set(view.getPaddingLeft() + labelWidth, view.getPaddingTop() + legendHeight,
+				w - view.getPaddingRight() - 4 * density, h - view.getPaddingBottom() - 4 * density);
+	}
+
+	/**
+	 * Fits the value axis to the given range, in g, and draws the grid. An empty range,
+	 * with min above max, shows -1 to 1 g.
+	 */
+	void drawGrid(@NonNull final Canvas canvas, float min, float max) {
+		if (min > max) {
+			min = -1;
+			max = 1;
+		}
+		final float span = Math.max(max - min, MIN_VALUE_SPAN) * 1.1f;
+		final float center = (min + max) / 2;
+		this.min = min = center - span / 2;
+		this.max = max = center + span / 2;
+
+		int n = 0;
+		final float textOffset = (labelPaint.descent() + labelPaint.ascent()) / 2;
+		labelPaint.setTextAlign(Paint.Align.RIGHT);
+		for (int i = 0; i < VALUE_GRID_LINES; i++) {
+			final float y = plot.bottom - plot.height() * i / (VALUE_GRID_LINES - 1);
+			gridPoints[n++] = plot.left;
+			gridPoints[n++] = y;
+			gridPoints[n++] = plot.right;
+			gridPoints[n++] = y;
+			final float value = min + (max - min) * i / (VALUE_GRID_LINES - 1);
+			label.clear().appendFixed(Math.round(value * 100), 2);
+			canvas.drawText(label.getBuffer(), 0, label.length(), plot.left - 4 * density, y - textOffset, labelPaint);
+		}
+		for (int i = 0; i < TIME_GRID_LINES; i++) {
+			final float x = plot.left + plot.width() * i / (TIME_GRID_LINES - 1);
+			gridPoints[n++] = x;
+			gridPoints[n++] = plot.top;
+			gridPoints[n++] = x;
+			gridPoints[n++] = plot.bottom;
+		}
+		canvas.drawLines(gridPoints, 0, n, gridPaint);
+	}
+
+	/**
+	 * Returns the vertical position of the value, in g, on the grid drawn last.
+	 */
+	float toY(final float value) {
+		return plot.bottom - (value - min) * plot.height() / (max - min);
+	}
+
+	/**
+	 * Returns the number of pixels per g on the grid drawn last.
+	 */
+	float getScaleY() {
+		return plot.height() / (max - min);
+	}
+
+	float getMin() {
+		return min;
+	}
+
+	void drawLegend(@NonNull final Canvas canvas) {
+		final float lineLength = 16 * density;
+		final float gap = 4 * density;
+		final float baseline = plot.top - gap - labelPaint.descent();
+		final float lineY = baseline + (labelPaint.ascent() + labelPaint.descent()) / 2;
+		labelPaint.setTextAlign(Paint.Align.LEFT);
+		float x = plot.right;
+		for (int axis = AXES - 1; axis >= 0; axis--) {
+			x -= labelPaint.measureText(TITLES[axis]);
+			canvas.drawText(TITLES[axis], x, baseline, labelPaint);
+			x -= gap + lineLength;
+			canvas.drawLine(x, lineY, x + lineLength, lineY, linePaints[axis]);
+			x -= 3 * gap;
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.widget;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import no.studio.android.BLERecorder.record.SummaryPyramid;
+
+/**
+ * Chart of a finished recording, drawn from its {@link SummaryPyramid}.
+ * <p>
+ * For each frame the coarsest level with at least a bucket per pixel is chosen, so the number
+ * of buckets drawn depends on the width of the chart, not on the length of the window. Each
+ * axis is drawn as the band between the minimum and the maximum of each bucket, under the line
+ * of the means.
+ * <p>
+ * The whole recording is shown initially. Dragging pans, pinching zooms the time axis, and a
+ * double tap shows the whole recording again. The value axis fits the visible buckets.
+ */
+public class SummaryChartView extends View {
+	/** The fewest samples the window can be zoomed to. */
+	private static final double MIN_VISIBLE_SAMPLES = 8 * SummaryPyramid.BASE_SAMPLES;
+	private static final int AXES = ChartFrame.AXES;
+	/** Alpha of the band between the minimum and the maximum. */
+	private static final int BAND_ALPHA = 0x50;
+
+	/**
+	 * Notified when the visible part of the recording changed.
+	 */
+	public interface OnViewportChangeListener {
+		/**
+		 * @param firstSample      the first visible sample.
+		 * @param lastSample       the last visible sample.
+		 * @param samplesPerBucket the number of samples summarized by each bucket drawn.
+		 */
+		void onViewportChanged(long firstSample, long lastSample, long samplesPerBucket);
+	}
+
+	@Nullable
+	private SummaryPyramid pyramid;
+	@Nullable
+	private OnViewportChangeListener listener;
+	/** The first visible sample, fractional while panning. */
+	private double start;
+	/** Width of the window, in samples. */
+	private double visibleSamples;
+
+	private final ChartFrame frame;
+	private final RectF plot;
+	private final Paint[] bandPaints = new Paint[AXES];
+	/** The bands of one axis, one vertical segment per bucket. */
+	private float[] bands = new float[0];
+	/** The line of the means of one axis. */
+	private float[] means = new float[0];
+	private final ScaleGestureDetector scaleDetector;
+	private final GestureDetector gestureDetector;
+
+	public SummaryChartView(@NonNull final Context context) {
+		this(context, null);
+	}
+
+	public SummaryChartView(@NonNull final Context context, @Nullable final AttributeSet attrs) {
+		super(context, attrs);
+		frame = new ChartFrame(context);
+		plot = frame.plot;
+		for (int axis = 0; axis < AXES; axis++)
+			bandPaints[axis] = frame.createFillPaint(axis, BAND_ALPHA);
+
+		scaleDetector = new ScaleGestureDetector(context, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+			@Override
+			public boolean onScale(final ScaleGestureDetector detector) {
+				zoom(1 / detector.getScaleFactor(), detector.getFocusX());
+				return true;
+			}
+		});
+		gestureDetector = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+			@Override
+			public boolean onDown(final MotionEvent e) {
+				return pyramid != null;
+			}
+
+			@Override
+			public boolean onScroll(final MotionEvent e1, final MotionEvent e2, final float distanceX, final float distanceY) {
+				if (scaleDetector.isInProgress())
+					return false;
+				pan(distanceX);
+				return true;
+			}
+
+			@Override
+			public boolean onDoubleTap(final MotionEvent e) {
+				showAll();
+				return true;
+			}
+		});
+	}
+
+	/**
+	 * Shows the recording summarized by the pyramid, whole.
+	 */
+	public void setPyramid(@Nullable final SummaryPyramid pyramid) {
+		this.pyramid = pyramid;
+		showAll();
+	}
+
+	public void setOnViewportChangeListener(@Nullable final OnViewportChangeListener listener) {
+		this.listener = listener;
+		notifyViewportChanged();
+	}
+
+	private long getSampleCount() {
+		return pyramid != null ? pyramid.getSampleCount() : 0;
+	}
+
+	private void showAll() {
+		start = 0;
+		visibleSamples = Math.max(getSampleCount(), MIN_VISIBLE_SAMPLES);
+		notifyViewportChanged();
+		invalidate();
+	}
+
+	private void pan(final float dx) {
+		if (plot.width() <= 0)
+			return;
+		start += dx * visibleSamples / plot.width();
+		clampViewport();
+	}
+
+	private void zoom(final float factor, final float focusX) {
+		if (plot.width() <= 0)
+			return;
+		final double visible = Math.max(MIN_VISIBLE_SAMPLES,
+				Math.min(visibleSamples * factor, Math.max(getSampleCount(), MIN_VISIBLE_SAMPLES)));
+		// The sample under the focus stays in place
+		final double fromLeft = Math.max(0, Math.min((focusX - plot.left) / plot.width(), 1));
+		start += fromLeft * (visibleSamples - visible);
+		visibleSamples = visible;
+		clampViewport();
+	}
+
+	private void clampViewport() {
+		start = Math.max(0, Math.min(start, getSampleCount() - visibleSamples));
+		notifyViewportChanged();
+		invalidate();
+	}
+
+	private int getLevel() {
+		return pyramid.getLevel(visibleSamples / Math.max(1, plot.width()));
+	}
+
+	private void notifyViewportChanged() {
+		if (listener == null || pyramid == null || plot.width() <= 0)
+			return;
+		final long first = (long) start;
+		final long last = Math.max(first, Math.min(getSampleCount(), (long) Math.ceil(start + visibleSamples)) - 1);
+		listener.onViewportChanged(first, last, pyramid.getSamplesPerBucket(getLevel()));
+	}
+
+	@SuppressLint("ClickableViewAccessibility")
+	@Override
+	public boolean onTouchEvent(final MotionEvent event) {
+		scaleDetector.onTouchEvent(event);
+		gestureDetector.onTouchEvent(event);
+		return true;
+	}
+
+	@Override
+	protected void onSizeChanged(final int w, final int h, final int oldw, final int oldh) {
+		frame.layout(this, w, h);
+		// The level is chosen so that a pixel has at most two buckets, and a few more are
+		// partly visible at the edges
+		final int buckets = 2 * Math.max(0, (int) plot.width()) + 8;
+		bands = new float[4 * buckets];
+		means = new float[4 * buckets];
+		notifyViewportChanged();
+	}
+
+	@Override
+	protected void onDraw(final Canvas canvas) {
+		final SummaryPyramid pyramid = this.pyramid;
+		if (pyramid == null || pyramid.getSampleCount() == 0 || plot.width() <= 0 || plot.height() <= 0) {
+			frame.drawGrid(canvas, 1, -1);
+			frame.drawLegend(canvas);
+			return;
+		}
+		final int level = getLevel();
+		final long perBucket = pyramid.getSamplesPerBucket(level);
+		final long firstBucket = Math.max(0, (long) (start / perBucket));
+		final long lastBucket = Math.min(pyramid.getBucketCount(level) - 1, (long) ((start + visibleSamples) / perBucket));
+
+		int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+		SummaryPyramid.Tile tile = null;
+		for (long b = firstBucket; b <= lastBucket; b++) {
+			final int i = (int) (b % SummaryPyramid.TILE_BUCKETS);
+			if (tile == null || i == 0)
+				tile = pyramid.getTile(level, b / SummaryPyramid.TILE_BUCKETS);
+			for (int axis = 0; axis < AXES; axis++) {
+				min = Math.min(min, tile.getMin(i, axis));
+				max = Math.max(max, tile.getMax(i, axis));
+			}
+		}
+		final float scale = pyramid.getScale();
+		frame.drawGrid(canvas, min * scale, max * scale);
+
+		final double pixelsPerSample = plot.width() / visibleSamples;
+		canvas.save();
+		canvas.clipRect(plot);
+		for (int axis = 0; axis < AXES; axis++) {
+			int nb = 0, nm = 0;
+			float px = 0, py = 0;
+			tile = null;
+			for (long b = firstBucket; b <= lastBucket; b++) {
+				final int i = (int) (b % SummaryPyramid.TILE_BUCKETS);
+				if (tile == null || i == 0)
+					tile = pyramid.getTile(level, b / SummaryPyramid.TILE_BUCKETS);
+				final float x = (float) (plot.left + ((b + 0.5) * perBucket - start) * pixelsPerSample);
+				bands[nb++] = x;
+				bands[nb++] = frame.toY(tile.getMin(i, axis) * scale);
+				bands[nb++] = x;
+				bands[nb++] = frame.toY(tile.getMax(i, axis) * scale);
+				final float y = frame.toY(tile.getMean(i, axis) * scale);
+				if (b > firstBucket) {
+					means[nm++] = px;
+					means[nm++] = py;
+					means[nm++] = x;
+					means[nm++] = y;
+				}
+				px = x;
+				py = y;
+			}
+			canvas.drawLines(bands, 0, nb, bandPaints[axis]);
+			canvas.drawLines(means, 0, nm, frame.linePaints[axis]);
+		}
+		canvas.restore();
+
+		frame.drawLegend(canvas);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.callback;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class AccelFramerTest {
+    private static final int FRAME_COUNT = 5000;
+
+    @Test
+    public void append_recoversFramesFromFragmentedStreamWithGarbage() {
+        final Random random = new Random(42);
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        final List<byte[]> frames = new ArrayList<>();
+        long garbageBytes = 0;
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            // Garbage between some frames, without the first sync byte so it can't start a frame
+            if (random.nextInt(4) == 0) {
+                final int length = 1 + random.nextInt(20);
+                for (int j = 0; j < length; j++) {
+                    int b;
+                    do {
+                        b = random.nextInt(256);
+                    } while (b == (AccelFramer.SYNC_0 & 0xFF));
+                    stream.write(b);
+                }
+                garbageBytes += length;
+            }
+            final byte[] frame = createFrame(random, i, 1 + random.nextInt(AccelFrame.MAX_SAMPLES));
+            frames.add(frame);
+            stream.write(frame, 0, frame.length);
+        }
+        final byte[] bytes = stream.toByteArray();
+
+        final AccelFramer framer = new AccelFramer();
+        final List<byte[]> received = new ArrayList<>();
+        final AccelFramer.Listener listener = (frame, offset, length) ->
+                received.add(Arrays.copyOfRange(frame, offset, offset + length));
+        // Notifications of random sizes, unrelated to the frame boundaries
+        for (int offset = 0; offset < bytes.length; ) {
+            final int length = Math.min(1 + random.nextInt(244), bytes.length - offset);
+            framer.append(bytes, offset, length, listener);
+            offset += length;
+        }
+
+        assertEquals(frames.size(), received.size());
+        for (int i = 0; i < frames.size(); i++)
+            assertArrayEquals(frames.get(i), received.get(i));
+        assertEquals(FRAME_COUNT, framer.getFrameCount());
+        assertEquals(garbageBytes, framer.getDroppedBytes());
+        assertEquals(0, framer.getPendingBytes());
+    }
+
+    @Test
+    public void append_dropsFrameWithFailedCheckAndResynchronises() {
+        final Random random = new Random(7);
+        final byte[] corrupted = createFrame(random, 0, 1);
+        corrupted[AccelFrame.X_OFFSET] ^= 0x01;
+        final byte[] valid = createFrame(random, 1, 1);
+        final byte[] bytes = new byte[corrupted.length + valid.length];
+        System.arraycopy(corrupted, 0, bytes, 0, corrupted.length);
+        System.arraycopy(valid, 0, bytes, corrupted.length, valid.length);
+
+        final AccelFramer framer = new AccelFramer();
+        final List<byte[]> received = new ArrayList<>();
+        framer.append(bytes, 0, bytes.length, (frame, offset, length) ->
+                received.add(Arrays.copyOfRange(frame, offset, offset + length)));
+
+        assertEquals(1, received.size());
+        assertArrayEquals(valid, received.get(0));
+        assertEquals(1, framer.getCheckErrors());
+        assertEquals(corrupted.length, framer.getDroppedBytes());
+    }
+
+    @Test
+    public void append_waitsForTheRestOfASplitFrame() {
+        final byte[] frame = createFrame(new Random(1), 0, 2);
+        final AccelFramer framer = new AccelFramer();
+        final int[] count = new int[1];
+        final AccelFramer.Listener listener = (f, offset, length) -> count[0]++;
+
+        for (int i = 0; i < frame.length - 1; i++)
+            assertEquals(0, framer.append(frame, i, 1, listener));
+        assertEquals(frame.length - 1, framer.getPendingBytes());
+        assertEquals(1, framer.append(frame, frame.length - 1, 1, listener));
+        assertEquals(1, count[0]);
+        assertEquals(0, framer.getDroppedBytes());
+    }
+
+    /**
+     * Creates a frame with valid checks and random sample values.
+     */
+    private static byte[] createFrame(final Random random, final int sequence, final int samples) {
+        final int payloadLength = samples * AccelFrame.SAMPLE_SIZE;
+        final int end = AccelFrame.HEADER_SIZE + payloadLength;
+        final byte[] frame = new byte[end + AccelFrame.CHECK_SIZE];
+        frame[0] = AccelFramer.SYNC_0;
+        frame[1] = AccelFramer.SYNC_1;
+        frame[AccelFrame.SEQUENCE_OFFSET] = (byte) sequence;
+        frame[AccelFrame.LENGTH_OFFSET] = (byte) payloadLength;
+        for (int i = AccelFrame.HEADER_SIZE; i < end; i++)
+            frame[i] = (byte) random.nextInt(256);
+        byte sumCheck = 0, addCheck = 0;
+        for (int i = 0; i < end; i++) {
+            sumCheck += frame[i];
+            addCheck += sumCheck;
+        }
+        frame[end] = sumCheck;
+        frame[end + 1] = addCheck;
+        return frame;
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.profile.callback;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SequenceTrackerTest {
+    /** Interval between the frames sent by the test peripheral, in nanoseconds. */
+    private static final long INTERVAL = 10_000_000L;
+
+    @Test
+    public void onFrame_armsOnConsecutiveCounters() {
+        final SequenceTracker tracker = new SequenceTracker();
+        // Older peripherals send a constant F1
+        assertEquals(0, tracker.onFrame(0xF1, 0));
+        assertEquals(0, tracker.onFrame(0xF1, INTERVAL));
+        assertFalse(tracker.isArmed());
+        assertEquals(0, tracker.onFrame(0xF2, 2 * INTERVAL));
+        assertTrue(tracker.isArmed());
+        assertEquals(0, tracker.getLost());
+    }
+
+    @Test
+    public void onFrame_countsLostDuplicateAndLateFrames() {
+        final SequenceTracker tracker = new SequenceTracker();
+        assertEquals(0, tracker.onFrame(254, 0));
+        assertEquals(0, tracker.onFrame(255, INTERVAL));
+        // 0 and 1 lost across the wrap-around
+        assertEquals(2, tracker.onFrame(2, 4 * INTERVAL));
+        assertEquals(SequenceTracker.DUPLICATE, tracker.onFrame(2, 4 * INTERVAL));
+        // 1 arrives late
+        assertEquals(0, tracker.onFrame(1, 4 * INTERVAL));
+        assertEquals(0, tracker.onFrame(3, 5 * INTERVAL));
+        assertEquals(1, tracker.getLost());
+        assertEquals(1, tracker.getReordered());
+        assertEquals(1, tracker.getDuplicates());
+        assertEquals(5, tracker.getReceived());
+    }
+
+    @Test
+    public void onFrame_dropsFrameBehindWithNoGapPending() {
+        final SequenceTracker tracker = new SequenceTracker();
+        int sequence = 0;
+        for (; sequence < 100; sequence++)
+            assertEquals(0, tracker.onFrame(sequence & 0xFF, sequence * INTERVAL));
+        // A stray copy of an older frame is not a late frame to take back from the lost ones
+        assertEquals(SequenceTracker.DUPLICATE, tracker.onFrame(90, sequence * INTERVAL));
+        assertEquals(0, tracker.onFrame(sequence & 0xFF, sequence * INTERVAL));
+        assertEquals(0, tracker.getLost());
+        assertEquals(0, tracker.getReordered());
+    }
+
+    @Test
+    public void onFrame_countsForwardGapOfHalfTheRangeOrMore() {
+        final SequenceTracker tracker = new SequenceTracker();
+        int sequence = 0;
+        for (; sequence < 100; sequence++)
+            assertEquals(0, tracker.onFrame(sequence & 0xFF, sequence * INTERVAL));
+        // 200 frames lost: the counter looks 56 behind, but the time says the frames were sent
+        sequence += 200;
+        assertEquals(200, tracker.onFrame(sequence & 0xFF, sequence * INTERVAL));
+        assertEquals(200, tracker.getLost());
+        assertEquals(0, tracker.getReordered());
+        sequence++;
+        assertEquals(0, tracker.onFrame(sequence & 0xFF, sequence * INTERVAL));
+        assertEquals(200, tracker.getLost());
+    }
+
+    @Test
+    public void onFrame_countsForwardGapBeforeIntervalIsKnown() {
+        final SequenceTracker tracker = new SequenceTracker();
+        assertEquals(0, tracker.onFrame(0, 0));
+        assertEquals(0, tracker.onFrame(1, INTERVAL));
+        // No frames pending, so it cannot be a late one
+        assertEquals(199, tracker.onFrame(201, 201 * INTERVAL));
+        assertEquals(199, tracker.getLost());
+        assertEquals(0, tracker.getReordered());
+    }
+}
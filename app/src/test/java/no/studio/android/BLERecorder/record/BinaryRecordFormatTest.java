@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryRecordFormatTest {
+	private static final String ADDRESS = "C0:FF:EE:12:34:56";
+	private static final long START_TIME = 1_600_000_000_123L;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void write_readsBackHeaderSamplesAndGaps() throws IOException {
+		for (final boolean compressed : new boolean[] { false, true }) {
+			final File file = folder.newFile("recording" + compressed + BinaryRecordFormat.EXTENSION);
+			final RecordWriter writer = new RecordWriter.Builder(file,
+					new BinaryRecordFormat(ADDRESS, START_TIME, 0.00025f))
+					.setCompressed(compressed)
+					.setQueueCapacity(20_000)
+					.build();
+			final long[] timestamps = new long[10_000];
+			final int[][] values = new int[3][timestamps.length];
+			final Random random = new Random(2);
+			long timestamp = 0;
+			for (int i = 0; i < timestamps.length; i++) {
+				timestamp += random.nextInt(20_000_000);
+				timestamps[i] = timestamp;
+				if (i % 1000 == 999) {
+					values[0][i] = values[1][i] = RecordFormat.GAP_MARKER;
+					values[2][i] = 1 + random.nextInt(100);
+					assertTrue(writer.writeGap(timestamp, values[2][i]));
+					continue;
+				}
+				for (int axis = 0; axis < 3; axis++) {
+					// The extremes of the int16 range, except both X and Y at the minimum
+					values[axis][i] = i % 7 == 0 ? (axis == 0 ? Short.MAX_VALUE : Short.MIN_VALUE)
+							: random.nextInt(65536) + Short.MIN_VALUE;
+				}
+				if (RecordFormat.isGap(values[0][i], values[1][i]))
+					values[1][i] = 0;
+				assertTrue(writer.write(timestamp, values[0][i], values[1][i], values[2][i]));
+			}
+			writer.close();
+			assertEquals(null, writer.getError());
+
+			try (RecordReader reader = new RecordReader(file)) {
+				assertEquals(BinaryRecordFormat.VERSION, reader.getVersion());
+				assertEquals(START_TIME, reader.getStartTime());
+				assertEquals(0.00025f, reader.getScale(), 0);
+				assertEquals(ADDRESS, reader.getDeviceAddress());
+				assertFalse(reader.isRecovered());
+				for (int i = 0; i < timestamps.length; i++) {
+					assertTrue(reader.next());
+					assertEquals(timestamps[i], reader.getTimestamp());
+					assertEquals(values[0][i], reader.getX());
+					assertEquals(values[1][i], reader.getY());
+					assertEquals(values[2][i], reader.getZ());
+					assertEquals(i % 1000 == 999, reader.isGap());
+				}
+				assertFalse(reader.next());
+				assertFalse(reader.isCorrupted());
+			}
+		}
+	}
+
+	@Test
+	public void read_acceptsVersion1Recording() throws IOException {
+		final byte[] address = ADDRESS.getBytes(StandardCharsets.US_ASCII);
+		final byte[] header = new byte[BinaryRecordFormat.HEADER_FIXED_SIZE_V1 + address.length];
+		System.arraycopy(BinaryRecordFormat.MAGIC, 0, header, 0, BinaryRecordFormat.MAGIC.length);
+		BinaryRecordFormat.putInt16(header, 4, 1);
+		BinaryRecordFormat.putInt16(header, 6, header.length);
+		BinaryRecordFormat.putInt64(header, 8, START_TIME);
+		BinaryRecordFormat.putInt32(header, 16, Float.floatToIntBits(BinaryRecordFormat.DEFAULT_SCALE));
+		header[20] = (byte) address.length;
+		System.arraycopy(address, 0, header, 21, address.length);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(header);
+		final byte[] record = new byte[BinaryRecordFormat.RECORD_SIZE];
+		for (int i = 0; i < 100; i++) {
+			BinaryRecordFormat.putInt64(record, 0, i * 7_500_000L);
+			BinaryRecordFormat.putInt16(record, 8, -i);
+			BinaryRecordFormat.putInt16(record, 10, i);
+			BinaryRecordFormat.putInt16(record, 12, 1000 + i);
+			out.write(record);
+		}
+		// A record torn by the end of the file is ignored
+		out.write(record, 0, 5);
+		final File file = folder.newFile("v1" + BinaryRecordFormat.EXTENSION);
+		Files.write(file.toPath(), out.toByteArray());
+
+		try (RecordReader reader = new RecordReader(file)) {
+			assertEquals(1, reader.getVersion());
+			assertEquals(START_TIME, reader.getStartTime());
+			assertEquals(BinaryRecordFormat.DEFAULT_SCALE, reader.getScale(), 0);
+			assertEquals(ADDRESS, reader.getDeviceAddress());
+			for (int i = 0; i < 100; i++) {
+				assertTrue(reader.next());
+				assertEquals(i * 7_500_000L, reader.getTimestamp());
+				assertEquals(-i, reader.getX());
+				assertEquals(i, reader.getY());
+				assertEquals(1000 + i, reader.getZ());
+			}
+			assertFalse(reader.next());
+		}
+	}
+}
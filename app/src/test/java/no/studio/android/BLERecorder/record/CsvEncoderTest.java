@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class CsvEncoderTest {
+
+	@Test
+	public void encodeMilli_matchesFormatterForEveryInt16() {
+		final byte[] buffer = new byte[CsvEncoder.MAX_INT16_LENGTH];
+		for (int value = Short.MIN_VALUE; value <= Short.MAX_VALUE; value++) {
+			final int length = CsvEncoder.encodeMilli(buffer, 0, value);
+			final String expected = String.format(Locale.US, "%.3f,", value / 1000.0f);
+			assertEquals(expected, new String(buffer, 0, length, StandardCharsets.US_ASCII));
+		}
+	}
+
+	@Test
+	public void encodeSeconds_truncatesToMicroseconds() {
+		final byte[] buffer = new byte[CsvEncoder.MAX_TIMESTAMP_LENGTH];
+		assertEquals("0.000000,", encodeSeconds(buffer, 0));
+		assertEquals("0.000001,", encodeSeconds(buffer, 1_999));
+		assertEquals("12.345678,", encodeSeconds(buffer, 12_345_678_901L));
+		assertEquals("-1.500000,", encodeSeconds(buffer, -1_500_000_000L));
+		assertEquals("9223372036.854775,", encodeSeconds(buffer, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void encodeInteger_writesDecimalDigits() {
+		final byte[] buffer = new byte[20];
+		final long[] values = { 0, 7, 10, 99, 1000, 123_456_789L, Long.MAX_VALUE };
+		for (final long value : values) {
+			final int length = CsvEncoder.encodeInteger(buffer, 0, value);
+			assertEquals(Long.toString(value), new String(buffer, 0, length, StandardCharsets.US_ASCII));
+		}
+	}
+
+	private static String encodeSeconds(final byte[] buffer, final long nanos) {
+		final int length = CsvEncoder.encodeSeconds(buffer, 0, nanos);
+		return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DeltaBlockCodecTest {
+	private final DeltaBlockCodec codec = new DeltaBlockCodec();
+
+	@Test
+	public void decode_returnsSmoothSamples() throws IOException {
+		final Random random = new Random(1);
+		final int count = RecordJournal.MAX_BLOCK_SAMPLES;
+		final byte[] records = new byte[count * BinaryRecordFormat.RECORD_SIZE];
+		long time = 123_456_789L;
+		for (int i = 0; i < count; i++) {
+			time += 7_500_000L + random.nextInt(2_000) - 1_000;
+			putRecord(records, i, time, (int) (1000 * Math.sin(i / 20.0)) + random.nextInt(11) - 5,
+					random.nextInt(101) - 50, 1000 + random.nextInt(11) - 5);
+		}
+		final int length = assertRoundTrip(records, count);
+		// Smooth samples compress well below the raw size
+		assertTrue(length < records.length / 2);
+	}
+
+	@Test
+	public void decode_returnsExtremeValues() throws IOException {
+		final long[] times = { 0, Long.MAX_VALUE, Long.MIN_VALUE, -1, 1, Long.MAX_VALUE, 0, Long.MIN_VALUE };
+		final int[] values = { Short.MIN_VALUE, Short.MAX_VALUE, 0, -1, Short.MAX_VALUE, Short.MIN_VALUE, 1, Short.MIN_VALUE };
+		final byte[] records = new byte[times.length * BinaryRecordFormat.RECORD_SIZE];
+		for (int i = 0; i < times.length; i++)
+			putRecord(records, i, times[i], values[i], values[values.length - 1 - i], values[(i + 3) % values.length]);
+		assertRoundTrip(records, times.length);
+	}
+
+	@Test
+	public void decode_returnsGapMarkers() throws IOException {
+		final int count = 100;
+		final byte[] records = new byte[count * BinaryRecordFormat.RECORD_SIZE];
+		for (int i = 0; i < count; i++) {
+			if (i % 10 == 9)
+				putRecord(records, i, i * 7_500_000L, RecordFormat.GAP_MARKER, RecordFormat.GAP_MARKER, Short.MAX_VALUE);
+			else
+				putRecord(records, i, i * 7_500_000L, 500 + i, -500 - i, Short.MAX_VALUE - i);
+		}
+		assertRoundTrip(records, count);
+	}
+
+	@Test
+	public void decode_reusesBuffersAcrossBlocks() throws IOException {
+		final Random random = new Random(4);
+		// Each block starts from zero, whatever the block before
+		for (final int count : new int[] { 1, RecordJournal.MAX_BLOCK_SAMPLES, 2, 1000, 1 }) {
+			final byte[] records = new byte[count * BinaryRecordFormat.RECORD_SIZE];
+			for (int i = 0; i < count; i++)
+				putRecord(records, i, random.nextLong(), random.nextInt(65536) + Short.MIN_VALUE,
+						random.nextInt(65536) + Short.MIN_VALUE, random.nextInt(65536) + Short.MIN_VALUE);
+			assertRoundTrip(records, count);
+		}
+	}
+
+	@Test
+	public void decode_rejectsCorruptedData() {
+		final byte[] records = new byte[100 * BinaryRecordFormat.RECORD_SIZE];
+		for (int i = 0; i < 100; i++)
+			putRecord(records, i, i * 7_500_000L, i, -i, 1000);
+		final int length = codec.encode(records, 100);
+		final byte[] payload = Arrays.copyOf(codec.getEncoded(), length);
+		try {
+			codec.decode(payload, length / 2, 100, new byte[records.length]);
+			fail("Truncated block decoded");
+		} catch (final IOException e) {
+			// Expected
+		}
+		try {
+			// The varints of fewer records than the block claims
+			codec.decode(payload, length, 101, new byte[records.length + BinaryRecordFormat.RECORD_SIZE]);
+			fail("Block with missing records decoded");
+		} catch (final IOException e) {
+			// Expected
+		}
+	}
+
+	private int assertRoundTrip(final byte[] records, final int count) throws IOException {
+		final int length = codec.encode(records, count);
+		final byte[] payload = Arrays.copyOf(codec.getEncoded(), length);
+		final byte[] decoded = new byte[count * BinaryRecordFormat.RECORD_SIZE];
+		codec.decode(payload, length, count, decoded);
+		assertArrayEquals(records, decoded);
+		return length;
+	}
+
+	private static void putRecord(final byte[] records, final int index, final long time,
+								  final int x, final int y, final int z) {
+		final int offset = index * BinaryRecordFormat.RECORD_SIZE;
+		BinaryRecordFormat.putInt64(records, offset, time);
+		BinaryRecordFormat.putInt16(records, offset + 8, x);
+		BinaryRecordFormat.putInt16(records, offset + 10, y);
+		BinaryRecordFormat.putInt16(records, offset + 12, z);
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecordExportTest {
+	private static final int SAMPLES = 10_000;
+	/** Samples between the gap markers of the test recording. */
+	private static final int GAP_INTERVAL = 7;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writeTo_decimatesSamplesAndKeepsAllGaps() throws IOException {
+		final RecordSession session = new RecordSession(folder.newFolder(), "session");
+		final RecordWriter writer = new RecordWriter.Builder(session,
+				new BinaryRecordFormat("00:11:22:33:44:55", 1_600_000_000_000L, BinaryRecordFormat.DEFAULT_SCALE))
+				.setQueueCapacity(2 * SAMPLES)
+				.build();
+		for (int i = 0; i < SAMPLES; i++) {
+			if (i > 0 && i % GAP_INTERVAL == 0)
+				assertTrue(writer.writeGap(i * 1_000_000L - 1, 1));
+			assertTrue(writer.write(i * 1_000_000L, i % 1000, 0, 0));
+		}
+		writer.close();
+		assertEquals(null, writer.getError());
+
+		for (final int decimation : new int[] { 1, 3, GAP_INTERVAL, 10 }) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			new RecordExport.Builder(session, new CsvRecordFormat())
+					.setDecimation(decimation)
+					.build()
+					.writeTo(out, null);
+			final String[] lines = new String(out.toByteArray(), StandardCharsets.US_ASCII).split("\r\n");
+
+			int gaps = 0, samples = 0;
+			for (int i = 1; i < lines.length; i++) {
+				if (lines[i].endsWith(",,,")) {
+					gaps++;
+				} else {
+					// Every n-th sample, whatever the gaps in between
+					final long millis = (long) samples * decimation;
+					assertTrue(lines[i], lines[i].startsWith(String.format("%d.%03d000,", millis / 1000, millis % 1000)));
+					samples++;
+				}
+			}
+			assertEquals((SAMPLES - 1) / GAP_INTERVAL, gaps);
+			assertEquals((SAMPLES + decimation - 1) / decimation, samples);
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RecordRecoveryTest {
+	private static final int SAMPLES = 5000;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void recover_leavesIntactRecording() throws IOException {
+		final File file = record("intact");
+		final long length = file.length();
+		assertNull(RecordRecovery.recover(file));
+		assertEquals(length, file.length());
+		assertEquals(SAMPLES, countSamples(file, false));
+	}
+
+	@Test
+	public void recover_cutsTornTail() throws IOException {
+		final File file = record("torn");
+		final long length = file.length();
+		// The process died in the middle of writing the last block
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length - 100);
+		}
+		final RecordRecovery.Result result = RecordRecovery.recover(file);
+		assertTrue(result != null);
+		assertTrue(result.samples > 0 && result.samples < SAMPLES);
+		assertEquals(length - 100 - file.length(), result.discardedBytes);
+		assertEquals(result.samples, countSamples(file, true));
+		// Recovering again finds nothing to cut
+		assertNull(RecordRecovery.recover(file));
+	}
+
+	@Test
+	public void recover_cutsUnusedPreallocatedSpace() throws IOException {
+		final File file = record("preallocated");
+		final long length = file.length();
+		// The rest of a mapped segment that was never written
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(length + 64 * 1024);
+		}
+		final RecordRecovery.Result result = RecordRecovery.recover(file);
+		assertTrue(result != null);
+		assertEquals(SAMPLES, result.samples);
+		assertEquals(64 * 1024, result.discardedBytes);
+		assertEquals(length, file.length());
+		assertEquals(SAMPLES, countSamples(file, true));
+	}
+
+	@Test
+	public void recover_cutsFromBlockWithBadChecksum() throws IOException {
+		final File file = record("corrupted");
+		final long length = file.length();
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.seek(length / 2);
+			final int b = raf.read();
+			raf.seek(length / 2);
+			raf.write(b ^ 0x40);
+		}
+		final RecordRecovery.Result result = RecordRecovery.recover(file);
+		assertTrue(result != null);
+		assertTrue(file.length() <= length / 2);
+		assertEquals(result.samples, countSamples(file, true));
+	}
+
+	@Test
+	public void recoverAll_skipsFilteredFilesAndOtherFiles() throws IOException {
+		final File torn = record("torn");
+		final File live = record("live");
+		for (final File file : new File[] { torn, live }) {
+			try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+				raf.setLength(file.length() - 100);
+			}
+		}
+		final long liveLength = live.length();
+		final File other = folder.newFile("notes.txt");
+		final List<RecordRecovery.Result> results = RecordRecovery.recoverAll(folder.getRoot(),
+				file -> !file.equals(live));
+		assertEquals(1, results.size());
+		assertEquals(torn, results.get(0).file);
+		assertTrue(other.exists());
+		// The recording still being written is left as it is
+		assertEquals(liveLength, live.length());
+		try (RecordReader reader = new RecordReader(live)) {
+			assertFalse(reader.isRecovered());
+		}
+	}
+
+	/**
+	 * Records {@link #SAMPLES} samples, in blocks of about a kilobyte.
+	 */
+	private File record(final String name) throws IOException {
+		final File file = new File(folder.getRoot(), name + BinaryRecordFormat.EXTENSION);
+		final RecordWriter writer = new RecordWriter.Builder(file,
+				new BinaryRecordFormat("00:11:22:33:44:55", 1_600_000_000_000L, BinaryRecordFormat.DEFAULT_SCALE))
+				.setQueueCapacity(SAMPLES)
+				.setFlushThreshold(1024)
+				.build();
+		for (int i = 0; i < SAMPLES; i++)
+			assertTrue(writer.write(i * 1_000_000L, i % 1000, -i % 1000, 1000));
+		writer.close();
+		assertNull(writer.getError());
+		return file;
+	}
+
+	private static long countSamples(final File file, final boolean recovered) throws IOException {
+		long count = 0;
+		try (RecordReader reader = new RecordReader(file)) {
+			assertEquals(recovered, reader.isRecovered());
+			while (reader.next()) {
+				assertEquals(count * 1_000_000L, reader.getTimestamp());
+				count++;
+			}
+			assertFalse(reader.isCorrupted());
+		}
+		return count;
+	}
+}
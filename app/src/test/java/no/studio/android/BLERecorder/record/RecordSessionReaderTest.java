@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordSessionReaderTest {
+	private static final int SAMPLES = 60_000;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void read_rangeStartsAtIndexedBlock() throws IOException {
+		final RecordSession session = record(folder.newFolder());
+		final long[] all = read(session, Long.MIN_VALUE, Long.MAX_VALUE);
+		assertEquals(SAMPLES, all.length);
+		for (final long from : new long[] { 0, 12_345_678L, 31_000_000_000L, 59_999_000_000L }) {
+			final long to = from + 2_000_000_000L;
+			assertArrayEquals(filter(all, from, to), read(session, from, to));
+		}
+	}
+
+	@Test
+	public void recover_cutsIndexEntriesOfTornTail() throws IOException {
+		final RecordSession session = record(folder.newFolder());
+		final List<File> parts = session.getPartFiles();
+		final File last = parts.get(parts.size() - 1);
+		final long length = last.length();
+		final int entries = RecordIndex.load(session.getIndexFile()).size();
+
+		// The process died while the last block was written
+		try (RandomAccessFile raf = new RandomAccessFile(last, "rw")) {
+			raf.setLength(length - 10);
+		}
+		final RecordRecovery.Result result = RecordRecovery.recover(last);
+		assertTrue(result != null);
+		assertTrue(last.length() < length - 10);
+
+		final RecordIndex index = RecordIndex.load(session.getIndexFile());
+		assertEquals(entries - 1, index.size());
+		for (int entry = 0; entry < index.size(); entry++)
+			assertTrue(index.getOffset(entry) < session.getPartFile(index.getPart(entry)).length());
+		assertEquals(RecordIndex.HEADER_SIZE + (long) index.size() * RecordIndex.ENTRY_SIZE,
+				session.getIndexFile().length());
+
+		final long[] all = read(session, Long.MIN_VALUE, Long.MAX_VALUE);
+		assertTrue(all.length < SAMPLES);
+		assertArrayEquals(filter(all, 55_000_000_000L, Long.MAX_VALUE), read(session, 55_000_000_000L, Long.MAX_VALUE));
+	}
+
+	@Test
+	public void read_fallsBackToStartWhenIndexPointsPastPart() throws IOException {
+		final RecordSession session = record(folder.newFolder());
+		final byte[] index = Files.readAllBytes(session.getIndexFile().toPath());
+		final List<File> parts = session.getPartFiles();
+		final File last = parts.get(parts.size() - 1);
+
+		// A torn part, recovered without its index, leaves entries past the end of the part
+		try (RandomAccessFile raf = new RandomAccessFile(last, "rw")) {
+			raf.setLength(last.length() / 2);
+		}
+		assertTrue(RecordRecovery.recover(last) != null);
+		Files.write(session.getIndexFile().toPath(), index);
+
+		final long[] all = read(session, Long.MIN_VALUE, Long.MAX_VALUE);
+		final long from = all[all.length - 100];
+		final long[] range = read(session, from, Long.MAX_VALUE);
+		assertEquals(100, range.length);
+		assertArrayEquals(filter(all, from, Long.MAX_VALUE), range);
+		// The blocks of the entries found for these are gone
+		assertEquals(0, read(session, all[all.length - 1] + 1, Long.MAX_VALUE).length);
+		assertEquals(0, read(session, (SAMPLES - 1) * 1_000_000L, Long.MAX_VALUE).length);
+	}
+
+	@Test
+	public void write_indexesOnlyBlocksWritten() throws IOException {
+		final RecordSession session = record(folder.newFolder());
+		final RecordIndex index = RecordIndex.load(session.getIndexFile());
+		assertTrue(index.size() > 0);
+		for (int entry = 0; entry < index.size(); entry++) {
+			final File part = session.getPartFile(index.getPart(entry));
+			assertTrue(index.getOffset(entry) < part.length());
+			assertFalse(entry > 0 && index.getTimestamp(entry) < index.getTimestamp(entry - 1));
+		}
+	}
+
+	/**
+	 * Records a session of {@link #SAMPLES} samples, one per millisecond, across several parts.
+	 */
+	private static RecordSession record(final File directory) throws IOException {
+		final RecordSession session = new RecordSession(directory, "session");
+		final RecordWriter writer = new RecordWriter.Builder(session,
+				new BinaryRecordFormat("00:11:22:33:44:55", 1_600_000_000_000L, BinaryRecordFormat.DEFAULT_SCALE))
+				.setCompressed(true)
+				.setQueueCapacity(SAMPLES)
+				.setPartLimits(64 * 1024, RecordWriter.DEFAULT_MAX_PART_DURATION_MS)
+				.build();
+		final Random random = new Random(1);
+		for (int i = 0; i < SAMPLES; i++)
+			assertTrue(writer.write(i * 1_000_000L, random.nextInt(2001) - 1000, random.nextInt(2001) - 1000, 1000));
+		writer.close();
+		assertEquals(null, writer.getError());
+		assertTrue(session.getPartFiles().size() > 1);
+		return session;
+	}
+
+	private static long[] read(final RecordSession session, final long from, final long to) throws IOException {
+		long[] timestamps = new long[1024];
+		int count = 0;
+		try (RecordSessionReader reader = new RecordSessionReader(session, from, to)) {
+			while (reader.next()) {
+				if (count == timestamps.length)
+					timestamps = Arrays.copyOf(timestamps, count * 2);
+				timestamps[count++] = reader.getTimestamp();
+			}
+		}
+		return Arrays.copyOf(timestamps, count);
+	}
+
+	private static long[] filter(final long[] timestamps, final long from, final long to) {
+		int first = 0, last = timestamps.length;
+		while (first < last && timestamps[first] < from)
+			first++;
+		while (last > first && timestamps[last - 1] > to)
+			last--;
+		return Arrays.copyOfRange(timestamps, first, last);
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RecordWriterTest {
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void stop_leavesSamplesPublishedAfterwardsToNextRecording() throws IOException {
+		final SampleRing ring = new SampleRing(1024, 1 << 20);
+		final RecordSession session = new RecordSession(folder.newFolder(), "session");
+		final RecordWriter writer = new RecordWriter.Builder(session,
+				new BinaryRecordFormat("00:11:22:33:44:55", 1_600_000_000_000L, BinaryRecordFormat.DEFAULT_SCALE))
+				.setSource(ring.newCursor(SampleRing.Backpressure.GROW))
+				.build();
+		for (int i = 0; i < 50_000; i++)
+			assertTrue(ring.publish(i * 1_000_000L, i % 1000, 1, 2));
+		writer.stop();
+		// The next recording starts while this one is still being written
+		for (int i = 0; i < 10_000; i++)
+			assertTrue(ring.publish(i * 1_000_000L, 7777, 1, 2));
+		writer.close();
+		assertEquals(null, writer.getError());
+
+		int count = 0;
+		try (RecordSessionReader reader = new RecordSessionReader(session)) {
+			while (reader.next()) {
+				assertEquals(count * 1_000_000L, reader.getTimestamp());
+				assertEquals(count % 1000, reader.getX());
+				count++;
+			}
+		}
+		assertEquals(50_000, count);
+	}
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SampleRingTest {
+
+	@Test
+	public void publish_growsForGrowCursorFallingBehind() {
+		final SampleRing ring = new SampleRing(16, 1024);
+		final SampleRing.Cursor cursor = ring.newCursor(SampleRing.Backpressure.GROW);
+		for (int i = 0; i < 500; i++)
+			assertTrue(ring.publish(i, i, -i, i % 7));
+		assertEquals(512, ring.getCapacity());
+		assertEquals(500, cursor.available());
+		final Checker checker = new Checker(0);
+		assertEquals(500, cursor.poll(checker, Integer.MAX_VALUE));
+		assertEquals(500, checker.next);
+		assertEquals(0, cursor.getDropped());
+		assertEquals(0, ring.getDropped());
+		assertEquals(500, cursor.getHighWaterMark());
+	}
+
+	@Test
+	public void publish_dropsNewSamplesAtMaximumCapacity() {
+		final SampleRing ring = new SampleRing(16, 64);
+		final SampleRing.Cursor cursor = ring.newCursor(SampleRing.Backpressure.GROW);
+		for (int i = 0; i < 100; i++)
+			assertEquals(i < 64, ring.publish(i, i, -i, i % 7));
+		assertEquals(64, ring.getCapacity());
+		assertEquals(36, ring.getDropped());
+		final Checker checker = new Checker(0);
+		assertEquals(64, cursor.poll(checker, Integer.MAX_VALUE));
+		// Once read, there is room again
+		assertTrue(ring.publish(64, 64, -64, 64 % 7));
+		assertEquals(1, cursor.poll(checker, Integer.MAX_VALUE));
+		assertEquals(65, checker.next);
+	}
+
+	@Test
+	public void publish_skipsOldestSamplesOfDropOldestCursor() {
+		final SampleRing ring = new SampleRing(64);
+		final SampleRing.Cursor cursor = ring.newCursor(SampleRing.Backpressure.DROP_OLDEST);
+		for (int i = 0; i < 1000; i++)
+			assertTrue(ring.publish(i, i, -i, i % 7));
+		assertEquals(64, ring.getCapacity());
+		assertEquals(0, ring.getDropped());
+		// Only the latest samples are left
+		final Checker checker = new Checker(1000 - 64);
+		assertEquals(64, cursor.poll(checker, Integer.MAX_VALUE));
+		assertEquals(1000, checker.next);
+		assertEquals(1000 - 64, cursor.getDropped());
+	}
+
+	@Test
+	public void publish_dropOldestCursorNeverHoldsBackGrowCursor() {
+		final SampleRing ring = new SampleRing(16, 4096);
+		final SampleRing.Cursor grow = ring.newCursor(SampleRing.Backpressure.GROW);
+		final SampleRing.Cursor latest = ring.newCursor(SampleRing.Backpressure.DROP_OLDEST);
+		for (int i = 0; i < 2000; i++) {
+			assertTrue(ring.publish(i, i, -i, i % 7));
+			// The writer keeps up, the graph never reads
+			if (i % 10 == 9)
+				assertEquals(10, grow.poll(new Checker(i - 9), Integer.MAX_VALUE));
+		}
+		assertEquals(16, ring.getCapacity());
+		assertEquals(2000 - 16, latest.getDropped());
+		assertEquals(16, latest.poll(new Checker(2000 - 16), Integer.MAX_VALUE));
+	}
+
+	@Test
+	public void close_releasesSamplesHeldByGrowCursor() {
+		final SampleRing ring = new SampleRing(16);
+		final SampleRing.Cursor cursor = ring.newCursor(SampleRing.Backpressure.GROW);
+		for (int i = 0; i < 16; i++)
+			assertTrue(ring.publish(i, i, -i, i % 7));
+		assertFalse(ring.publish(16, 16, -16, 16 % 7));
+		cursor.close();
+		assertTrue(ring.publish(16, 16, -16, 16 % 7));
+		assertEquals(1, ring.getDropped());
+	}
+
+	@Test
+	public void poll_readsConsistentSamplesWhilePublishing() throws InterruptedException {
+		final int count = 2_000_000;
+		final SampleRing ring = new SampleRing(256, 1 << 20);
+		final SampleRing.Cursor grow = ring.newCursor(SampleRing.Backpressure.GROW);
+		final SampleRing.Cursor latest = ring.newCursor(SampleRing.Backpressure.DROP_OLDEST);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		final Thread writer = new Thread(() -> {
+			try {
+				final Checker checker = new Checker(0);
+				while (checker.next < count)
+					grow.poll(checker, 100);
+			} catch (final Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		});
+		final Thread graph = new Thread(() -> {
+			try {
+				final Checker checker = new Checker(-1);
+				while (checker.next < count)
+					latest.poll(checker, 64);
+			} catch (final Throwable e) {
+				failure.compareAndSet(null, e);
+			}
+		});
+		writer.start();
+		graph.start();
+		for (int i = 0; i < count; i++)
+			assertTrue(ring.publish(i, i, -i, i % 7));
+		writer.join(30_000);
+		graph.join(30_000);
+		if (failure.get() != null)
+			throw new AssertionError(failure.get());
+		assertFalse(writer.isAlive() || graph.isAlive());
+		assertEquals(0, ring.getDropped());
+		assertEquals(0, grow.getDropped());
+	}
+
+	/**
+	 * Checks that the samples come in order and each is complete. Samples may be skipped
+	 * if it expects -1 first.
+	 */
+	private static final class Checker implements SampleRing.Listener {
+		private final boolean skipping;
+		long next;
+
+		Checker(final long first) {
+			skipping = first < 0;
+			next = Math.max(0, first);
+		}
+
+		@Override
+		public void onSample(final long timestamp, final int x, final int y, final int z) {
+			if (skipping)
+				assertTrue(timestamp >= next);
+			else
+				assertEquals(next, timestamp);
+			assertEquals((short) timestamp, x);
+			assertEquals((short) -timestamp, y);
+			assertEquals(timestamp % 7, z);
+			next = timestamp + 1;
+		}
+	}
+}
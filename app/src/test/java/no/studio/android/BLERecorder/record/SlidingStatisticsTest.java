@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class SlidingStatisticsTest {
+	private static final long WINDOW_NS = 100_000_000L;
+	private static final int SAMPLES = 50_000;
+
+	@Test
+	public void add_matchesBruteForceOverWindow() {
+		final Random random = new Random(3);
+		final SlidingStatistics statistics = new SlidingStatistics(WINDOW_NS);
+		final long[] timestamps = new long[SAMPLES];
+		final int[][] values = new int[3][SAMPLES];
+		long timestamp = 0;
+		for (int i = 0; i < SAMPLES; i++) {
+			// Irregular arrival, with bursts and stalls longer than the window
+			timestamp += random.nextInt(10) == 0 ? random.nextInt(150_000_000) : random.nextInt(2_000_000);
+			timestamps[i] = timestamp;
+			for (int axis = 0; axis < 3; axis++)
+				values[axis][i] = random.nextInt(65536) - 32768;
+			statistics.add(timestamp, values[0][i], values[1][i], values[2][i]);
+			assertWindow(statistics, timestamps, values, i + 1, timestamp);
+		}
+	}
+
+	@Test
+	public void add_keepsPrecisionOverLongRecording() {
+		// A large offset with a small spread is the worst case for the running sums
+		final Random random = new Random(5);
+		final SlidingStatistics statistics = new SlidingStatistics(WINDOW_NS);
+		final int count = 2_000_000;
+		final long[] timestamps = new long[count];
+		final int[][] values = new int[3][count];
+		for (int i = 0; i < count; i++) {
+			timestamps[i] = i * 1_000_000L;
+			for (int axis = 0; axis < 3; axis++)
+				values[axis][i] = 30_000 + random.nextInt(3) - 1;
+			statistics.add(timestamps[i], values[0][i], values[1][i], values[2][i]);
+		}
+		assertWindow(statistics, timestamps, values, count, timestamps[count - 1]);
+	}
+
+	@Test
+	public void expireBefore_takesOutSamplesWhenTheStreamStops() {
+		final Random random = new Random(7);
+		final SlidingStatistics statistics = new SlidingStatistics(WINDOW_NS);
+		final int count = 1000;
+		final long[] timestamps = new long[count];
+		final int[][] values = new int[3][count];
+		for (int i = 0; i < count; i++) {
+			timestamps[i] = i * 1_000_000L;
+			for (int axis = 0; axis < 3; axis++)
+				values[axis][i] = random.nextInt(2001) - 1000;
+			statistics.add(timestamps[i], values[0][i], values[1][i], values[2][i]);
+		}
+		// No more samples, the time goes on
+		for (long now = timestamps[count - 1]; now <= timestamps[count - 1] + WINDOW_NS; now += 7_000_000L) {
+			statistics.expireBefore(now);
+			assertWindow(statistics, timestamps, values, count, now);
+		}
+		statistics.expireBefore(timestamps[count - 1] + WINDOW_NS);
+		assertEquals(0, statistics.getCount());
+		for (int axis = 0; axis < 3; axis++) {
+			assertEquals(0, statistics.getMean(axis), 0);
+			assertEquals(0, statistics.getStandardDeviation(axis), 0);
+			assertEquals(0, statistics.getPeak(axis));
+		}
+	}
+
+	@Test
+	public void expireBefore_keepsStatisticsOverWholeSession() {
+		final SlidingStatistics statistics = new SlidingStatistics(SlidingStatistics.WHOLE_SESSION);
+		statistics.add(0, 1, -2, 3);
+		statistics.add(1_000_000L, -5, 4, 3);
+		statistics.expireBefore(Long.MAX_VALUE);
+		assertEquals(2, statistics.getCount());
+		assertEquals(-2, statistics.getMean(0), 1e-12);
+		assertEquals(5, statistics.getPeak(0));
+		assertEquals(0, statistics.getStandardDeviation(2), 1e-12);
+	}
+
+	@Test
+	public void snapshot_copiesAllAxesAtOnce() {
+		final Random random = new Random(11);
+		final SlidingStatistics statistics = new SlidingStatistics(WINDOW_NS);
+		final SlidingStatistics.Snapshot snapshot = new SlidingStatistics.Snapshot();
+		for (int i = 0; i < 5000; i++) {
+			statistics.add(i * 1_000_000L, random.nextInt(2001) - 1000,
+					random.nextInt(2001) - 1000, random.nextInt(2001) - 1000);
+			if (i % 97 == 0) {
+				statistics.snapshot(snapshot);
+				assertEquals(statistics.getCount(), snapshot.getCount());
+				for (int axis = 0; axis < 3; axis++) {
+					assertEquals(statistics.getMean(axis), snapshot.getMean(axis), 0);
+					assertEquals(statistics.getRms(axis), snapshot.getRms(axis), 0);
+					assertEquals(statistics.getStandardDeviation(axis), snapshot.getStandardDeviation(axis), 0);
+					assertEquals(statistics.getPeak(axis), snapshot.getPeak(axis));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the statistics against the first samples of the arrays, those still in the window
+	 * at the given time.
+	 */
+	private static void assertWindow(final SlidingStatistics statistics, final long[] timestamps,
+									 final int[][] values, final int added, final long now) {
+		int first = added;
+		while (first > 0 && timestamps[first - 1] > now - WINDOW_NS)
+			first--;
+		final int count = added - first;
+		assertEquals(count, statistics.getCount());
+		for (int axis = 0; axis < 3; axis++) {
+			long sum = 0;
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for (int i = first; i < added; i++) {
+				final int value = values[axis][i];
+				sum += value;
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+			}
+			final double mean = count > 0 ? (double) sum / count : 0;
+			double m2 = 0, squares = 0;
+			for (int i = first; i < added; i++) {
+				final double value = values[axis][i];
+				m2 += (value - mean) * (value - mean);
+				squares += value * value;
+			}
+			final double variance = count > 1 ? m2 / (count - 1) : 0;
+			final double rms = count > 0 ? Math.sqrt(squares / count) : 0;
+			assertEquals(mean, statistics.getMean(axis), 1e-9 * Math.max(1, Math.abs(mean)));
+			assertEquals(variance, statistics.getVariance(axis), 1e-9 * Math.max(1, variance));
+			assertEquals(rms, statistics.getRms(axis), 1e-9 * Math.max(1, rms));
+			assertEquals(count > 0 ? min : 0, statistics.getMin(axis));
+			assertEquals(count > 0 ? max : 0, statistics.getMax(axis));
+			assertEquals(count > 0 ? Math.max(Math.abs(min), Math.abs(max)) : 0, statistics.getPeak(axis));
+		}
+	}
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.record;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SummaryPyramidTest {
+	/** Samples between the gap markers of a test recording. */
+	private static final int GAP_INTERVAL = 10_000;
+
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void open_summaryWrittenWhileRecordingMatchesRebuild() throws IOException {
+		final RecordSession session = record(folder.newFolder(), 100_003);
+		final File file = session.getSummaryFile();
+		assertTrue(file.exists());
+		final byte[] recorded = Files.readAllBytes(file.toPath());
+
+		// The summary written by the recorder is used as it is
+		final SummaryPyramid summary = SummaryPyramid.open(session);
+		assertEquals(100_003, summary.getSampleCount());
+		assertArrayEquals(recorded, Files.readAllBytes(file.toPath()));
+
+		// and is the same as the one built from the recorded samples
+		assertTrue(file.delete());
+		final SummaryPyramid rebuilt = SummaryPyramid.open(session);
+		assertArrayEquals(recorded, Files.readAllBytes(file.toPath()));
+		assertEquals(summary.getLevelCount(), rebuilt.getLevelCount());
+		assertEquals(summary.getDuration(), rebuilt.getDuration());
+		final int top = rebuilt.getLevelCount() - 1;
+		assertEquals(1, rebuilt.getBucketCount(top));
+		for (int axis = 0; axis < 3; axis++) {
+			assertEquals(summary.getTile(top, 0).getMin(0, axis), rebuilt.getTile(top, 0).getMin(0, axis));
+			assertEquals(summary.getTile(top, 0).getMax(0, axis), rebuilt.getTile(top, 0).getMax(0, axis));
+			assertEquals(summary.getTile(top, 0).getMean(0, axis), rebuilt.getTile(top, 0).getMean(0, axis));
+		}
+	}
+
+	@Test
+	public void open_rebuildsSummaryOfAnotherSessionLength() throws IOException {
+		final RecordSession shorter = record(folder.newFolder(), 20_000);
+		final RecordSession session = record(folder.newFolder(), 50_000);
+		final File file = session.getSummaryFile();
+		final byte[] recorded = Files.readAllBytes(file.toPath());
+
+		// A summary left from before the session changed size is out of date
+		Files.copy(shorter.getSummaryFile().toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		final SummaryPyramid summary = SummaryPyramid.open(session);
+		assertEquals(50_000, summary.getSampleCount());
+		assertArrayEquals(recorded, Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Records a session of the given number of samples, with a gap marker every
+	 * {@link #GAP_INTERVAL} samples, across several parts.
+	 */
+	private static RecordSession record(final File directory, final int samples) throws IOException {
+		final RecordSession session = new RecordSession(directory, "session");
+		final RecordWriter writer = new RecordWriter.Builder(session,
+				new BinaryRecordFormat("00:11:22:33:44:55", 1_600_000_000_000L, BinaryRecordFormat.DEFAULT_SCALE))
+				.setCompressed(true)
+				.setQueueCapacity(samples + samples / GAP_INTERVAL + 1)
+				.setPartLimits(64 * 1024, RecordWriter.DEFAULT_MAX_PART_DURATION_MS)
+				.build();
+		final Random random = new Random(samples);
+		for (int i = 0; i < samples; i++) {
+			final long timestamp = i * 1_000_000L;
+			if (i > 0 && i % GAP_INTERVAL == 0)
+				assertTrue(writer.writeGap(timestamp, 1 + random.nextInt(5)));
+			final int x = (int) (1000 * Math.sin(i / 100.0)) + random.nextInt(21) - 10;
+			assertTrue(writer.write(timestamp, x, random.nextInt(2001) - 1000, 1000 + random.nextInt(101) - 50));
+		}
+		writer.close();
+		assertEquals(null, writer.getError());
+		assertTrue(session.getPartFiles().size() > 1);
+		return session;
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import no.studio.android.BLERecorder.profile.callback.AccelFrame;
+import no.studio.android.BLERecorder.record.BinaryRecordFormat;
+import no.studio.android.BLERecorder.record.CsvRecordFormat;
+import no.studio.android.BLERecorder.record.DeltaBlockCodec;
+
+/**
+ * Encoding of one sample to CSV and to the binary format, and compression of a block.
+ * Results are per sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EncodeBenchmark {
+	/** Number of samples in a compressed block. */
+	private static final int BLOCK_SAMPLES = 1024;
+	/** Interval between samples, for a 200 Hz sensor. */
+	private static final long INTERVAL_NS = 5_000_000L;
+
+	private final Frames.NullOutputStream out = new Frames.NullOutputStream();
+	private final CsvRecordFormat csv = new CsvRecordFormat();
+	private final BinaryRecordFormat binary = new BinaryRecordFormat("00:11:22:33:44:55", 0,
+			BinaryRecordFormat.DEFAULT_SCALE);
+	private final DeltaBlockCodec codec = new DeltaBlockCodec();
+	private int[] x, y, z;
+	private byte[] block;
+	private int index;
+	private long timestamp;
+
+	@Setup
+	public void setUp() throws IOException {
+		final byte[][] frames = Frames.create();
+		x = new int[Frames.COUNT];
+		y = new int[Frames.COUNT];
+		z = new int[Frames.COUNT];
+		for (int i = 0; i < Frames.COUNT; i++) {
+			x[i] = AccelFrame.getInt16(frames[i], AccelFrame.X_OFFSET);
+			y[i] = AccelFrame.getInt16(frames[i], AccelFrame.Y_OFFSET);
+			z[i] = AccelFrame.getInt16(frames[i], AccelFrame.Z_OFFSET);
+		}
+		final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		for (int i = 0; i < BLOCK_SAMPLES; i++) {
+			final int j = i & (Frames.COUNT - 1);
+			binary.writeSample(records, i * INTERVAL_NS, x[j], y[j], z[j]);
+		}
+		block = records.toByteArray();
+	}
+
+	@TearDown
+	public void tearDown() {
+		codec.release();
+	}
+
+	@Benchmark
+	public long csv() throws IOException {
+		index = (index + 1) & (Frames.COUNT - 1);
+		timestamp += INTERVAL_NS;
+		return csv.writeSample(out, timestamp, x[index], y[index], z[index]);
+	}
+
+	@Benchmark
+	public long binary() throws IOException {
+		index = (index + 1) & (Frames.COUNT - 1);
+		timestamp += INTERVAL_NS;
+		return binary.writeSample(out, timestamp, x[index], y[index], z[index]);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BLOCK_SAMPLES)
+	public int compressBlock() {
+		return codec.encode(block, BLOCK_SAMPLES);
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import no.studio.android.BLERecorder.profile.callback.AccelFrame;
+import no.studio.android.BLERecorder.profile.callback.AccelFrameDecoder;
+
+/**
+ * Validation and decoding of a single accelerometer frame, as done for every notification.
+ * Results are per frame; the decode and validateAndDecode benchmarks read the first sample only.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FrameBenchmark {
+	/** Number of samples per notification, 1 as sent by default, or batched with a larger MTU. */
+	@Param({ "1", "20" })
+	public int samplesPerFrame;
+
+	private final AccelFrameDecoder decoder = new AccelFrameDecoder();
+	private byte[][] frames;
+	private int index;
+	private long timestamp;
+	private long sum;
+	private final AccelFrameDecoder.Listener listener = sample -> sum += sample.getX();
+
+	@Setup
+	public void setUp() {
+		frames = Frames.create(samplesPerFrame);
+	}
+
+	private byte[] nextFrame() {
+		index = (index + 1) & (Frames.COUNT - 1);
+		return frames[index];
+	}
+
+	@Benchmark
+	public boolean checksum() {
+		final byte[] frame = nextFrame();
+		return AccelFrame.isValid(frame, 0, frame.length);
+	}
+
+	@Benchmark
+	public void decode(final Blackhole blackhole) {
+		final byte[] frame = nextFrame();
+		blackhole.consume(AccelFrame.getInt16(frame, AccelFrame.X_OFFSET));
+		blackhole.consume(AccelFrame.getInt16(frame, AccelFrame.Y_OFFSET));
+		blackhole.consume(AccelFrame.getInt16(frame, AccelFrame.Z_OFFSET));
+	}
+
+	@Benchmark
+	public void validateAndDecode(final Blackhole blackhole) {
+		final byte[] frame = nextFrame();
+		if (AccelFrame.isValid(frame, 0, frame.length)) {
+			blackhole.consume(AccelFrame.getInt16(frame, AccelFrame.X_OFFSET));
+			blackhole.consume(AccelFrame.getInt16(frame, AccelFrame.Y_OFFSET));
+			blackhole.consume(AccelFrame.getInt16(frame, AccelFrame.Z_OFFSET));
+		}
+	}
+
+	@Benchmark
+	public long decoder() {
+		final byte[] frame = nextFrame();
+		timestamp += 5_000_000L * samplesPerFrame;
+		decoder.decode(frame, 0, frame.length, timestamp, listener);
+		return sum;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.benchmark;
+
+import java.io.OutputStream;
+import java.util.Random;
+
+import no.studio.android.BLERecorder.profile.callback.AccelFrame;
+
+/**
+ * Synthetic accelerometer frames and helpers shared by the benchmarks.
+ */
+final class Frames {
+	/** Number of distinct frames, a power of 2. */
+	static final int COUNT = 1024;
+
+	private Frames() {
+		// Utility class.
+	}
+
+	/**
+	 * Creates frames with valid checks and values of a noisy signal around 1 g on Z,
+	 * the way the sensor sends them at rest.
+	 */
+	static byte[][] create() {
+		return create(1);
+	}
+
+	/**
+	 * Creates frames carrying the given number of samples each.
+	 */
+	static byte[][] create(final int samplesPerFrame) {
+		final Random random = new Random(42);
+		final int payloadLength = samplesPerFrame * AccelFrame.SAMPLE_SIZE;
+		final int end = AccelFrame.HEADER_SIZE + payloadLength;
+		final byte[][] frames = new byte[COUNT][];
+		for (int i = 0; i < COUNT; i++) {
+			final byte[] frame = new byte[end + AccelFrame.CHECK_SIZE];
+			frame[0] = (byte) 0xAA;
+			frame[1] = (byte) 0xFF;
+			frame[2] = (byte) 0xF1;
+			frame[3] = (byte) payloadLength;
+			for (int j = 0; j < samplesPerFrame; j++) {
+				final int position = j * AccelFrame.SAMPLE_SIZE;
+				putInt16(frame, position + AccelFrame.X_OFFSET, random.nextInt(64) - 32);
+				putInt16(frame, position + AccelFrame.Y_OFFSET, random.nextInt(64) - 32);
+				putInt16(frame, position + AccelFrame.Z_OFFSET, 1000 + random.nextInt(64) - 32);
+			}
+			byte sumCheck = 0, addCheck = 0;
+			for (int j = 0; j < end; j++) {
+				sumCheck += frame[j];
+				addCheck += sumCheck;
+			}
+			frame[end] = sumCheck;
+			frame[end + 1] = addCheck;
+			frames[i] = frame;
+		}
+		return frames;
+	}
+
+	private static void putInt16(final byte[] buffer, final int offset, final int value) {
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >> 8);
+	}
+
+	/**
+	 * Output stream that discards the data, so that encoding can be measured without I/O.
+	 */
+	static final class NullOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(final int b) {
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			count += len;
+		}
+	}
+}
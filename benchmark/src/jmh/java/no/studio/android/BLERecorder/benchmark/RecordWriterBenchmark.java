@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import no.studio.android.BLERecorder.profile.callback.AccelFrame;
+import no.studio.android.BLERecorder.record.BinaryRecordFormat;
+import no.studio.android.BLERecorder.record.RecordJournal;
+import no.studio.android.BLERecorder.record.RecordWriter;
+
+/**
+ * Persisting samples with the {@link RecordWriter}, from queuing to the file being closed,
+ * at several flush thresholds, with and without memory mapping and compression.
+ * Results are per sample.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RecordWriterBenchmark {
+	private static final int SAMPLES = 100_000;
+	private static final long INTERVAL_NS = 5_000_000L;
+
+	/** Number of buffered bytes that triggers writing a block. */
+	@Param({ "1024", "8192", "65536" })
+	public int flushThreshold;
+
+	/** Size of the memory-mapped segments, 0 to write through a file stream. */
+	@Param({ "0", "8388608" })
+	public int segmentSize;
+
+	@Param({ "false", "true" })
+	public boolean compressed;
+
+	private int[] x, y, z;
+	private File file;
+
+	@Setup
+	public void setUp() throws IOException {
+		final byte[][] frames = Frames.create();
+		x = new int[Frames.COUNT];
+		y = new int[Frames.COUNT];
+		z = new int[Frames.COUNT];
+		for (int i = 0; i < Frames.COUNT; i++) {
+			x[i] = AccelFrame.getInt16(frames[i], AccelFrame.X_OFFSET);
+			y[i] = AccelFrame.getInt16(frames[i], AccelFrame.Y_OFFSET);
+			z[i] = AccelFrame.getInt16(frames[i], AccelFrame.Z_OFFSET);
+		}
+		file = File.createTempFile("benchmark", BinaryRecordFormat.EXTENSION);
+	}
+
+	@TearDown
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public long write() throws IOException {
+		final RecordWriter writer = new RecordWriter.Builder(file,
+				new BinaryRecordFormat("00:11:22:33:44:55", 0, BinaryRecordFormat.DEFAULT_SCALE))
+				.setQueueCapacity(SAMPLES)
+				.setFlushThreshold(flushThreshold)
+				.setSegmentSize(segmentSize)
+				.setSyncPolicy(RecordJournal.SyncPolicy.NEVER, 0)
+				.setCompressed(compressed)
+				.build();
+		for (int i = 0; i < SAMPLES; i++) {
+			final int j = i & (Frames.COUNT - 1);
+			writer.write(i * INTERVAL_NS, x[j], y[j], z[j]);
+		}
+		writer.close();
+		if (writer.getError() != null)
+			throw writer.getError();
+		return writer.getDroppedSamples();
+	}
+}
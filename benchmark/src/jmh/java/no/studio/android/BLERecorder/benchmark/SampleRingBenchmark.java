@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2018, Nordic Semiconductor
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided that the following conditions are met:
+ *
+ * 1. Redistributions of source code must retain the above copyright notice, this list of conditions and the following disclaimer.
+ *
+ * 2. Redistributions in binary form must reproduce the above copyright notice, this list of conditions and the following disclaimer in the
+ * documentation and/or other materials provided with the distribution.
+ *
+ * 3. Neither the name of the copyright holder nor the names of its contributors may be used to endorse or promote products derived from this
+ * software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+ * LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+ * HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+ * LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON
+ * ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE
+ * USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package no.studio.android.BLERecorder.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+import no.studio.android.BLERecorder.record.SampleRing;
+
+/**
+ * Publishing samples to the {@link SampleRing} and reading them back through the given number
+ * of cursors, as the recording writer, the statistics and the graph do. Results are per sample.
+ * {@link SampleRing.Backpressure#DROP_OLDEST} cursors copy the samples before passing them on.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SampleRingBenchmark {
+	private static final int BATCH = 256;
+
+	@Param({ "1", "3" })
+	public int cursorCount;
+
+	@Param({ "GROW", "DROP_OLDEST" })
+	public SampleRing.Backpressure backpressure;
+
+	private SampleRing ring;
+	private SampleRing.Cursor[] cursors;
+	private long sum;
+	private final SampleRing.Listener listener = (timestamp, x, y, z) -> sum += x + y + z;
+
+	@Setup
+	public void setUp() {
+		ring = new SampleRing(SampleRing.DEFAULT_CAPACITY);
+		cursors = new SampleRing.Cursor[cursorCount];
+		for (int i = 0; i < cursorCount; i++)
+			cursors[i] = ring.newCursor(backpressure);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH)
+	public long publishAndPoll() {
+		for (int i = 0; i < BATCH; i++)
+			ring.publish(i, i, -i, 1000);
+		for (final SampleRing.Cursor cursor : cursors)
+			cursor.poll(listener, BATCH);
+		return sum;
+	}
+}